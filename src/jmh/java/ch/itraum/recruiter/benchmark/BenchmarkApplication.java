@@ -0,0 +1,80 @@
+package ch.itraum.recruiter.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+
+import ch.itraum.recruiter.config.ApplicationConfig;
+import ch.itraum.recruiter.config.WebConfig;
+import ch.itraum.recruiter.model.Candidate;
+import ch.itraum.recruiter.repository.CandidateRepository;
+
+//The whole application with its own H2 database and directories in a temporary directory,
+//so the benchmarks neither see nor touch the data of a developer.
+public class BenchmarkApplication {
+
+	private final File directory;
+
+	private final AnnotationConfigWebApplicationContext context;
+
+	public BenchmarkApplication() throws IOException {
+		directory = Files.createTempDirectory("recruiter-benchmark").toFile();
+		System.setProperty("recruiter.db.url", "jdbc:h2:" + new File(directory, "recruiter").getAbsolutePath());
+		System.setProperty("recruiter.storage.directory", new File(directory, "documents").getAbsolutePath());
+		System.setProperty("recruiter.thumbnails.directory", new File(directory, "thumbnails").getAbsolutePath());
+		System.setProperty("recruiter.render.textDirectory", new File(directory, "text").getAbsolutePath());
+		//Uploads of PDFs start rendering jobs, they should take as little as possible away from the benchmark
+		System.setProperty("recruiter.render.threads", "1");
+
+		context = new AnnotationConfigWebApplicationContext();
+		context.setServletContext(new MockServletContext());
+		context.register(WebConfig.class, ApplicationConfig.class);
+		context.refresh();
+	}
+
+	public <T> T getBean(Class<T> type) {
+		return context.getBean(type);
+	}
+
+	//A candidate as it is saved after the first step of the wizard
+	public Candidate createCandidate() {
+		Candidate candidate = new Candidate();
+		candidate.setFirstName("Hans");
+		candidate.setLastName("Muster");
+		candidate.setStreet("Bahnhofstrasse 1");
+		candidate.setPlz(8001);
+		candidate.setCity("Zurich");
+		candidate.setEmail("hans.muster@example.com");
+		return getBean(CandidateRepository.class).save(candidate);
+	}
+
+	public void close() {
+		context.close();
+		FileSystemUtils.deleteRecursively(directory);
+	}
+
+	//Content which doesn't compress and is the same in every run
+	public static byte[] randomContent(int length) {
+		byte[] content = new byte[length];
+		new Random(length).nextBytes(content);
+		return content;
+	}
+
+	//Makes the content unique, otherwise the DocumentContentStore would store it only once
+	public static byte[] makeUnique(byte[] content, long sequence) {
+		return makeUnique(content, 0, sequence);
+	}
+
+	//Leaves the bytes before offset alone, e.g. a header the content must start with
+	public static byte[] makeUnique(byte[] content, int offset, long sequence) {
+		for (int i = 0; i < 8 && offset + i < content.length; i++) {
+			content[offset + i] = (byte) (sequence >>> (8 * i));
+		}
+		return content;
+	}
+}
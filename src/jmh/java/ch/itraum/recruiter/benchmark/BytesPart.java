@@ -0,0 +1,77 @@
+package ch.itraum.recruiter.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+import javax.servlet.http.Part;
+
+//A file of a multipart request as the servlet container hands it to the FrontendController
+public class BytesPart implements Part {
+
+	private final String fileName;
+
+	private final String contentType;
+
+	private final byte[] content;
+
+	public BytesPart(String fileName, String contentType, byte[] content) {
+		this.fileName = fileName;
+		this.contentType = contentType;
+		this.content = content;
+	}
+
+	@Override
+	public InputStream getInputStream() throws IOException {
+		return new ByteArrayInputStream(content);
+	}
+
+	@Override
+	public String getContentType() {
+		return contentType;
+	}
+
+	@Override
+	public String getName() {
+		return "file";
+	}
+
+	@Override
+	public long getSize() {
+		return content.length;
+	}
+
+	@Override
+	public void write(String fileName) throws IOException {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void delete() throws IOException {
+	}
+
+	@Override
+	public String getHeader(String name) {
+		if ("content-disposition".equalsIgnoreCase(name)) {
+			return "form-data; name=\"file\"; filename=\"" + fileName + "\"";
+		}
+		if ("content-type".equalsIgnoreCase(name)) {
+			return contentType;
+		}
+		return null;
+	}
+
+	@Override
+	public Collection<String> getHeaders(String name) {
+		String header = getHeader(name);
+		return header != null ? Collections.singletonList(header) : Collections.<String> emptyList();
+	}
+
+	@Override
+	public Collection<String> getHeaderNames() {
+		return Arrays.asList("content-disposition", "content-type");
+	}
+}
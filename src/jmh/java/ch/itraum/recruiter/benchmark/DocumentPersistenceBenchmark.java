@@ -0,0 +1,116 @@
+package ch.itraum.recruiter.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.itraum.recruiter.model.Candidate;
+import ch.itraum.recruiter.model.Document;
+import ch.itraum.recruiter.model.DocumentSummary;
+import ch.itraum.recruiter.repository.DocumentRepository;
+import ch.itraum.recruiter.service.DocumentService;
+
+//Saving documents and listing the documents of a candidate, against an H2 database seeded with documents of realistic sizes
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class DocumentPersistenceBenchmark {
+
+	//Number of documents of the candidate whose documents are listed, a complete application has about this many
+	private static final int SEEDED_DOCUMENTS = 6;
+
+	//A scanned certificate is around 64 kB, a CV with photos around 1 MB
+	@Param({ "65536", "1048576" })
+	public int contentLength;
+
+	private BenchmarkApplication application;
+
+	private DocumentService documentService;
+
+	private DocumentRepository documentRepository;
+
+	private Candidate candidate;
+
+	private int seededCandidateId;
+
+	private byte[] content;
+
+	private long sequence;
+
+	private final List<Integer> savedDocumentIds = new ArrayList<Integer>();
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		application = new BenchmarkApplication();
+		documentService = application.getBean(DocumentService.class);
+		documentRepository = application.getBean(DocumentRepository.class);
+		content = BenchmarkApplication.randomContent(contentLength);
+
+		Candidate seededCandidate = application.createCandidate();
+		for (int i = 0; i < SEEDED_DOCUMENTS; i++) {
+			Document document = newDocument(seededCandidate);
+			documentService.save(document, new ByteArrayInputStream(BenchmarkApplication.makeUnique(content, sequence++)));
+		}
+		seededCandidateId = seededCandidate.getId();
+		candidate = application.createCandidate();
+	}
+
+	//Keeps the database and the content store at the same size in every iteration
+	@TearDown(Level.Iteration)
+	public void deleteSavedDocuments() {
+		for (Integer id : savedDocumentIds) {
+			documentService.delete(id);
+		}
+		savedDocumentIds.clear();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		application.close();
+	}
+
+	@Benchmark
+	public Document save() throws IOException {
+		Document document = newDocument(candidate);
+		documentService.save(document, new ByteArrayInputStream(BenchmarkApplication.makeUnique(content, sequence++)));
+		savedDocumentIds.add(document.getId());
+		return document;
+	}
+
+	@Benchmark
+	public List<Document> findByCandidateId() {
+		return documentRepository.findByCandidate_Id(seededCandidateId);
+	}
+
+	@Benchmark
+	public List<DocumentSummary> findSummariesByCandidateId() {
+		return documentRepository.findSummariesByCandidateId(seededCandidateId);
+	}
+
+	private Document newDocument(Candidate candidate) {
+		Document document = new Document();
+		document.setName("Zeugnis " + sequence + ".pdf");
+		document.setContentType(DocumentService.PDF_CONTENT_TYPE);
+		document.setCandidate(candidate);
+		return document;
+	}
+}
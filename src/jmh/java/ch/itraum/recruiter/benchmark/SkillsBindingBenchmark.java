@@ -0,0 +1,82 @@
+package ch.itraum.recruiter.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.format.support.DefaultFormattingConversionService;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.validation.BindingResult;
+import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
+import org.springframework.web.bind.ServletRequestDataBinder;
+
+import ch.itraum.recruiter.model.Skills;
+
+//Binding the posted skills form to a Skills object and validating it, as Spring MVC does before calling postSkills
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SkillsBindingBenchmark {
+
+	//An incomplete form leaves the required fields empty, which produces a few errors
+	@Param({ "true", "false" })
+	public boolean complete;
+
+	private LocalValidatorFactoryBean validator;
+
+	private DefaultFormattingConversionService conversionService;
+
+	private MockHttpServletRequest request;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		validator = new LocalValidatorFactoryBean();
+		validator.afterPropertiesSet();
+		conversionService = new DefaultFormattingConversionService();
+
+		//The parameters the form in skills.html sends
+		request = new MockHttpServletRequest("POST", "/skills");
+		request.addParameter("institution", complete ? "ETH Zurich" : "");
+		request.addParameter("topic", complete ? "Informatik" : "");
+		request.addParameter("degree", complete ? "MSc" : "");
+		request.addParameter("startDateEducationMonth", "8");
+		request.addParameter("startDateEducationYear", "2005");
+		request.addParameter("endDateEducationMonth", "6");
+		request.addParameter("endDateEducationYear", "2010");
+		request.addParameter("_prospectiveEnd", "on");
+		request.addParameter("position", complete ? "Software Engineer" : "");
+		request.addParameter("jobField", "Informatik");
+		request.addParameter("cancelationPeriod", "3 Monate");
+		request.addParameter("startDateExperienceMonth", "9");
+		request.addParameter("startDateExperienceYear", "2010");
+		request.addParameter("endDateExperienceMonth", "11");
+		request.addParameter("endDateExperienceYear", "2013");
+		request.addParameter("currentPosition", "on");
+		request.addParameter("_currentPosition", "on");
+		request.addParameter("_hasNoExperience", "on");
+		request.addParameter("buttonPressed", "contactSkills_Forward");
+	}
+
+	@Benchmark
+	public BindingResult bindAndValidate() {
+		ServletRequestDataBinder binder = new ServletRequestDataBinder(new Skills(), "skills");
+		binder.setConversionService(conversionService);
+		binder.setValidator(validator);
+		binder.bind(request);
+		binder.validate();
+		return binder.getBindingResult();
+	}
+}
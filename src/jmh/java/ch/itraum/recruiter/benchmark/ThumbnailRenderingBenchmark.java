@@ -0,0 +1,89 @@
+package ch.itraum.recruiter.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.itraum.recruiter.metrics.MetricsRegistry;
+import ch.itraum.recruiter.thumbnail.Images;
+import ch.itraum.recruiter.thumbnail.JPedalRenderer;
+import ch.itraum.recruiter.thumbnail.PdfBoxRenderer;
+import ch.itraum.recruiter.thumbnail.PdfRenderer;
+import ch.itraum.recruiter.thumbnail.RasterBudget;
+import ch.itraum.recruiter.thumbnail.RenderablePdf;
+
+//Rendering the first page of a CV and encoding it as PNG, separately and together, with both engines
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ThumbnailRenderingBenchmark {
+
+	@Param({ PdfBoxRenderer.ENGINE, JPedalRenderer.ENGINE })
+	public String engine;
+
+	//The width of the thumbnails in the wizard and of a page shown in full
+	@Param({ "200", "800" })
+	public int width;
+
+	private PdfRenderer renderer;
+
+	private File document;
+
+	private BufferedImage renderedPage;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		//A budget that never limits, only the rendering itself is measured
+		RasterBudget rasterBudget = new RasterBudget(Long.MAX_VALUE / 8, Long.MAX_VALUE, 60000, new MetricsRegistry());
+		renderer = PdfBoxRenderer.ENGINE.equals(engine)
+				? new PdfBoxRenderer(new File(System.getProperty("java.io.tmpdir"), "recruiter-benchmark"), rasterBudget)
+				: new JPedalRenderer(Runtime.getRuntime().availableProcessors(), 60000, rasterBudget);
+		document = File.createTempFile("benchmark-", ".pdf");
+		Files.write(document.toPath(), SyntheticCvs.create(2, 1));
+		renderedPage = renderPage();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		document.delete();
+	}
+
+	@Benchmark
+	public BufferedImage renderPage() throws IOException {
+		RenderablePdf pdf = renderer.open(document);
+		try {
+			return pdf.renderPage(0, width);
+		} finally {
+			pdf.close();
+		}
+	}
+
+	@Benchmark
+	public byte[] encodePng() throws IOException {
+		return Images.toPng(renderedPage);
+	}
+
+	@Benchmark
+	public byte[] renderAndEncodePng() throws IOException {
+		return Images.toPng(renderPage());
+	}
+}
@@ -0,0 +1,110 @@
+package ch.itraum.recruiter.benchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.async.WebAsyncTask;
+
+import ch.itraum.recruiter.controller.FrontendController;
+import ch.itraum.recruiter.model.Candidate;
+import ch.itraum.recruiter.model.Document;
+import ch.itraum.recruiter.repository.DocumentRepository;
+import ch.itraum.recruiter.service.DocumentService;
+import ch.itraum.recruiter.session.ApplicationDraft;
+import ch.itraum.recruiter.session.SessionSizeEstimator;
+import ch.itraum.recruiter.session.WizardState;
+import ch.itraum.recruiter.session.WizardStateStore;
+
+//An upload as FrontendController.fileUploadSubmit handles it: reading the part, storing the content and saving the document.
+//Parsing the multipart request is the job of the servlet container and isn't part of this benchmark.
+//The task the controller hands to the uploadExecutor is run on the benchmark thread.
+//The uploads only start like PDFs, the rendering jobs they start fail right away; rendering is measured by ThumbnailRenderingBenchmark.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class UploadBenchmark {
+
+	private static final byte[] PDF_HEADER = "%PDF-1.4\n".getBytes(StandardCharsets.US_ASCII);
+
+	@Param({ "65536", "1048576", "10485760" })
+	public int contentLength;
+
+	private BenchmarkApplication application;
+
+	private FrontendController frontendController;
+
+	private DocumentRepository documentRepository;
+
+	private DocumentService documentService;
+
+	private int candidateId;
+
+	private byte[] content;
+
+	private long sequence;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		application = new BenchmarkApplication();
+		frontendController = application.getBean(FrontendController.class);
+		documentRepository = application.getBean(DocumentRepository.class);
+		documentService = application.getBean(DocumentService.class);
+		content = BenchmarkApplication.randomContent(contentLength);
+		System.arraycopy(PDF_HEADER, 0, content, 0, PDF_HEADER.length);
+
+		//The controller finds the candidate in the draft of the current request
+		Candidate candidate = application.createCandidate();
+		candidateId = candidate.getId();
+		ApplicationDraft draft = new ApplicationDraft();
+		draft.setCandidate(candidate);
+		draft.setCandidateId(candidateId);
+		draft.setRevision(1);
+		WizardStateStore wizardStateStore = application.getBean(WizardStateStore.class);
+		wizardStateStore.save("benchmark", draft);
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.setAttribute(WizardState.REQUEST_ATTRIBUTE, new WizardState(wizardStateStore,
+				application.getBean(SessionSizeEstimator.class), "benchmark", draft.getRevision()));
+		RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+	}
+
+	@TearDown(Level.Iteration)
+	public void deleteUploadedDocuments() {
+		for (Document document : documentRepository.findByCandidate_Id(candidateId)) {
+			documentService.delete(document);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		RequestContextHolder.resetRequestAttributes();
+		application.close();
+	}
+
+	@Benchmark
+	public void upload() throws Exception {
+		WebAsyncTask<Void> task = frontendController.fileUploadSubmit(new BytesPart("Zeugnis.pdf", "application/pdf",
+				BenchmarkApplication.makeUnique(content, PDF_HEADER.length, sequence++)), new MockHttpServletResponse());
+		task.getCallable().call();
+	}
+}
@@ -0,0 +1,186 @@
+package ch.itraum.recruiter.tomcat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Properties;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.coyote.AbstractProtocol;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.PropertyPlaceholderHelper;
+import org.springframework.web.SpringServletContainerInitializer;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.context.support.WebApplicationContextUtils;
+
+import ch.itraum.recruiter.config.WebAppInitializer;
+import ch.itraum.recruiter.config.WebConfig;
+import ch.itraum.recruiter.upload.UploadAdmissionFilter;
+
+//Runs the application in an embedded Tomcat with a NIO connector, for production. The settings recruiter.server.* are
+//taken from recruiter.properties and can be overridden with system properties or --name=value arguments, e.g.
+//java ch.itraum.recruiter.tomcat.ServerLauncher --recruiter.server.port=80 --recruiter.db.url=jdbc:h2:/data/recruiter
+//Unless another profile is chosen it runs in the prod profile. On shutdown (Ctrl-C, SIGTERM) the uploads
+//in progress may complete before Tomcat stops, see shutdown.
+public class ServerLauncher {
+
+	private static final String PROPERTIES = "recruiter.properties";
+
+	private static final String PREFIX = "recruiter.server.";
+
+	private static final String NIO_PROTOCOL = "org.apache.coyote.http11.Http11NioProtocol";
+
+	private static final String PROFILES_PROPERTY = "spring.profiles.active";
+
+	//Content types of the static resources, a plain context doesn't know any
+	private static final String[][] MIME_TYPES = { { "css", "text/css" }, { "js", "application/javascript" }, { "png", "image/png" },
+			{ "gif", "image/gif" }, { "jpg", "image/jpeg" }, { "ico", "image/x-icon" }, { "svg", "image/svg+xml" },
+			{ "ttf", "application/x-font-ttf" }, { "eot", "application/vnd.ms-fontobject" }, { "woff", "application/font-woff" } };
+
+	private static final Logger logger = LoggerFactory.getLogger(ServerLauncher.class);
+
+	private final Properties settings;
+
+	private Tomcat tomcat;
+
+	private Context context;
+
+	public ServerLauncher(Properties settings) {
+		this.settings = settings;
+	}
+
+	public static void main(String[] args) throws Exception {
+		final ServerLauncher launcher = new ServerLauncher(settings(args));
+		launcher.start();
+		Runtime.getRuntime().addShutdownHook(new Thread("shutdown") {
+			@Override
+			public void run() {
+				launcher.shutdown();
+			}
+		});
+		launcher.tomcat.getServer().await();
+	}
+
+	//The settings of recruiter.properties, overridden by system properties and then by --name=value arguments.
+	//The arguments become system properties as well, so they also override the settings of the application.
+	public static Properties settings(String[] args) throws IOException {
+		for (String arg : args) {
+			int equals = arg.indexOf('=');
+			if (!arg.startsWith("--") || equals < 0) {
+				throw new IllegalArgumentException("Settings are given as --name=value, not as " + arg);
+			}
+			System.setProperty(arg.substring(2, equals), arg.substring(equals + 1));
+		}
+		if (System.getProperty(PROFILES_PROPERTY) == null) {
+			System.setProperty(PROFILES_PROPERTY, WebConfig.PRODUCTION_PROFILE);
+		}
+
+		Properties properties = new Properties();
+		InputStream inputStream = ServerLauncher.class.getClassLoader().getResourceAsStream(PROPERTIES);
+		if (inputStream == null) {
+			throw new IOException(PROPERTIES + " is not on the classpath");
+		}
+		try {
+			properties.load(inputStream);
+		} finally {
+			inputStream.close();
+		}
+		properties.putAll(System.getProperties());
+
+		PropertyPlaceholderHelper placeholderHelper = new PropertyPlaceholderHelper("${", "}");
+		Properties settings = new Properties();
+		for (String name : properties.stringPropertyNames()) {
+			settings.setProperty(name, placeholderHelper.replacePlaceholders(properties.getProperty(name), properties));
+		}
+		return settings;
+	}
+
+	public Tomcat start() throws Exception {
+		tomcat = new Tomcat();
+		tomcat.setBaseDir(new File(setting("baseDirectory")).getAbsolutePath());
+
+		Connector connector = new Connector(NIO_PROTOCOL);
+		connector.setPort(intSetting("port"));
+		connector.setProperty("maxThreads", setting("maxThreads"));
+		connector.setProperty("acceptCount", setting("acceptCount"));
+		connector.setProperty("maxConnections", setting("maxConnections"));
+		connector.setProperty("connectionTimeout", setting("connectionTimeoutMillis"));
+		connector.setProperty("keepAliveTimeout", setting("keepAliveTimeoutMillis"));
+		connector.setProperty("maxKeepAliveRequests", setting("maxKeepAliveRequests"));
+		connector.setProperty("useSendfile", setting("sendfile"));
+		String threads = setting("maxThreads") + " threads";
+		if (Boolean.parseBoolean(setting("virtualThreads"))) {
+			VirtualThreadExecutor executor = VirtualThreadExecutor.create("http-virtual-");
+			if (executor != null) {
+				((AbstractProtocol) connector.getProtocolHandler()).setExecutor(executor);
+				threads = "virtual threads";
+			} else {
+				logger.warn("This JVM has no virtual threads, requests are handled by " + threads);
+			}
+		}
+		tomcat.getService().addConnector(connector);
+		tomcat.setConnector(connector);
+
+		context = addApplication(tomcat, new File(setting("webappDirectory")));
+		tomcat.start();
+		logger.info("Listening on port " + connector.getLocalPort() + " with " + threads + ", at most " + setting("maxConnections")
+				+ " connections and sendfile " + (Boolean.parseBoolean(setting("sendfile")) ? "on" : "off"));
+		return tomcat;
+	}
+
+	//Lets the uploads in progress complete, for at most drainTimeoutSeconds, and stops Tomcat.
+	//Meanwhile new uploads are rejected with Retry-After, the other pages are still served.
+	public void shutdown() {
+		try {
+			WebApplicationContext applicationContext = WebApplicationContextUtils.getWebApplicationContext(context.getServletContext());
+			if (applicationContext != null) {
+				long drainTimeoutMillis = intSetting("drainTimeoutSeconds") * 1000L;
+				if (!applicationContext.getBean(UploadAdmissionFilter.class).drain(drainTimeoutMillis)) {
+					logger.warn("Uploads still in progress after " + drainTimeoutMillis + " ms are aborted");
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		try {
+			tomcat.stop();
+			tomcat.destroy();
+		} catch (LifecycleException e) {
+			logger.error("Could not stop Tomcat", e);
+		}
+	}
+
+	public Tomcat getTomcat() {
+		return tomcat;
+	}
+
+	//Adds the application at the root of the server, with the classes on the classpath and the static resources
+	//and templates in the given directory (src/main/webapp or an unpacked war)
+	public static Context addApplication(Tomcat tomcat, File webappDirectory) {
+		//No scanning for initializers, the application is started by its WebAppInitializer directly
+		Context context = tomcat.addContext("", webappDirectory.getAbsolutePath());
+		context.addServletContainerInitializer(new SpringServletContainerInitializer(),
+				Collections.<Class<?>> singleton(WebAppInitializer.class));
+		for (String[] mimeType : MIME_TYPES) {
+			context.addMimeMapping(mimeType[0], mimeType[1]);
+		}
+		return context;
+	}
+
+	private String setting(String name) {
+		String value = settings.getProperty(PREFIX + name);
+		if (value == null) {
+			throw new IllegalStateException("The setting " + PREFIX + name + " is missing");
+		}
+		return value.trim();
+	}
+
+	private int intSetting(String name) {
+		return Integer.parseInt(setting(name));
+	}
+}
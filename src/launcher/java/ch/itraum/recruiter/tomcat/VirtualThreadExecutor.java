@@ -0,0 +1,36 @@
+package ch.itraum.recruiter.tomcat;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+
+//Runs every task on a new virtual thread. Virtual threads came with Java 21 while the application is built for Java 7,
+//so their factory is looked up through reflection. create returns null on a JVM which doesn't have them.
+public class VirtualThreadExecutor implements Executor {
+
+	private final ThreadFactory threadFactory;
+
+	private VirtualThreadExecutor(ThreadFactory threadFactory) {
+		this.threadFactory = threadFactory;
+	}
+
+	//Threads are named namePrefix followed by a counter, like the threads of Tomcat's own executor
+	public static VirtualThreadExecutor create(String namePrefix) {
+		try {
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, Long.valueOf(0));
+			return new VirtualThreadExecutor((ThreadFactory) builderClass.getMethod("factory").invoke(builder));
+		} catch (ClassNotFoundException e) {
+			return null;
+		} catch (NoSuchMethodException e) {
+			return null;
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Could not create a factory for virtual threads", e);
+		}
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		threadFactory.newThread(command).start();
+	}
+}
@@ -0,0 +1,56 @@
+package ch.itraum.recruiter.async;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+//The body of a request read by a HandlerExecutor callable. Once the request timed out the container completes
+//and recycles it, so the timeout aborts the stream and the callable fails at its next read instead of reading on.
+public class AbortableInputStream extends FilterInputStream {
+
+	private volatile boolean aborted;
+
+	public AbortableInputStream(InputStream in) {
+		super(in);
+	}
+
+	//Called on the container thread when the request timed out
+	public void abort() {
+		aborted = true;
+		try {
+			in.close();
+		} catch (IOException e) {
+			//The reader fails anyway
+		}
+	}
+
+	@Override
+	public int read() throws IOException {
+		checkAborted();
+		return super.read();
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		checkAborted();
+		return super.read(b, off, len);
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		checkAborted();
+		return super.skip(n);
+	}
+
+	@Override
+	public int available() throws IOException {
+		checkAborted();
+		return super.available();
+	}
+
+	private void checkAborted() throws IOException {
+		if (aborted) {
+			throw new IOException("The request timed out, its body isn't read anymore");
+		}
+	}
+}
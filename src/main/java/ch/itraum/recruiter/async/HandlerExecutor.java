@@ -0,0 +1,140 @@
+package ch.itraum.recruiter.async;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.async.WebAsyncTask;
+
+import ch.itraum.recruiter.metrics.Counter;
+import ch.itraum.recruiter.metrics.Gauge;
+import ch.itraum.recruiter.metrics.Histogram;
+import ch.itraum.recruiter.metrics.MetricsRegistry;
+
+//Threads of their own for a kind of slow handlers, like uploads or thumbnails. A handler returns task(...)
+//and the container thread is free again right away, so slow work of one kind can't use up the threads
+//serving the wizard pages, nor the threads of another kind. A request not answered within timeoutMillis gets
+//a 503 (see HandlerTimeoutException), or whatever the timeout callable returns. Work still queued for a request
+//which timed out is skipped. A HandlerWork in the request learns when its tasks have really finished.
+//The queue is unbounded on purpose: it holds at most what arrives within timeoutMillis, everything older is skipped.
+//A task answers with an error by throwing an exception with a @ResponseStatus, which is answered on the container thread.
+//sendError on the task's thread would race the dispatch of the result.
+public class HandlerExecutor {
+
+	private final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+
+	private final String name;
+
+	private final long timeoutMillis;
+
+	private final Histogram queueTime;
+
+	private final Counter timeouts;
+
+	private final Counter skipped;
+
+	public HandlerExecutor(String name, int threads, long timeoutMillis, MetricsRegistry metricsRegistry) {
+		this.name = name;
+		this.timeoutMillis = timeoutMillis;
+		executor.setThreadNamePrefix(name + "-");
+		executor.setCorePoolSize(threads);
+		executor.setMaxPoolSize(threads);
+		executor.initialize();
+
+		String prefix = "async." + name;
+		queueTime = metricsRegistry.histogram(prefix + ".queue");
+		timeouts = metricsRegistry.counter(prefix + ".timeouts");
+		skipped = metricsRegistry.counter(prefix + ".skipped");
+		metricsRegistry.register(prefix + ".active", new Gauge() {
+			@Override
+			public long getValue() {
+				return executor.getActiveCount();
+			}
+		});
+		metricsRegistry.register(prefix + ".queued", new Gauge() {
+			@Override
+			public long getValue() {
+				return executor.getThreadPoolExecutor().getQueue().size();
+			}
+		});
+	}
+
+	public <T> WebAsyncTask<T> task(Callable<T> callable) {
+		return task(callable, (Callable<T>) null);
+	}
+
+	//Runs whenTimedOut before the 503 is sent, e.g. to stop work the callable waits for
+	public <T> WebAsyncTask<T> task(Callable<T> callable, final Runnable whenTimedOut) {
+		return task(callable, new Callable<T>() {
+			@Override
+			public T call() {
+				whenTimedOut.run();
+				throw timedOut();
+			}
+		});
+	}
+
+	//The callable runs on one of the threads of this executor, it has no access to the RequestContextHolder.
+	//Everything it needs from the request has to be looked up before.
+	public <T> WebAsyncTask<T> task(final Callable<T> callable, final Callable<T> onTimeout) {
+		final long queuedAt = System.nanoTime();
+		final HandlerWork work = currentWork();
+		if (work != null) {
+			work.taskStarted();
+		}
+		//Taken by whichever comes first, the callable starting or the request completing without it
+		final AtomicBoolean claimed = new AtomicBoolean();
+		WebAsyncTask<T> task = new WebAsyncTask<T>(timeoutMillis, executor, new Callable<T>() {
+			@Override
+			public T call() throws Exception {
+				queueTime.recordNanos(System.nanoTime() - queuedAt);
+				if (!claimed.compareAndSet(false, true)) {
+					skipped.increment();
+					return null;
+				}
+				try {
+					return callable.call();
+				} finally {
+					if (work != null) {
+						work.taskFinished();
+					}
+				}
+			}
+		});
+		task.onTimeout(new Callable<T>() {
+			@Override
+			public T call() throws Exception {
+				timeouts.increment();
+				if (onTimeout != null) {
+					return onTimeout.call();
+				}
+				throw timedOut();
+			}
+		});
+		task.onCompletion(new Runnable() {
+			@Override
+			public void run() {
+				if (claimed.compareAndSet(false, true) && work != null) {
+					work.taskFinished();
+				}
+			}
+		});
+		return task;
+	}
+
+	private static HandlerWork currentWork() {
+		RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+		return attributes != null ? (HandlerWork) attributes.getAttribute(HandlerWork.REQUEST_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST)
+				: null;
+	}
+
+	private HandlerTimeoutException timedOut() {
+		return new HandlerTimeoutException("Not handled by the " + name + " executor within " + timeoutMillis + " ms");
+	}
+
+	public void shutdown() {
+		executor.shutdown();
+	}
+}
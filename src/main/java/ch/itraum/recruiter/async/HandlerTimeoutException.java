@@ -0,0 +1,15 @@
+package ch.itraum.recruiter.async;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+//The answer to a request its HandlerExecutor didn't handle in time. Spring's own 503 on timeout only calls sendError
+//and leaves the request open, which Tomcat 7 then ends with a 500. An exception is dispatched like a result.
+@SuppressWarnings("serial")
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class HandlerTimeoutException extends RuntimeException {
+
+	public HandlerTimeoutException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,40 @@
+package ch.itraum.recruiter.async;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+//Tells a filter holding resources for a request when the request is really done with them. After a timeout
+//the response is complete while a callable of a HandlerExecutor may still be running, so the filter puts a
+//HandlerWork into the request attribute REQUEST_ATTRIBUTE, and whenDone runs once the request has completed
+//and every task of the request has finished or was skipped.
+public class HandlerWork {
+
+	public static final String REQUEST_ATTRIBUTE = HandlerWork.class.getName();
+
+	//The request itself counts as one
+	private final AtomicInteger pending = new AtomicInteger(1);
+
+	private final Runnable whenDone;
+
+	public HandlerWork(Runnable whenDone) {
+		this.whenDone = whenDone;
+	}
+
+	void taskStarted() {
+		pending.incrementAndGet();
+	}
+
+	void taskFinished() {
+		finished();
+	}
+
+	//Called by the filter once the response is complete
+	public void requestCompleted() {
+		finished();
+	}
+
+	private void finished() {
+		if (pending.decrementAndGet() == 0) {
+			whenDone.run();
+		}
+	}
+}
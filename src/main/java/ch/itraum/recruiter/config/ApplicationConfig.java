@@ -1,15 +1,21 @@
 package ch.itraum.recruiter.config;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
 import javax.persistence.EntityManagerFactory;
 import javax.sql.DataSource;
 
+import org.apache.tomcat.jdbc.pool.PoolProperties;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.core.env.Environment;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
-import org.springframework.jdbc.datasource.DriverManagerDataSource;
 import org.springframework.orm.jpa.JpaDialect;
 import org.springframework.orm.jpa.JpaTransactionManager;
 import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
@@ -19,34 +25,95 @@ import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 
+import ch.itraum.recruiter.jdbc.InstrumentedDataSource;
+import ch.itraum.recruiter.metrics.JvmMetrics;
+import ch.itraum.recruiter.metrics.MetricsRegistry;
+import ch.itraum.recruiter.metrics.RepositoryTimingPostProcessor;
+import ch.itraum.recruiter.migration.DocumentContentMigration;
+import ch.itraum.recruiter.migration.SchemaMigrator;
 import ch.itraum.recruiter.model.Candidate;
 import ch.itraum.recruiter.repository.CandidateRepository;
+import ch.itraum.recruiter.service.CandidateService;
+import ch.itraum.recruiter.service.DocumentService;
+import ch.itraum.recruiter.service.LetterOfMotivationService;
+import ch.itraum.recruiter.session.InMemoryWizardStateStore;
+import ch.itraum.recruiter.session.JdbcWizardStateStore;
+import ch.itraum.recruiter.session.NearCacheWizardStateStore;
+import ch.itraum.recruiter.session.WizardStateStore;
+import ch.itraum.recruiter.storage.ContentLeases;
+import ch.itraum.recruiter.storage.DocumentContentStore;
+import ch.itraum.recruiter.storage.FileSystemDocumentContentStore;
+import ch.itraum.recruiter.thumbnail.JPedalRenderer;
+import ch.itraum.recruiter.thumbnail.PdfBoxRenderer;
+import ch.itraum.recruiter.thumbnail.PdfRenderer;
+import ch.itraum.recruiter.thumbnail.PreviewRenderer;
+import ch.itraum.recruiter.thumbnail.RasterBudget;
+import ch.itraum.recruiter.thumbnail.RenderPipeline;
+import ch.itraum.recruiter.thumbnail.ThumbnailCache;
+import ch.itraum.recruiter.upload.UploadAdmissionFilter;
+import ch.itraum.recruiter.upload.UploadSpool;
  
 @Configuration
 @EnableJpaRepositories(basePackageClasses = { CandidateRepository.class })
 @EnableTransactionManagement
+@PropertySource("classpath:recruiter.properties")
 public class ApplicationConfig {
 
-	@Bean
+	public static final String WIZARD_STORE_MEMORY = "memory";
+
+	public static final String WIZARD_STORE_JDBC = "jdbc";
+	
+	@Autowired
+	private Environment environment;
+
+	@Bean(destroyMethod = "close")
 	public DataSource dataSource() {
-		DriverManagerDataSource dataSource = new DriverManagerDataSource();
-		dataSource.setDriverClassName("org.h2.Driver");
-		dataSource.setUrl("jdbc:h2:~/H2DB/recruiter");
-		dataSource.setUsername("sa");
-		dataSource.setPassword("");
+		PoolProperties poolProperties = new PoolProperties();
+		poolProperties.setDriverClassName("org.h2.Driver");
+		poolProperties.setUrl(environment.getRequiredProperty("recruiter.db.url"));
+		poolProperties.setUsername(environment.getRequiredProperty("recruiter.db.username"));
+		poolProperties.setPassword(environment.getRequiredProperty("recruiter.db.password"));
+
+		int minIdle = environment.getRequiredProperty("recruiter.db.pool.minIdle", Integer.class);
+		poolProperties.setInitialSize(minIdle);
+		poolProperties.setMinIdle(minIdle);
+		poolProperties.setMaxIdle(environment.getRequiredProperty("recruiter.db.pool.maxActive", Integer.class));
+		poolProperties.setMaxActive(environment.getRequiredProperty("recruiter.db.pool.maxActive", Integer.class));
+		poolProperties.setMaxWait(environment.getRequiredProperty("recruiter.db.pool.maxWaitMillis", Integer.class));
+
+		poolProperties.setValidationQuery("SELECT 1");
+		poolProperties.setTestOnBorrow(true);
+		poolProperties.setValidationInterval(30000);
+		poolProperties.setJdbcInterceptors("org.apache.tomcat.jdbc.pool.interceptor.StatementCache(prepared=true,callable=false,max="
+				+ environment.getRequiredProperty("recruiter.db.pool.statementCacheSize", Integer.class) + ")");
+
+		//Connections which aren't given back in time are logged with the stack trace of where they were taken
+		poolProperties.setSuspectTimeout(environment.getRequiredProperty("recruiter.db.pool.leakDetectionSeconds", Integer.class));
+		poolProperties.setLogAbandoned(true);
+
+		return new InstrumentedDataSource(new org.apache.tomcat.jdbc.pool.DataSource(poolProperties), metricsRegistry());
+	}
 
-		return dataSource;
+	//Runs the migrations in db/migration before Hibernate gets to see the schema
+	@Bean(initMethod = "migrate")
+	public SchemaMigrator schemaMigrator() throws IOException {
+		SchemaMigrator schemaMigrator = new SchemaMigrator(dataSource(), "classpath:db/migration", metricsRegistry());
+		schemaMigrator.addMigration(3, new DocumentContentMigration(documentContentStore()));
+		return schemaMigrator;
 	}
 
 	@Bean(name = "entityManagerFactory")
-	public EntityManagerFactory entityManagerFactory() {
+	public EntityManagerFactory entityManagerFactory() throws IOException {
+		schemaMigrator();
+
 		HibernateJpaVendorAdapter vendorAdapter = new HibernateJpaVendorAdapter();
 		vendorAdapter.setDatabase(Database.H2);
 
 		LocalContainerEntityManagerFactoryBean factory = new LocalContainerEntityManagerFactoryBean();
 
 		Map<String, String> jpaPropertyMap = new HashMap<String, String>();
-		jpaPropertyMap.put("hibernate.hbm2ddl.auto", "update");
+		//The schema is created by the SchemaMigrator, Hibernate only checks that it fits the entities
+		jpaPropertyMap.put("hibernate.hbm2ddl.auto", "validate");
 		jpaPropertyMap.put("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
 
 		factory.setJpaPropertyMap(jpaPropertyMap);
@@ -59,13 +126,150 @@ public class ApplicationConfig {
 		return factory.getObject();
 	}
 
+	//The leases are the first listener, so they are revoked before anything derived from the content is purged
+	@Bean
+	public DocumentContentStore documentContentStore() throws IOException {
+		DocumentContentStore documentContentStore = new FileSystemDocumentContentStore(new File(
+				environment.getRequiredProperty("recruiter.storage.directory")));
+		documentContentStore.addReleaseListener(contentLeases());
+		return documentContentStore;
+	}
+
+	@Bean
+	public ContentLeases contentLeases() {
+		return new ContentLeases();
+	}
+
+	@Bean
+	public UploadSpool uploadSpool() throws IOException {
+		return new UploadSpool(new File(environment.getRequiredProperty("recruiter.upload.directory")),
+				environment.getRequiredProperty("recruiter.upload.maxBytes", Long.class),
+				environment.getRequiredProperty("recruiter.upload.chunkBytes", Integer.class),
+				environment.getRequiredProperty("recruiter.upload.expireAfterMinutes", Long.class) * 60 * 1000, metricsRegistry());
+	}
+
+	//Applied to the requests by the DelegatingFilterProxy of the WebAppInitializer
+	@Bean
+	public UploadAdmissionFilter uploadAdmissionFilter() {
+		return new UploadAdmissionFilter(environment.getRequiredProperty("recruiter.upload.admission.maxInFlightBytes", Long.class),
+				environment.getRequiredProperty("recruiter.upload.admission.maxPerClient", Integer.class),
+				environment.getRequiredProperty("recruiter.upload.admission.maxPerAddress", Integer.class),
+				environment.getRequiredProperty("recruiter.upload.chunkBytes", Long.class),
+				environment.getRequiredProperty("recruiter.upload.admission.retryAfterSeconds", Integer.class), metricsRegistry());
+	}
+
+	@Bean
+	public DocumentService documentService() {
+		return new DocumentService();
+	}
+
+	@Bean(initMethod = "migrateLegacyLetters")
+	public LetterOfMotivationService letterOfMotivationService() {
+		return new LetterOfMotivationService();
+	}
+
+	@Bean
+	public CandidateService candidateService() {
+		return new CandidateService();
+	}
+
+	//With the jdbc store the wizard state is shared through the database and nodes don't need sticky sessions,
+	//a near cache keeps reading it in process. The memory store is enough for a single node.
+	@Bean
+	public WizardStateStore wizardStateStore() throws IOException {
+		long expireAfterMillis = environment.getRequiredProperty("recruiter.wizard.timeoutMinutes", Long.class) * 60 * 1000;
+		String store = environment.getRequiredProperty("recruiter.wizard.store");
+		if (WIZARD_STORE_JDBC.equals(store)) {
+			schemaMigrator();
+			JdbcWizardStateStore jdbcStore = new JdbcWizardStateStore(dataSource(), expireAfterMillis);
+			return new NearCacheWizardStateStore(jdbcStore, environment.getRequiredProperty("recruiter.wizard.nearCacheEntries", Integer.class),
+					expireAfterMillis, environment.getRequiredProperty("recruiter.wizard.writeBehindMillis", Long.class), metricsRegistry());
+		} else if (WIZARD_STORE_MEMORY.equals(store)) {
+			return new InMemoryWizardStateStore(expireAfterMillis);
+		}
+		throw new IllegalArgumentException("Unknown wizard store " + store + ", known are " + WIZARD_STORE_MEMORY + " and " + WIZARD_STORE_JDBC);
+	}
+
+	@Bean
+	public MetricsRegistry metricsRegistry() {
+		MetricsRegistry metricsRegistry = new MetricsRegistry();
+		JvmMetrics.register(metricsRegistry);
+		return metricsRegistry;
+	}
+
+	//Static, so it can be created before this configuration is
+	@Bean
+	public static RepositoryTimingPostProcessor repositoryTimingPostProcessor() {
+		return new RepositoryTimingPostProcessor();
+	}
+
+	@Bean
+	public ThumbnailCache thumbnailCache() throws IOException {
+		ThumbnailCache thumbnailCache = new ThumbnailCache(new File(environment.getRequiredProperty("recruiter.thumbnails.directory")),
+				environment.getRequiredProperty("recruiter.thumbnails.memoryBytes", Long.class),
+				environment.getRequiredProperty("recruiter.thumbnails.diskBytes", Long.class), metricsRegistry());
+		documentContentStore().addReleaseListener(thumbnailCache);
+		return thumbnailCache;
+	}
+
+	//Shared by both engines, so concurrent renders together stay within one memory budget
+	@Bean
+	public RasterBudget rasterBudget() {
+		return new RasterBudget(environment.getRequiredProperty("recruiter.render.maxPagePixels", Long.class),
+				environment.getRequiredProperty("recruiter.render.memoryBudgetBytes", Long.class),
+				environment.getRequiredProperty("recruiter.render.memoryWaitMillis", Long.class), metricsRegistry());
+	}
+
+	@Bean
+	public PdfBoxRenderer pdfBoxRenderer() throws IOException {
+		return new PdfBoxRenderer(new File(environment.getRequiredProperty("recruiter.render.scratchDirectory")), rasterBudget());
+	}
+
+	@Bean
+	public JPedalRenderer jPedalRenderer() {
+		//Without a configured size there is one decoder for every render thread
+		int poolSize = environment.getRequiredProperty("recruiter.render.jpedal.poolSize", Integer.class);
+		return new JPedalRenderer(poolSize > 0 ? poolSize : renderThreads(),
+				environment.getRequiredProperty("recruiter.render.jpedal.acquireTimeoutMillis", Long.class), rasterBudget());
+	}
+
+	//Deletes what it derived from a document when the content store deletes the content
+	@Bean
+	public RenderPipeline renderPipeline() throws IOException {
+		RenderPipeline renderPipeline = new RenderPipeline(Arrays.<PdfRenderer> asList(pdfBoxRenderer(), jPedalRenderer()),
+				environment.getRequiredProperty("recruiter.render.engine"),
+				environment.getRequiredProperty("recruiter.render.width", Integer.class),
+				environment.getRequiredProperty("recruiter.render.pagesOnUpload", Integer.class),
+				renderThreads(),
+				environment.getRequiredProperty("recruiter.render.queueCapacity", Integer.class),
+				environment.getRequiredProperty("recruiter.render.maxAttempts", Integer.class),
+				environment.getRequiredProperty("recruiter.render.retryDelayMillis", Long.class),
+				new File(environment.getRequiredProperty("recruiter.render.textDirectory")),
+				metricsRegistry());
+		documentContentStore().addReleaseListener(renderPipeline);
+		return renderPipeline;
+	}
+
+	@Bean
+	public PreviewRenderer previewRenderer() throws IOException {
+		int threads = environment.getRequiredProperty("recruiter.render.preview.threads", Integer.class);
+		return new PreviewRenderer(Arrays.<PdfRenderer> asList(pdfBoxRenderer(), jPedalRenderer()),
+				threads > 0 ? threads : Runtime.getRuntime().availableProcessors(),
+				environment.getRequiredProperty("recruiter.render.preview.pagesPerTask", Integer.class), metricsRegistry());
+	}
+
+	private int renderThreads() {
+		int threads = environment.getRequiredProperty("recruiter.render.threads", Integer.class);
+		return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+	}
+
 	@Bean
 	public JpaDialect jpaDialect() {
 		return new HibernateJpaDialect();
 	}
 
 	@Bean
-	public PlatformTransactionManager transactionManager() {
+	public PlatformTransactionManager transactionManager() throws IOException {
 		JpaTransactionManager txManager = new JpaTransactionManager();
 		txManager.setEntityManagerFactory(entityManagerFactory());
 		return txManager;
@@ -4,14 +4,25 @@ import java.io.File;
 
 import javax.servlet.Filter;
 import javax.servlet.MultipartConfigElement;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
 import javax.servlet.ServletRegistration;
 
 import org.springframework.web.filter.CharacterEncodingFilter;
+import org.springframework.web.filter.DelegatingFilterProxy;
 import org.springframework.web.servlet.support.AbstractAnnotationConfigDispatcherServletInitializer;
 
 public class WebAppInitializer extends AbstractAnnotationConfigDispatcherServletInitializer {
 	
-	private int maxUploadSizeInMb = 5 * 1024 * 1024; // 5 MB
+	//Only limits multipart uploads, chunked uploads are limited by recruiter.upload.maxBytes
+	private int maxUploadSizeInBytes = 5 * 1024 * 1024; // 5 MB
+
+	//Without -Dspring.profiles.active=prod the application runs in the development profile
+	@Override
+	public void onStartup(ServletContext servletContext) throws ServletException {
+		servletContext.setInitParameter("spring.profiles.default", WebConfig.DEVELOPMENT_PROFILE);
+		super.onStartup(servletContext);
+	}
 
 	@Override
 	protected Class<?>[] getRootConfigClasses() {
@@ -33,9 +44,10 @@ public class WebAppInitializer extends AbstractAnnotationConfigDispatcherServlet
 
         File uploadDirectory = new File("/tmp");
 
+        //A threshold of 0 spools every part to disk, so the heap an upload takes doesn't depend on its size
         MultipartConfigElement multipartConfigElement = 
             new MultipartConfigElement(uploadDirectory.getAbsolutePath(),
-                maxUploadSizeInMb, maxUploadSizeInMb * 2, maxUploadSizeInMb / 2);
+                maxUploadSizeInBytes, maxUploadSizeInBytes * 2, 0);
 
         registration.setMultipartConfig(multipartConfigElement);
 
@@ -48,6 +60,7 @@ public class WebAppInitializer extends AbstractAnnotationConfigDispatcherServlet
 		characterEncodingFilter.setEncoding("UTF-8");
 		characterEncodingFilter.setForceEncoding(true);
 		
-		return new Filter[] { characterEncodingFilter };
+		//The admission filter is a bean of the ApplicationConfig, see UploadAdmissionFilter
+		return new Filter[] { new DelegatingFilterProxy("uploadAdmissionFilter"), characterEncodingFilter };
 	}
 }
@@ -1,33 +1,130 @@
 package ch.itraum.recruiter.config;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.MessageSource;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.PropertySource;
 import org.springframework.context.support.ReloadableResourceBundleMessageSource;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.Environment;
 import org.springframework.web.multipart.support.StandardServletMultipartResolver;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
-import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurationSupport;
+import org.springframework.web.servlet.handler.SimpleUrlHandlerMapping;
+import org.springframework.web.servlet.i18n.CookieLocaleResolver;
 import org.springframework.web.servlet.i18n.LocaleChangeInterceptor;
-import org.springframework.web.servlet.i18n.SessionLocaleResolver;
+import org.springframework.web.servlet.support.RequestDataValueProcessor;
+import org.thymeleaf.cache.ICacheManager;
+import org.thymeleaf.cache.StandardCacheManager;
 import org.thymeleaf.spring3.SpringTemplateEngine;
+import org.thymeleaf.spring3.templateresolver.SpringResourceTemplateResolver;
 import org.thymeleaf.spring3.view.ThymeleafViewResolver;
-import org.thymeleaf.templateresolver.ServletContextTemplateResolver;
 
+import ch.itraum.recruiter.async.HandlerExecutor;
 import ch.itraum.recruiter.controller.FrontendController;
+import ch.itraum.recruiter.jdbc.QueryBudgetInterceptor;
+import ch.itraum.recruiter.metrics.HandlerTimingInterceptor;
+import ch.itraum.recruiter.metrics.MetricsRegistry;
+import ch.itraum.recruiter.metrics.StartupTimer;
+import ch.itraum.recruiter.metrics.WizardFunnel;
+import ch.itraum.recruiter.reference.FixedListProvider;
+import ch.itraum.recruiter.reference.MonthProvider;
+import ch.itraum.recruiter.reference.ReferenceDataProvider;
+import ch.itraum.recruiter.reference.ReferenceDataRegistry;
+import ch.itraum.recruiter.reference.YearRangeProvider;
+import ch.itraum.recruiter.resource.ResourceUrlProcessor;
+import ch.itraum.recruiter.resource.StaticResourceHandler;
+import ch.itraum.recruiter.resource.StaticResources;
+import ch.itraum.recruiter.session.SessionSizeEstimator;
+import ch.itraum.recruiter.session.WizardStateInterceptor;
+import ch.itraum.recruiter.session.WizardStateStore;
+import ch.itraum.recruiter.tools.RecruiterHelper;
+import ch.itraum.recruiter.view.CountingCacheManager;
+import ch.itraum.recruiter.view.TemplateWarmUp;
 
 @Configuration
 @ComponentScan(basePackageClasses = { FrontendController.class })
+@PropertySource("classpath:recruiter.properties")
 public class WebConfig extends WebMvcConfigurationSupport {
 
-	@Override
-	public void addResourceHandlers(ResourceHandlerRegistry registry) {
-		registry.addResourceHandler("/resources/**").addResourceLocations("/resources/");
+	//Profile of the live system: templates and translations are cached. Every other profile reloads them on every request.
+	public static final String PRODUCTION_PROFILE = "prod";
+
+	public static final String DEVELOPMENT_PROFILE = "dev";
+
+	private static final String TEMPLATE_PREFIX = "/WEB-INF/view/";
+
+	private static final String TEMPLATE_SUFFIX = ".html";
+
+	//First year in the dropdown lists of the skills form
+	private static final int FIRST_YEAR = 1970;
+
+	//The languages the application is translated to, the first one is the default
+	private static final List<Locale> SUPPORTED_LOCALES = Arrays.asList(Locale.GERMAN, Locale.ENGLISH);
+
+	@Autowired
+	private Environment environment;
+
+	@Autowired
+	private MetricsRegistry metricsRegistry;
+
+	@Autowired
+	private WizardStateStore wizardStateStore;
+
+	@Bean
+	public StaticResources staticResources() {
+		return new StaticResources();
+	}
+
+	//Serves /resources/** before any other mapping is asked, with far-future caching for versioned URLs
+	@Bean
+	public SimpleUrlHandlerMapping staticResourceHandlerMapping() {
+		SimpleUrlHandlerMapping handlerMapping = new SimpleUrlHandlerMapping();
+		handlerMapping.setOrder(Ordered.HIGHEST_PRECEDENCE);
+		handlerMapping.setUrlMap(Collections.singletonMap(StaticResources.DIRECTORY + "**", staticResourceHandler()));
+		return handlerMapping;
+	}
+
+	@Bean
+	public StaticResourceHandler staticResourceHandler() {
+		return new StaticResourceHandler(staticResources(),
+				environment.getRequiredProperty("recruiter.resources.sendfileMinBytes", Long.class), metricsRegistry);
+	}
+
+	//Thymeleaf and Spring look this bean up by its name to rewrite the URLs in the templates
+	@Bean
+	public RequestDataValueProcessor requestDataValueProcessor() {
+		return new ResourceUrlProcessor(staticResources());
 	}
 
+	//The datasets of the dropdown lists are built once per locale, except during development
+	@Bean
+	public ReferenceDataRegistry referenceDataRegistry() {
+		Map<String, String> languages = new LinkedHashMap<String, String>();
+		languages.put(RecruiterHelper.LANGUAGE_GERMAN, "Deutsch");
+		languages.put(RecruiterHelper.LANGUAGE_ENGLISH, "English");
+
+		return new ReferenceDataRegistry(Arrays.<ReferenceDataProvider> asList(
+				new YearRangeProvider(FrontendController.YEAR_LIST_START, FIRST_YEAR, 0),
+				new YearRangeProvider(FrontendController.YEAR_LIST_END, FIRST_YEAR, 8),
+				new MonthProvider(FrontendController.MONTH_LIST, messageSource()),
+				new FixedListProvider(FrontendController.LANGUAGE_LIST, languages)), SUPPORTED_LOCALES, isProduction());
+	}
+
+	@Bean
+	public SessionSizeEstimator sessionSizeEstimator() {
+		return new SessionSizeEstimator(environment.getRequiredProperty("recruiter.session.maxAttributeBytes", Integer.class), metricsRegistry);
+	}
 
 	@Bean
 	public ThymeleafViewResolver viewResolver() {
@@ -41,23 +138,101 @@ public class WebConfig extends WebMvcConfigurationSupport {
 	public SpringTemplateEngine templateEngine() {
 		SpringTemplateEngine springTemplateEngine = new SpringTemplateEngine();
 		springTemplateEngine.setTemplateResolver(templateResolver());
+		springTemplateEngine.setCacheManager(templateCacheManager());
 		return springTemplateEngine;
 	}
 
+	//Templates are resolved through Spring's resources rather than the ServletContext of a request,
+	//so they can also be parsed while the application starts
 	@Bean
-	public ServletContextTemplateResolver templateResolver() {
-		ServletContextTemplateResolver servletContextTemplateResolver = new ServletContextTemplateResolver();
-		servletContextTemplateResolver.setPrefix("/WEB-INF/view/");
-		servletContextTemplateResolver.setSuffix(".html");
-		servletContextTemplateResolver.setTemplateMode("HTML5");
-		servletContextTemplateResolver.setCharacterEncoding("UTF-8");
-		servletContextTemplateResolver.setCacheable(false);
-		return servletContextTemplateResolver;
+	public SpringResourceTemplateResolver templateResolver() {
+		SpringResourceTemplateResolver templateResolver = new SpringResourceTemplateResolver();
+		templateResolver.setPrefix(TEMPLATE_PREFIX);
+		templateResolver.setSuffix(TEMPLATE_SUFFIX);
+		templateResolver.setTemplateMode("HTML5");
+		templateResolver.setCharacterEncoding("UTF-8");
+		templateResolver.setCacheable(isProduction());
+		long cacheTtlMillis = environment.getRequiredProperty("recruiter.templates.cacheTtlMillis", Long.class);
+		if (cacheTtlMillis > 0) {
+			templateResolver.setCacheTTLMs(cacheTtlMillis);
+		}
+		return templateResolver;
 	}
-	
+
+	@Bean
+	public ICacheManager templateCacheManager() {
+		StandardCacheManager cacheManager = new StandardCacheManager();
+		cacheManager.setTemplateCacheMaxSize(environment.getRequiredProperty("recruiter.templates.cacheMaxEntries", Integer.class));
+		return new CountingCacheManager(cacheManager, metricsRegistry);
+	}
+
+	//Only the production profile caches templates, without the cache there is nothing to warm up
+	@Bean(initMethod = "warmUp")
+	public TemplateWarmUp templateWarmUp() {
+		return new TemplateWarmUp(templateEngine(), messageSource(), TEMPLATE_PREFIX, TEMPLATE_SUFFIX,
+				Arrays.asList("frontend"), SUPPORTED_LOCALES, isProduction());
+	}
+
 	@Override
     public void addInterceptors(InterceptorRegistry registry) {
+		registry.addInterceptor(handlerTimingInterceptor());
+		registry.addInterceptor(queryBudgetInterceptor());
 		registry.addInterceptor(localeChangeInterceptor());
+		registry.addInterceptor(wizardStateInterceptor());
+	}
+
+	@Bean
+	public HandlerTimingInterceptor handlerTimingInterceptor() {
+		return new HandlerTimingInterceptor(metricsRegistry);
+	}
+
+	@Bean
+	public QueryBudgetInterceptor queryBudgetInterceptor() {
+		return new QueryBudgetInterceptor(environment.getRequiredProperty("recruiter.db.budget.statements", Integer.class),
+				environment.getRequiredProperty("recruiter.db.budget.rows", Long.class),
+				environment.getRequiredProperty("recruiter.db.budget.bytes", Long.class),
+				environment.getRequiredProperty("recruiter.db.budget.lobs", Integer.class), metricsRegistry);
+	}
+
+	//Counts the statements of handlers running on a HandlerExecutor as well
+	@Override
+	public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+		configurer.registerCallableInterceptors(queryBudgetInterceptor().callableInterceptor());
+	}
+
+	//Uploads and thumbnails are handled on threads of their own, the container threads stay free for the wizard pages
+	@Bean(destroyMethod = "shutdown")
+	public HandlerExecutor uploadExecutor() {
+		return new HandlerExecutor("upload", environment.getRequiredProperty("recruiter.async.upload.threads", Integer.class),
+				environment.getRequiredProperty("recruiter.async.upload.timeoutMillis", Long.class), metricsRegistry);
+	}
+
+	@Bean(destroyMethod = "shutdown")
+	public HandlerExecutor thumbnailExecutor() {
+		return new HandlerExecutor("thumbnail", environment.getRequiredProperty("recruiter.async.thumbnail.threads", Integer.class),
+				environment.getRequiredProperty("recruiter.async.thumbnail.timeoutMillis", Long.class), metricsRegistry);
+	}
+
+	//Previews wait for many pages, they must not take the threads of the thumbnails
+	@Bean(destroyMethod = "shutdown")
+	public HandlerExecutor previewExecutor() {
+		return new HandlerExecutor("preview", environment.getRequiredProperty("recruiter.async.preview.threads", Integer.class),
+				environment.getRequiredProperty("recruiter.async.preview.timeoutMillis", Long.class), metricsRegistry);
+	}
+
+	@Bean
+	public StartupTimer startupTimer() {
+		return new StartupTimer(metricsRegistry);
+	}
+
+	@Bean
+	public WizardFunnel wizardFunnel() {
+		return new WizardFunnel(metricsRegistry);
+	}
+
+	@Bean
+	public WizardStateInterceptor wizardStateInterceptor() {
+		return new WizardStateInterceptor(wizardStateStore, sessionSizeEstimator());
 	}
 	
 	@Bean
@@ -67,11 +242,13 @@ public class WebConfig extends WebMvcConfigurationSupport {
 		return standardServletMultipartResolver;
 	}
 	
+	//The language is kept in a cookie rather than the HttpSession, so every node knows it
 	@Bean(name = "localeResolver")
-	public SessionLocaleResolver cookieLocaleResolver() {
-		SessionLocaleResolver sessionLocaleResolver = new SessionLocaleResolver();
-		sessionLocaleResolver.setDefaultLocale(Locale.GERMAN);
-		return sessionLocaleResolver;
+	public CookieLocaleResolver cookieLocaleResolver() {
+		CookieLocaleResolver cookieLocaleResolver = new CookieLocaleResolver();
+		cookieLocaleResolver.setCookieName("recruiterLanguage");
+		cookieLocaleResolver.setDefaultLocale(SUPPORTED_LOCALES.get(0));
+		return cookieLocaleResolver;
 	}
 	
 	@Bean
@@ -86,8 +263,16 @@ public class WebConfig extends WebMvcConfigurationSupport {
 		ReloadableResourceBundleMessageSource messageSource = new ReloadableResourceBundleMessageSource();
 		messageSource.setBasenames("classpath:translations/frontend");
 		messageSource.setUseCodeAsDefaultMessage(true);
+		//During development changed translations are picked up after a second
+		if (!isProduction()) {
+			messageSource.setCacheSeconds(1);
+		}
 		//messageSource.setDefaultEncoding("UTF-8");
 
 		return messageSource;
 	}
+
+	private boolean isProduction() {
+		return environment.acceptsProfiles(PRODUCTION_PROFILE);
+	}
 }
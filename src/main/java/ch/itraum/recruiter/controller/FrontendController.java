@@ -1,48 +1,80 @@
 package ch.itraum.recruiter.controller;
 
-import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
+import java.util.concurrent.Callable;
 
+import javax.annotation.PostConstruct;
 import javax.servlet.http.HttpServletRequest;
-import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.Part;
 import javax.validation.Valid;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
 import org.springframework.validation.FieldError;
-import org.springframework.web.bind.annotation.ModelAttribute;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.context.request.RequestAttributes;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
-import org.springframework.web.servlet.i18n.SessionLocaleResolver;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.servlet.LocaleResolver;
 
+import ch.itraum.recruiter.async.AbortableInputStream;
+import ch.itraum.recruiter.async.HandlerExecutor;
+import ch.itraum.recruiter.metrics.Counter;
+import ch.itraum.recruiter.metrics.MetricsRegistry;
+import ch.itraum.recruiter.metrics.WizardFunnel;
 import ch.itraum.recruiter.model.Candidate;
 import ch.itraum.recruiter.model.Document;
+import ch.itraum.recruiter.model.DocumentSummary;
+import ch.itraum.recruiter.model.LetterOfMotivation;
 import ch.itraum.recruiter.model.Skills;
+import ch.itraum.recruiter.reference.ReferenceDataRegistry;
 import ch.itraum.recruiter.repository.CandidateRepository;
 import ch.itraum.recruiter.repository.DocumentRepository;
 import ch.itraum.recruiter.repository.SkillsRepository;
+import ch.itraum.recruiter.service.CandidateService;
+import ch.itraum.recruiter.service.DocumentService;
+import ch.itraum.recruiter.service.LetterOfMotivationService;
+import ch.itraum.recruiter.session.ApplicationDraft;
+import ch.itraum.recruiter.session.WizardState;
+import ch.itraum.recruiter.thumbnail.RenderPipeline;
 import ch.itraum.recruiter.tools.RecruiterHelper;
+import ch.itraum.recruiter.upload.ChunkedUpload;
+import ch.itraum.recruiter.upload.UploadSpool;
 
-@SuppressWarnings({"deprecation"})
 @Controller
 public class FrontendController {
 	
 	Logger logger = LoggerFactory.getLogger(FrontendController.class);
 	
+	//Names of the datasets for the dropdown lists, see ReferenceDataRegistry
+	public static final String YEAR_LIST_START = "yearListStart";
+	public static final String YEAR_LIST_END = "yearListEnd";
+	public static final String MONTH_LIST = "monthList";
+	public static final String LANGUAGE_LIST = "languageList";
+
+	private static final byte[] PDF_HEADER = { '%', 'P', 'D', 'F', '-' };
+	
 	@Autowired
 	private CandidateRepository candidateRepository;
 
@@ -53,82 +85,53 @@ public class FrontendController {
 	private SkillsRepository skillsRepository;
 	
 	@Autowired
-	private SessionLocaleResolver localeResolver;
+	private LocaleResolver localeResolver;
+	
+	@Autowired
+	private DocumentService documentService;
+	
+	@Autowired
+	private CandidateService candidateService;
 
-	//generates a "List" of years for use in dropdown lists
-	//Took "Map" instead of "List" to avoid a huge parameter line in the browser
-	private Map<String, String> getYearList(int maxYear) {
-		
-		Map<String, String> yearList = new LinkedHashMap<String, String>();
-		
-		for (int i = 1970; i <= maxYear; i++)
-		{
-			yearList.put("" + i, "" + i);
-		}
+	@Autowired
+	private LetterOfMotivationService letterOfMotivationService;
+	
+	@Autowired
+	private RenderPipeline renderPipeline;
+	
+	@Autowired
+	private ReferenceDataRegistry referenceDataRegistry;
 
-		return yearList;
-	}
+	@Autowired
+	private MetricsRegistry metricsRegistry;
 
-	//generates a "List" of years for use in dropdown lists
-	//Took "Map" instead of "List" to avoid a huge parameter line in the browser
-	@ModelAttribute(value = "yearListStart")
-	public Map<String, String> getYearListStart() {
-		
-		return getYearList(getCurrentYear());
-	}
+	@Autowired
+	private WizardFunnel wizardFunnel;
 
-	//generates a "List" of years for use in dropdown lists
-	//Took "Map" instead of "List" to avoid a huge parameter line in the browser
-	@ModelAttribute(value = "yearListEnd")
-	public Map<String, String> getYearListEnd() {
-		
-		return getYearList(getCurrentYear() + 8);
-	}
-	
-	private int getCurrentYear(){
-		//new Date() allocates a Date object and initializes it so that it represents the time at which it was allocated
-		return ((new Date()).getYear() + 1900);
-	}
+	@Autowired
+	private UploadSpool uploadSpool;
 
-	//generates a "List" of months for use in dropdown lists
-	@ModelAttribute(value = "monthList")
-	public Map<String, String> getMonthMap()
-	{
-		Map<String, String> monthMap = new LinkedHashMap<String, String>();
-		
-		monthMap.put("0", "january");
-		monthMap.put("1", "february");
-		monthMap.put("2", "march");
-		monthMap.put("3", "april");
-		monthMap.put("4", "may");
-		monthMap.put("5", "june");
-		monthMap.put("6", "july");
-		monthMap.put("7", "august");
-		monthMap.put("8", "september");
-		monthMap.put("9", "october");
-		monthMap.put("10", "november");
-		monthMap.put("11", "december");
-	
-		return monthMap;
-	}
-
-	//generates a "List" of months for use in dropdown lists	
-	@ModelAttribute(value = "languageList")
-	public Map<String, String> getLanguageMap()
-	{
-		Map<String, String> languageMap = new LinkedHashMap<String, String>();
-		
-		languageMap.put(RecruiterHelper.LANGUAGE_GERMAN, "Deutsch");
-		languageMap.put(RecruiterHelper.LANGUAGE_ENGLISH, "English");
-	
-		return languageMap;
+	@Autowired
+	@Qualifier("uploadExecutor")
+	private HandlerExecutor uploadExecutor;
+
+	private Counter uploads;
+
+	private Counter uploadedBytes;
+
+	@PostConstruct
+	public void registerMetrics() {
+		uploads = metricsRegistry.counter("upload.count");
+		uploadedBytes = metricsRegistry.counter("upload.bytes");
 	}
-	
+
 	//First Page
 	@RequestMapping(value = "/", method = RequestMethod.GET)
 	public String getAgreement(Model model) {
 
 		addCurrentLanguageToModel(model);
+		addReferenceDataToModel(model, LANGUAGE_LIST);
+		wizardFunnel.started();
 		return "frontend/agreement";
 	}
 	
@@ -137,8 +140,7 @@ public class FrontendController {
 	public String postAgreement(HttpServletRequest request, Model model, @RequestParam("buttonPressed") String buttonPressed) {
 
 		if (buttonPressed.equals("agreement_Accept")) {
-			String lang = getCurrentOrDefaultLanguageFromSession();
-			getCurrentSession().setAttribute("curLanguage", lang);
+			wizardFunnel.completed(WizardFunnel.AGREEMENT);
 			return "redirect:/candidate";
 		}else  if (buttonPressed.equals("agreement_Decline")) {
 			return "redirect:/confirmCancellation";
@@ -152,7 +154,7 @@ public class FrontendController {
 	
 	@RequestMapping(value = "/candidate", method = RequestMethod.GET)
 	public String getCandidate(Model model) {
-		Candidate candidate = getCandidateFromSession();
+		Candidate candidate = getDraftFromSession().toCandidate();
 		model.addAttribute(candidate);
 		return "frontend/candidate";
 	}
@@ -167,13 +169,19 @@ public class FrontendController {
 			}else{
 				//Candidate needs to be written to DB anyway before skills and documents can be written,
 				//because the candidate is a member of skills and documents. So here is where this happens.
-				//Save Candidate to DB and save the received Candidate containing the DB ID into the HTTP Session
-				getCurrentSession().setAttribute("candidate", candidateRepository.save(fillCandidateFromSessionWithDataFrom(validCandidate)));
+				//Save Candidate to DB and keep its DB ID in the draft in the HTTP Session
+				ApplicationDraft draft = getDraftFromSession();
+				draft.setCandidate(validCandidate);
+				draft.setCandidateId(candidateRepository.save(draft.toCandidate()).getId());
+				saveDraftToSession(draft);
+				wizardFunnel.completed(WizardFunnel.CANDIDATE);
 				return "redirect:/skills";
 			}
 		} else if (buttonPressed.equals("contactData_Back")) {
-			//Save current candidate object to session as is. Validation will effect further processing only if "forward" was pressed.
-			getCurrentSession().setAttribute("candidate", fillCandidateFromSessionWithDataFrom(validCandidate)); //if there is already a skills object in the session, we need its ID
+			//Save current form values to session as they are. Validation will effect further processing only if "forward" was pressed.
+			ApplicationDraft draft = getDraftFromSession();
+			draft.setCandidate(validCandidate);
+			saveDraftToSession(draft);
 			return "redirect:/";
 		}else  if (buttonPressed.equals("contactData_Cancel")) {//
 			return "redirect:/confirmCancellation";
@@ -184,7 +192,8 @@ public class FrontendController {
 	
 	@RequestMapping(value = "/skills", method = RequestMethod.GET)
 	public String getSkills(Model model) {
-		model.addAttribute(getSkillsFromSession());
+		model.addAttribute(getDraftFromSession().toSkills());
+		addReferenceDataToModel(model, MONTH_LIST, YEAR_LIST_START, YEAR_LIST_END);
 		return "frontend/skills";
 	}
 	
@@ -215,20 +224,23 @@ public class FrontendController {
 		if (buttonPressed.equals("contactSkills_Forward")) {
 			if (result.hasErrors()){//If the Form contains invalid data
 				logger.error("\n\n\nDate Error: " + result.toString());
+				addReferenceDataToModel(model, MONTH_LIST, YEAR_LIST_START, YEAR_LIST_END);
 				return "frontend/skills";
 			}else{
-				validSkills.setCandidate(getCandidateFromSession()); //This Candidate is already validated.
-				//Save Skills to DB and save the received Skills containing the DB ID into the HTTP Session
-				Skills skillsWithID = skillsRepository.save(fillSkillsFromSessionWithDataFrom(validSkills));
-				//We have to copy back some values from validSkills to the object we get back from the DB, 
-				//because they are not part of the SQL Model and are therefore not delivered back.
-				skillsWithID.copyAllAttributesExceptIDFrom(validSkills);
-				getCurrentSession().setAttribute("skills", skillsWithID);
+				//Save Skills to DB and keep their DB ID in the draft in the HTTP Session.
+				//The skills from the draft belong to the candidate of the draft, which is already validated.
+				ApplicationDraft draft = getDraftFromSession();
+				draft.setSkills(validSkills);
+				draft.setSkillsId(skillsRepository.save(draft.toSkills()).getId());
+				saveDraftToSession(draft);
+				wizardFunnel.completed(WizardFunnel.SKILLS);
 				return "redirect:/documents";
 			}
 		}else  if (buttonPressed.equals("contactSkills_Back")) {
-			//Save current skills object as is. Validation will effect further processing only if "forward" was pressed.
-			getCurrentSession().setAttribute("skills", fillSkillsFromSessionWithDataFrom(validSkills)); //If there is already an skills object in the session, we need its ID
+			//Save current form values as they are. Validation will effect further processing only if "forward" was pressed.
+			ApplicationDraft draft = getDraftFromSession();
+			draft.setSkills(validSkills);
+			saveDraftToSession(draft);
 			return "redirect:/candidate";
 		}else  if (buttonPressed.equals("contactSkills_Cancel")) {
 			return "redirect:/confirmCancellation";
@@ -242,24 +254,7 @@ public class FrontendController {
 
 		addCurrentLanguageToModel(model);
 		
-		//Prepare a list of documents so that they can be delivered to the model.
-		//But we filter out one special document, which should not be passed.
-		//It's the letter of motivation, which can be entered as text at a different
-		//page and is written to the DB as binary object like the document files.
-		List<Document> documents = getDocumentsForSessionCandidate();
-		Document motivationalLetter = new Document();
-		Boolean letterFound = false;
-		for(Document doc: documents){
-			if(doc.getName().equals(RecruiterHelper.FILE_NAME_MOTIVATIONSSCHREIBEN)){
-				motivationalLetter = doc;
-				letterFound = true;
-			}
-		}
-		if(letterFound){
-			documents.remove(motivationalLetter);
-		}
-
-		model.addAttribute("documents", documents);
+		model.addAttribute("documents", getDocumentSummariesForSessionCandidate());
 		model.addAttribute("language", getCurrentOrDefaultLanguageFromSession());
 		return "frontend/documents";
 	}
@@ -269,6 +264,7 @@ public class FrontendController {
 			required=false) String chbDocuments) {
 		
 		if (buttonPressed.equals("documents_Forward")) {
+			wizardFunnel.completed(WizardFunnel.DOCUMENTS);
 			return "redirect:/letterOfMotivation";
 		}else  if (buttonPressed.equals("documents_Back")) {
 			return "redirect:/skills";
@@ -287,20 +283,10 @@ public class FrontendController {
 	@RequestMapping(value = "/letterOfMotivation", method = RequestMethod.GET)
 	public String getLetterOfMotivation(Model model) {
 		
-		//The letter of motivation, which can be entered on this page as text, 
-		//is actually kept as a binary object in the DB like the document files.
-		List<Document> documents = getDocumentsForSessionCandidate();
-
-		String textAreaContent = "";
-		
-		//Go through the list of files. If the file is the letter of motivation (saved earlier) 
-		//then make a string out of its content and "send it to the text area".
-		for(Document doc: documents){
-			if(doc.getName().equals(RecruiterHelper.FILE_NAME_MOTIVATIONSSCHREIBEN)){
-				textAreaContent = new String(doc.getContent());
-			}
-		}
-		model.addAttribute("textFieldLetterOfMotivation", textAreaContent);
+		//If the letter was saved earlier, "send it to the text area"
+		Integer candidateId = getDraftFromSession().getCandidateId();
+		model.addAttribute("textFieldLetterOfMotivation", candidateId != null ? letterOfMotivationService.getText(candidateId) : "");
+		model.addAttribute("maxLetterLength", LetterOfMotivation.MAX_CHARACTERS);
 		return "frontend/letterOfMotivation";
 	}
 
@@ -310,6 +296,7 @@ public class FrontendController {
 
 		if (buttonPressed.equals("letterOfMotivation_Forward")) {
 			manageDBStuff4LetterOfMotivation(textFieldLetterOfMotivation);
+			wizardFunnel.completed(WizardFunnel.LETTER_OF_MOTIVATION);
 			return "redirect:/submitApplication";
 		}else  if (buttonPressed.equals("letterOfMotivation_Back")) {
 			manageDBStuff4LetterOfMotivation(textFieldLetterOfMotivation);
@@ -324,22 +311,12 @@ public class FrontendController {
 	@RequestMapping(value = "/submitApplication", method = RequestMethod.GET)
 	public String getSubmitApplication(Model model) {
 		
-		model.addAttribute(getCandidateFromSession());
-		model.addAttribute(getSkillsFromSession());
-		List<Document> documents = getDocumentsForSessionCandidate();
-		for(Document doc: documents){
-			//The letter of motivation, which can be entered as text at a different page
-			//is actually kept in the DB as a binary object like the document files.
-			//To be able to recognize it, it has a particular file name. 
-			//Because we don't want to confuse the user to much, we change the
-			//filename here to a different one, that will be translated on the page
-			//using thymeleaf and property files.
-			if(doc.getName().equals(RecruiterHelper.FILE_NAME_MOTIVATIONSSCHREIBEN)){
-				doc.setName("translateMotivationsschreiben");
-			}
-		}
-		
-		model.addAttribute("documents", documents);
+		ApplicationDraft draft = getDraftFromSession();
+		model.addAttribute(draft.toCandidate());
+		model.addAttribute(draft.toSkills());
+		model.addAttribute("documents", getDocumentSummariesForSessionCandidate());
+		//The letter of motivation is listed with the documents under a translated name
+		model.addAttribute("hasLetterOfMotivation", draft.getCandidateId() != null && letterOfMotivationService.hasLetter(draft.getCandidateId()));
 		return "frontend/submitApplication";
 	}
 	
@@ -347,6 +324,7 @@ public class FrontendController {
 	public String postSubmitApplication(Model model, @RequestParam("buttonPressed") String buttonPressed) {
 
 		if (buttonPressed.equals("submitApplication_Submit")) {
+			wizardFunnel.completed(WizardFunnel.SUBMITTED);
 			return "redirect:/thankYou";
 		} else if (buttonPressed.equals("submitApplication_Back")) {
 			return "redirect:/letterOfMotivation";
@@ -370,6 +348,7 @@ public class FrontendController {
 		//Only now we can delete the session objects because we need their 
 		//information for deleting the data in the DB
 		delete_Candidate_Skills_Documents_FromSession_IfExist();
+		wizardFunnel.cancelled();
 		return "frontend/confirmCancellation";
 	}
 	
@@ -383,144 +362,286 @@ public class FrontendController {
 	}
 
 	private void deleteEverythingFromDB_Corresponding2TheCandidateSavedInTheSession(){
-		Candidate sessionCandidate = (Candidate)getCurrentSession().getAttribute("candidate");
-		if(sessionCandidate != null){
-			//Only if the candidate has an ID it was saved to the DB
-			if(sessionCandidate.getId() != null){
-				List<Document> documents = getDocumentsForSessionCandidate();
-				for(Document doc: documents){
-					documentRepository.delete(doc.getId());
-				}
-				//There is only one skills object for the candidate
-				//And if it was saved to the DB it has an ID
-				Skills sessionSkills = (Skills)getCurrentSession().getAttribute("skills");
-				if(sessionSkills != null && sessionSkills.getId() != null){
-					skillsRepository.delete(sessionSkills.getId());
-				}
-				candidateRepository.delete(sessionCandidate.getId());
-			}
+		Integer candidateId = getDraftFromSession().getCandidateId();
+		//Only if the candidate has an ID it was saved to the DB
+		if(candidateId != null){
+			//Documents and skills of the candidate are deleted along with it
+			candidateService.delete(candidateId);
 		}
 	}
 	
 	private void delete_Candidate_Skills_Documents_FromSession_IfExist(){
-		getCurrentSession().removeAttribute("candidate");
-		getCurrentSession().removeAttribute("skills");
-		getCurrentSession().removeAttribute("documents");
-	}
-	
-	//If there is already a candidate saved in the HttpSession he will be returned. 
-	//Otherwise a new candidate will be returned
-	private Candidate getCandidateFromSession(){
-		Object sessionCandidate = getCurrentSession().getAttribute("candidate");
-		Candidate resultCandidate;
-		if(sessionCandidate != null){
-			resultCandidate = (Candidate)sessionCandidate;
-		}else{
-			resultCandidate = new Candidate();
-		}		
-		return resultCandidate;
-	}
-	
-	//If there is already a skills object saved in the HttpSession it will be returned. 
-	//Otherwise a new skills object will be returned
-	private Skills getSkillsFromSession(){
-		Object sessionSkills = getCurrentSession().getAttribute("skills");
-		Skills resultSkills;
-		if(sessionSkills != null){
-			resultSkills = (Skills)sessionSkills;
-		}else{
-			resultSkills = new Skills();
-		}		
-		return resultSkills;
+		getWizardState().remove();
+	}
+	
+	//If there is already a draft saved for the applicant it will be returned. 
+	//Otherwise a new, empty draft will be returned
+	private ApplicationDraft getDraftFromSession(){
+		return getWizardState().getDraft();
+	}
+	
+	//The draft is written to the WizardStateStore once the request is handled
+	private void saveDraftToSession(ApplicationDraft draft){
+		getWizardState().save(draft);
+	}
+	
+	//The WizardStateInterceptor prepares the state for every request
+	private WizardState getWizardState(){
+		return (WizardState)RequestContextHolder.currentRequestAttributes().getAttribute(WizardState.REQUEST_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+	}
+	
+	//Only the views with dropdown lists get their datasets, which are built once and shared by all requests
+	private void addReferenceDataToModel(Model model, String... names){
+		Locale locale = getCurrentLocale();
+		for(String name: names){
+			model.addAttribute(name, referenceDataRegistry.get(name, locale));
+		}
+	}
+	
+	private Locale getCurrentLocale(){
+		ServletRequestAttributes attr = (ServletRequestAttributes) RequestContextHolder.currentRequestAttributes();
+		return localeResolver.resolveLocale(attr.getRequest());
 	}
 	
 	private String getCurrentOrDefaultLanguageFromSession(){
-		Object tryLang = getCurrentSession().getAttribute(SessionLocaleResolver.LOCALE_SESSION_ATTRIBUTE_NAME);
+		Locale locale = getCurrentLocale();
 		String lang;
-		if(tryLang != null){
-			lang = ((Locale)tryLang).toString();
+		if(locale != null){
+			lang = locale.toString();
 		}else{
 			lang = RecruiterHelper.LANGUAGE_DEFAULT;
 		}
 		return lang;
 	}
 	
-	private List<Document> getDocumentsForSessionCandidate(){
-		List<Document> docList = documentRepository.findByCandidate_Id(getCandidateFromSession().getId());
+	//Only the metadata of the documents is loaded, never their content
+	private List<DocumentSummary> getDocumentSummariesForSessionCandidate(){
+		List<DocumentSummary> docList = documentRepository.findSummariesByCandidateId(getDraftFromSession().getCandidateId());
 		return docList;
 	}
 	
 	//Deletes document entries from the DB corresponding to a String containing a comma separated list of document DB IDs 
 	private void deleteDocumentsFromDB(String csv_IDs){
-		String[] strIDs = csv_IDs.split(",");
-		for(int i = 0; i< strIDs.length; i++){
-			documentRepository.delete(Integer.parseInt(strIDs[i]));
+		Integer candidateId = getDraftFromSession().getCandidateId();
+		if(candidateId == null){
+			return;
 		}
+		List<Integer> documentIds = new ArrayList<Integer>();
+		for(String strID: csv_IDs.split(",")){
+			documentIds.add(Integer.parseInt(strID.trim()));
+		}
+		documentService.delete(candidateId, documentIds);
 	}
 	
-	private void manageDBStuff4LetterOfMotivation(String letterOfMotivationText){
-		List<Document> documents = getDocumentsForSessionCandidate();
-		Document letterOfMotivation = getLetterOfMotivationFromListIfPossibleElseCreateANewOne(documents);
-		if(letterOfMotivation.getContent() == null || letterOfMotivation.getContent().length == 0){//if there is no letter in the DB yet
-			if(letterOfMotivationText.isEmpty()){
-				//Do nothing
-			}else{
-				saveLetterOfMotivationAsDocumentFileToDB(letterOfMotivation, letterOfMotivationText.getBytes());
-			}
-		}else{//if there is already a letter in the DB
-			if(letterOfMotivationText.isEmpty()){
-				//delete letter from DB
-				documentRepository.delete(letterOfMotivation.getId());
-			}else{
-				saveLetterOfMotivationAsDocumentFileToDB(letterOfMotivation, letterOfMotivationText.getBytes());				
-			}
+	//Only written if the text changed since it was saved, an empty text deletes the letter
+	private void manageDBStuff4LetterOfMotivation(String letterOfMotivationText) {
+		Integer candidateId = getDraftFromSession().getCandidateId();
+		if(candidateId != null){
+			letterOfMotivationService.save(candidateId, letterOfMotivationText);
 		}
 	}
-	
-	private Document getLetterOfMotivationFromListIfPossibleElseCreateANewOne(List<Document> documents){
-		Document letterOfMotivation = new Document();
-		
-		for(Document doc: documents){
-			if(doc.getName().equals(RecruiterHelper.FILE_NAME_MOTIVATIONSSCHREIBEN)){
-				letterOfMotivation = doc;
+
+	//Fallback for browsers which can't send chunks, see uploadChunk for what DropZone.js uses.
+	//The multipart file has already been spooled to disk by the container (see WebAppInitializer).
+	//It is streamed from there into the DocumentContentStore through a small buffer on the uploadExecutor,
+	//so the heap used per upload does not depend on the size of the file and no container thread waits for the disk.
+	//The container deletes the part when the request is complete, a timeout stops reading it.
+	//Only PDFs are taken, whatever type the browser claims, anything else is answered with 415.
+	@ResponseBody
+	@RequestMapping(value = "/upload", method = RequestMethod.POST)
+	public WebAsyncTask<Void> fileUploadSubmit(@RequestParam("file") Part file, HttpServletResponse response) throws IOException {
+
+		InputStream headerIs = file.getInputStream();
+		try {
+			if (!startsWithPdfHeader(headerIs)) {
+				response.sendError(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE);
+				return null;
 			}
+		} finally {
+			headerIs.close();
 		}
-		return letterOfMotivation;
+		final Candidate candidate = getDraftFromSession().toCandidate();
+		final String name = getFileName(file);
+		final long size = file.getSize();
+		final AbortableInputStream fileIs = new AbortableInputStream(file.getInputStream());
+		return uploadExecutor.task(new Callable<Void>() {
+			@Override
+			public Void call() throws IOException {
+				try {
+					saveUploadedDocument(candidate, name, fileIs, size);
+				} finally {
+					fileIs.close();
+				}
+				return null;
+			}
+		}, abortOnTimeout(fileIs));
 	}
 
-	//Writes the given byte array to the given document into the DB
-	private void saveLetterOfMotivationAsDocumentFileToDB(Document letterOfMotivation, byte[] imgDataBa){
-		letterOfMotivation.setContent(imgDataBa);
-		letterOfMotivation.setName(RecruiterHelper.FILE_NAME_MOTIVATIONSSCHREIBEN);
-		letterOfMotivation.setCandidate(getCandidateFromSession());
+	//Starts a chunked upload of a file with the given size. The answer tells the ID of the upload
+	//and the size of the chunks, which are then sent to uploadChunk in any order.
+	//Only PDFs are taken: another type is answered with 415 right away, content which isn't a PDF once it is complete.
+	@ResponseBody
+	@RequestMapping(value = "/upload/chunked", method = RequestMethod.POST, produces = "application/json;charset=UTF-8")
+	public String beginChunkedUpload(@RequestParam("name") String name, @RequestParam("size") long size,
+			@RequestParam(value = "type", required = false) String contentType, HttpServletResponse response) throws IOException {
 
-		documentRepository.save(letterOfMotivation);
+		if (size < 0 || size > uploadSpool.getMaxBytes()) {
+			response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+			return null;
+		}
+		if (contentType != null && !contentType.isEmpty() && !DocumentService.PDF_CONTENT_TYPE.equals(contentType)) {
+			response.sendError(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE);
+			return null;
+		}
+		ChunkedUpload upload = uploadSpool.begin(getDraftFromSession().getCandidateId(), name, DocumentService.PDF_CONTENT_TYPE, size);
+		return "{\"id\":\"" + upload.getId() + "\",\"chunkSize\":" + upload.getChunkSize() + ",\"chunkCount\":" + upload.getChunkCount() + "}";
 	}
 
-	//Used from DropZone.js to upload document files
+	//The size and the indexes of the chunks still missing, to resume an upload after the connection was lost
 	@ResponseBody
-	@RequestMapping(value = "/upload", method = RequestMethod.POST)
-	public void fileUploadSubmit(@RequestParam("file") Part file) throws IOException {
+	@RequestMapping(value = "/upload/chunked/{id}", method = RequestMethod.GET, produces = "application/json;charset=UTF-8")
+	public String getChunkedUpload(@PathVariable("id") String id, HttpServletResponse response) throws IOException {
+
+		ChunkedUpload upload = uploadSpool.get(id, getDraftFromSession().getCandidateId());
+		if (upload == null) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return null;
+		}
+		return "{\"chunkSize\":" + upload.getChunkSize() + ",\"missing\":[" + upload.getMissingChunks() + "]}";
+	}
+
+	//Takes one chunk as the raw body of the request, which is read on the uploadExecutor.
+	//The chunk which completes the upload also saves the document, the answer tells whether that happened.
+	@ResponseBody
+	@RequestMapping(value = "/upload/chunked/{id}/{index}", method = RequestMethod.PUT, produces = "application/json;charset=UTF-8")
+	public WebAsyncTask<String> uploadChunk(@PathVariable("id") String id, @PathVariable("index") final int index,
+			HttpServletRequest request, HttpServletResponse response) throws IOException {
+
+		final ChunkedUpload upload = uploadSpool.get(id, getDraftFromSession().getCandidateId());
+		if (upload == null) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return null;
+		}
+		final Candidate candidate = getDraftFromSession().toCandidate();
+		final AbortableInputStream content = new AbortableInputStream(request.getInputStream());
+		return uploadExecutor.task(new Callable<String>() {
+			@Override
+			public String call() throws IOException {
+				return writeChunk(candidate, upload, index, content);
+			}
+		}, abortOnTimeout(content));
+	}
+
+	//The container completes and recycles a request which timed out, its body must not be read after that
+	private static Runnable abortOnTimeout(final AbortableInputStream content) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				content.abort();
+			}
+		};
+	}
+
+	private String writeChunk(Candidate candidate, ChunkedUpload upload, int index, InputStream content) throws IOException {
+
+		boolean complete;
+		try {
+			complete = uploadSpool.writeChunk(upload, index, content);
+		} catch (IllegalArgumentException e) {
+			throw new BadRequestException(e.getMessage());
+		}
+		if (!complete) {
+			return "{\"complete\":false}";
+		}
+
+		try {
+			File file = uploadSpool.getFile(upload);
+			if (!isPdf(file)) {
+				throw new UnsupportedMediaTypeException("Upload " + upload.getName() + " isn't a PDF");
+			}
+			InputStream fileIs = new FileInputStream(file);
+			try {
+				saveUploadedDocument(candidate, upload.getName(), fileIs, upload.getSize());
+			} finally {
+				fileIs.close();
+			}
+		} finally {
+			uploadSpool.finish(upload);
+		}
+		return "{\"complete\":true}";
+	}
+
+	//Runs on the uploadExecutor, so the candidate has to be taken from the draft before.
+	//The content was checked to be a PDF.
+	private void saveUploadedDocument(Candidate candidate, String name, InputStream content, long size) throws IOException {
 
 		Document document = new Document();
+		document.setName(name);
+		document.setContentType(DocumentService.PDF_CONTENT_TYPE);
+		document.setCandidate(candidate);
 
-		byte[] imgDataBa = new byte[(int) file.getSize()];
-		DataInputStream dataIs = new DataInputStream(file.getInputStream());
-		dataIs.readFully(imgDataBa);
+		documentService.save(document, content);
+		uploads.increment();
+		uploadedBytes.add(size);
+		
+		//Thumbnails, page count and text are prepared in the background, the upload doesn't wait for them
+		renderPipeline.documentUploaded(document.getContentHash());
+	}
 
-		document.setContent(imgDataBa);
-		document.setName(getFileName(file));
-		document.setCandidate(getCandidateFromSession());
+	private static boolean isPdf(File file) throws IOException {
+		InputStream fileIs = new FileInputStream(file);
+		try {
+			return startsWithPdfHeader(fileIs);
+		} finally {
+			fileIs.close();
+		}
+	}
 
-		documentRepository.save(document);
+	//Every PDF starts with its version, e.g. %PDF-1.4. Reads the first bytes of the content.
+	private static boolean startsWithPdfHeader(InputStream content) throws IOException {
+		byte[] header = new byte[PDF_HEADER.length];
+		int read = 0;
+		int count;
+		while (read < header.length && (count = content.read(header, read, header.length - read)) != -1) {
+			read += count;
+		}
+		return read == header.length && Arrays.equals(header, PDF_HEADER);
 	}
 	
+	//Delivers the content of a document of the current candidate straight from the DocumentContentStore
+	@RequestMapping(value = "/documents/{id}", method = RequestMethod.GET)
+	public void getDocumentContent(@PathVariable("id") Integer id, HttpServletResponse response) throws IOException {
 		
-	private HttpSession getCurrentSession() {
-	    ServletRequestAttributes attr = (ServletRequestAttributes) RequestContextHolder.currentRequestAttributes();
-	    return attr.getRequest().getSession(true); // true == allow create
+		Document document = documentRepository.findOne(id);
+		Integer candidateId = getDraftFromSession().getCandidateId();
+		if(document == null || candidateId == null || !candidateId.equals(document.getCandidate().getId())){
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+		
+		response.setContentType(document.getContentType() != null ? document.getContentType() : DocumentService.PDF_CONTENT_TYPE);
+		response.setHeader("Content-Disposition", contentDisposition(document.getName()));
+		documentService.transferContent(document, Channels.newChannel(response.getOutputStream()));
 	}
 
+	//The name is the one the applicant uploaded, so it may contain anything. Browsers take the UTF-8 name of filename*
+	//(RFC 5987), older ones the ASCII one with everything that could break the header replaced by '_'.
+	private static String contentDisposition(String name) {
+		StringBuilder asciiName = new StringBuilder();
+		for (char c : name.toCharArray()) {
+			asciiName.append(c >= 0x20 && c < 0x7F && c != '"' && c != '\\' ? c : '_');
+		}
+		StringBuilder encodedName = new StringBuilder();
+		for (byte b : name.getBytes(StandardCharsets.UTF_8)) {
+			if ((b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9') || "!#$&+-.^_`|~".indexOf(b) >= 0) {
+				encodedName.append((char) b);
+			} else {
+				encodedName.append(String.format("%%%02X", b & 0xFF));
+			}
+		}
+		return "attachment; filename=\"" + asciiName + "\"; filename*=UTF-8''" + encodedName;
+	}
+		
 	private String getFileName(Part part) {
 		for (String cd : part.getHeader("content-disposition").split(";")) {
 			if (cd.trim().startsWith("filename")) {
@@ -531,24 +652,6 @@ public class FrontendController {
 		return null;
 	}
 	
-	//As soon as a candidate was saved to the DB we want changes to have effect to this particular DB entry.
-	//So we cultivate the candidate containing the DB ID in the HTTP Session and use him to prepare updates.
-	//This method helps changing the complete set of attributes except the DB ID.
-	private Candidate fillCandidateFromSessionWithDataFrom(Candidate curCandidate){
-		Candidate resCandidate = getCandidateFromSession();
-		resCandidate.copyAllAttributesExceptIDFrom(curCandidate);
-		return resCandidate;
-	}
-	
-	//As soon as a skills object was saved to the DB we want changes to have effect to this particular DB entry.
-	//So we cultivate the skills object containing the DB ID in the HTTP Session and use it to prepare updates.
-	//This method helps changing the complete set of attributes except the DB ID.
-	private Skills fillSkillsFromSessionWithDataFrom(Skills curSkills){	
-		Skills resSkills = getSkillsFromSession();
-		resSkills.copyAllAttributesExceptIDFrom(curSkills);
-		return resSkills;
-	}
-	
 	private void addCurrentLanguageToModel(Model model){
 		
 		String language = getCurrentOrDefaultLanguageFromSession();
@@ -0,0 +1,29 @@
+package ch.itraum.recruiter.controller;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import ch.itraum.recruiter.metrics.MetricsRegistry;
+
+//Delivers all metrics as plain text, one "name value" pair per line, so they can be scraped by a monitoring system
+@Controller
+public class MetricsController {
+
+	@Autowired
+	private MetricsRegistry metricsRegistry;
+
+	@ResponseBody
+	@RequestMapping(value = "/metrics", method = RequestMethod.GET, produces = "text/plain;charset=UTF-8")
+	public String metrics() {
+		StringBuilder text = new StringBuilder();
+		for (Map.Entry<String, Long> metric : metricsRegistry.snapshot().entrySet()) {
+			text.append(metric.getKey()).append(' ').append(metric.getValue()).append('\n');
+		}
+		return text.toString();
+	}
+}
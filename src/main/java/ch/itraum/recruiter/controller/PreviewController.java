@@ -0,0 +1,307 @@
+package ch.itraum.recruiter.controller;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.context.request.async.WebAsyncTask;
+
+import ch.itraum.recruiter.async.HandlerExecutor;
+import ch.itraum.recruiter.model.DocumentSummary;
+import ch.itraum.recruiter.repository.DocumentRepository;
+import ch.itraum.recruiter.thumbnail.Images;
+import ch.itraum.recruiter.thumbnail.PageListener;
+import ch.itraum.recruiter.thumbnail.PreviewRenderer;
+import ch.itraum.recruiter.thumbnail.RasterBudget;
+import ch.itraum.recruiter.thumbnail.RenderPipeline;
+
+//Delivers many pages of a document of the current applicant at once, to skim through it. /pages answers with
+//a multipart/mixed response of PNGs, each part is sent as soon as its page is rendered, so the pages arrive
+//in the order they're done and carry their number in the header X-Page. /contactSheet lays the pages out in one PNG.
+//Pages are counted from 0, without a range all pages are delivered, at most MAX_PAGES of them.
+//The pages are rendered in parallel by the PreviewRenderer, the requests are handled on the previewExecutor.
+@Controller
+public class PreviewController {
+
+	private static final int MAX_PAGES = 50;
+
+	private static final int MAX_WIDTH = 2000;
+
+	private static final int MAX_COLUMNS = 10;
+
+	//Seconds after which the browser should ask again for a contact sheet that took too long
+	private static final String RETRY_AFTER_SECONDS = "2";
+
+	private static final int CONTACT_SHEET_GAP = 8;
+
+	private static final Color CONTACT_SHEET_BACKGROUND = new Color(0xCC, 0xCC, 0xCC);
+
+	private static final byte[] CRLF = { '\r', '\n' };
+
+	private static final Logger logger = LoggerFactory.getLogger(PreviewController.class);
+
+	@Autowired
+	private DocumentRepository documentRepository;
+
+	@Autowired
+	private RenderPipeline renderPipeline;
+
+	@Autowired
+	private PreviewRenderer previewRenderer;
+
+	@Autowired
+	private RasterBudget rasterBudget;
+
+	@Autowired
+	@Qualifier("previewExecutor")
+	private HandlerExecutor previewExecutor;
+
+	@ResponseBody
+	@RequestMapping(value = "/pages", method = RequestMethod.GET)
+	public WebAsyncTask<Void> pages(@RequestParam("id") int id, @RequestParam(value = "from", defaultValue = "0") int from,
+			@RequestParam(value = "to", required = false) Integer to, @RequestParam(value = "width", required = false) Integer width,
+			@RequestParam(value = "engine", required = false) String engine, HttpServletRequest request,
+			final HttpServletResponse response) throws IOException {
+
+		final PageQueue queue = render(id, ThumbnailController.candidateId(request), from, to, width, engine, response);
+		if (queue == null) {
+			return null;
+		}
+		final String boundary = "page-" + UUID.randomUUID().toString().replace("-", "");
+		response.setContentType("multipart/mixed; boundary=" + boundary);
+		return previewExecutor.task(new Callable<Void>() {
+			@Override
+			public Void call() throws IOException, InterruptedException {
+				streamPages(queue, boundary, response);
+				return null;
+			}
+		}, new Callable<Void>() {
+			@Override
+			public Void call() throws IOException {
+				//Ends the response with the pages sent so far
+				synchronized (queue) {
+					if (!queue.isClosed()) {
+						queue.close();
+						writeEnd(response.getOutputStream(), boundary);
+					}
+				}
+				return null;
+			}
+		});
+	}
+
+	//The sheet is composed on the previewExecutor, its headers go with the result and are written on the container thread
+	@RequestMapping(value = "/contactSheet", method = RequestMethod.GET, produces = MediaType.IMAGE_PNG_VALUE)
+	public WebAsyncTask<ResponseEntity<byte[]>> contactSheet(@RequestParam("id") int id, @RequestParam(value = "from", defaultValue = "0") int from,
+			@RequestParam(value = "to", required = false) Integer to, @RequestParam(value = "width", required = false) Integer width,
+			@RequestParam(value = "engine", required = false) String engine,
+			@RequestParam(value = "columns", defaultValue = "4") final int columns, HttpServletRequest request,
+			final HttpServletResponse response) throws IOException {
+
+		if (columns < 1 || columns > MAX_COLUMNS) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Between 1 and " + MAX_COLUMNS + " columns");
+			return null;
+		}
+		final PageQueue queue = render(id, ThumbnailController.candidateId(request), from, to, width, engine, response);
+		if (queue == null) {
+			return null;
+		}
+		return previewExecutor.task(new Callable<ResponseEntity<byte[]>>() {
+			@Override
+			public ResponseEntity<byte[]> call() throws IOException, InterruptedException {
+				return composeContactSheet(queue, columns);
+			}
+		}, new Callable<ResponseEntity<byte[]>>() {
+			@Override
+			public ResponseEntity<byte[]> call() {
+				//The pages rendered so far are in the cache for the next attempt
+				queue.close();
+				return retryLater();
+			}
+		});
+	}
+
+	//Starts rendering the requested pages, or answers with 404 and returns null if there are none
+	//or the document isn't one of the candidate's
+	private PageQueue render(int id, Integer candidateId, int from, Integer to, Integer width, String engine,
+			HttpServletResponse response) throws IOException {
+
+		String pageEngine = engine != null ? engine : renderPipeline.getDefaultEngine();
+		int pageWidth = width != null ? width : renderPipeline.getDefaultWidth();
+		int lastPage = to != null ? Math.min(to, from + MAX_PAGES - 1) : from + MAX_PAGES - 1;
+		DocumentSummary document = candidateId != null ? documentRepository.findSummaryByIdAndCandidateId(id, candidateId) : null;
+		if (document == null || !renderPipeline.hasEngine(pageEngine) || from < 0 || lastPage < from || pageWidth < 0
+				|| pageWidth > MAX_WIDTH || renderPipeline.hasFailed(document.getContentHash())
+				|| (document.getPageCount() != null && from >= document.getPageCount())) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return null;
+		}
+
+		PageQueue queue = new PageQueue();
+		previewRenderer.render(document.getContentHash(), pageEngine, from, lastPage, pageWidth, document.getPageCount(), queue);
+		return queue;
+	}
+
+	private void streamPages(PageQueue queue, String boundary, HttpServletResponse response) throws IOException, InterruptedException {
+		OutputStream outputStream = response.getOutputStream();
+		try {
+			Page page;
+			while ((page = queue.take()) != null) {
+				//The lock keeps the timeout from ending the response in the middle of a page
+				synchronized (queue) {
+					if (queue.isClosed()) {
+						return;
+					}
+					String headers = "--" + boundary + "\r\nContent-Type: " + MediaType.IMAGE_PNG_VALUE + "\r\nContent-Length: "
+							+ page.png.length + "\r\nX-Page: " + page.number + "\r\n\r\n";
+					outputStream.write(headers.getBytes(StandardCharsets.US_ASCII));
+					outputStream.write(page.png);
+					outputStream.write(CRLF);
+					outputStream.flush();
+				}
+			}
+			synchronized (queue) {
+				if (!queue.isClosed()) {
+					queue.close();
+					writeEnd(outputStream, boundary);
+				}
+			}
+		} catch (IOException e) {
+			//Most likely the client went away, there's nobody to send the other pages to
+			queue.close();
+			logger.debug("Streaming the pages failed", e);
+		}
+	}
+
+	private static void writeEnd(OutputStream outputStream, String boundary) throws IOException {
+		outputStream.write(("--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+		outputStream.flush();
+	}
+
+	private ResponseEntity<byte[]> composeContactSheet(PageQueue queue, int columns) throws IOException, InterruptedException {
+
+		Map<Integer, byte[]> pngs = new TreeMap<Integer, byte[]>();
+		Page page;
+		while ((page = queue.take()) != null) {
+			pngs.put(page.number, page.png);
+		}
+		//Closed when the request timed out, this thread may still answer before the timeout does
+		if (queue.isClosed()) {
+			return retryLater();
+		}
+		if (pngs.isEmpty()) {
+			throw new NotFoundException("None of the pages could be rendered");
+		}
+
+		//The sheet is held to the limits of a rendered page, and its memory comes out of the same budget
+		List<byte[]> pages = new ArrayList<byte[]>(pngs.values());
+		Dimension size = Images.contactSheetSize(pages, columns, CONTACT_SHEET_GAP);
+		long pixels = (long) size.width * size.height;
+		if (pixels > rasterBudget.getMaxPagePixels()) {
+			throw new BadRequestException("A contact sheet of " + size.width + "x" + size.height
+					+ " pixels is too large, ask for fewer pages or a smaller width");
+		}
+		RasterBudget.Reservation reservation;
+		try {
+			reservation = rasterBudget.reserve(pixels);
+		} catch (IOException e) {
+			logger.debug("No memory for a contact sheet", e);
+			return retryLater();
+		}
+		try {
+			return new ResponseEntity<byte[]>(Images.toPng(Images.contactSheet(pages, columns, CONTACT_SHEET_GAP,
+					CONTACT_SHEET_BACKGROUND)), HttpStatus.OK);
+		} finally {
+			reservation.release();
+		}
+	}
+
+	//A 503 the browser can try again after a while, like HandlerTimeoutException but with Retry-After
+	private static ResponseEntity<byte[]> retryLater() {
+		HttpHeaders headers = new HttpHeaders();
+		headers.set("Retry-After", RETRY_AFTER_SECONDS);
+		return new ResponseEntity<byte[]>(headers, HttpStatus.SERVICE_UNAVAILABLE);
+	}
+
+	private static class Page {
+
+		private final int number;
+
+		private final byte[] png;
+
+		private Page(int number, byte[] png) {
+			this.number = number;
+			this.png = png;
+		}
+	}
+
+	//Hands the pages from the threads of the PreviewRenderer to the thread answering the request.
+	//Once it is closed no more pages are wanted.
+	private static class PageQueue implements PageListener {
+
+		private static final Page END = new Page(-1, null);
+
+		private final BlockingQueue<Page> pages = new LinkedBlockingQueue<Page>();
+
+		private volatile boolean closed;
+
+		@Override
+		public boolean pageRendered(int page, byte[] png) {
+			if (closed) {
+				return false;
+			}
+			pages.add(new Page(page, png));
+			return true;
+		}
+
+		@Override
+		public void finished(Exception failure) {
+			if (failure != null) {
+				logger.warn("Not all pages of a preview could be rendered", failure);
+			}
+			pages.add(END);
+		}
+
+		//The next page, null after the last one
+		private Page take() throws InterruptedException {
+			Page page = pages.take();
+			return page != END ? page : null;
+		}
+
+		private boolean isClosed() {
+			return closed;
+		}
+
+		//Also wakes up the thread waiting for the next page
+		private void close() {
+			closed = true;
+			pages.add(END);
+		}
+	}
+}
@@ -1,68 +1,149 @@
 package ch.itraum.recruiter.controller;
 
+import java.awt.Color;
+import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.imageio.ImageIO;
+import javax.servlet.http.HttpServletRequest;
 
-import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.pdmodel.PDPage;
-import org.jpedal.PdfDecoder;
-import org.jpedal.exception.PdfException;
-import org.jpedal.fonts.FontMappings;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
-import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.context.request.async.WebAsyncTask;
 
+import ch.itraum.recruiter.async.HandlerExecutor;
+import ch.itraum.recruiter.model.DocumentSummary;
 import ch.itraum.recruiter.repository.DocumentRepository;
+import ch.itraum.recruiter.session.WizardState;
+import ch.itraum.recruiter.thumbnail.JPedalRenderer;
+import ch.itraum.recruiter.thumbnail.PdfBoxRenderer;
+import ch.itraum.recruiter.thumbnail.RenderPipeline;
 
+//Delivers a page of a document of the current applicant as PNG. Pages are counted from 0, a width of 0 keeps the rendered size.
+//Nothing is rendered here: thumbnails come from the RenderPipeline, which renders them in the background.
+//As long as a thumbnail isn't ready, a placeholder is delivered instead.
+//The requests are handled on the thumbnailExecutor, so they never hold a container thread.
+//The headers go with the result, the response must only be touched on the container thread.
 @Controller
 public class ThumbnailController {
-	
+
+	private static final int MAX_WIDTH = 2000;
+
+	//Seconds after which the browser should ask again for a thumbnail that wasn't ready
+	private static final String RETRY_AFTER_SECONDS = "2";
+
 	@Autowired
 	private DocumentRepository documentRepository;
 
-	@ResponseBody
+	@Autowired
+	private RenderPipeline renderPipeline;
+
+	@Autowired
+	@Qualifier("thumbnailExecutor")
+	private HandlerExecutor thumbnailExecutor;
+
+	private final ConcurrentMap<Integer, byte[]> placeholders = new ConcurrentHashMap<Integer, byte[]>();
+
 	@RequestMapping(value = "/png", method = RequestMethod.GET, produces = MediaType.IMAGE_PNG_VALUE)
-	public byte[] png() throws IOException {
-		
-		ByteArrayInputStream inputStream = new ByteArrayInputStream(documentRepository.findOne(1).getContent());
-		
-		PDDocument pdf = PDDocument.load(inputStream);
-		PDPage page = (PDPage) pdf.getDocumentCatalog().getAllPages().get(0);
-		
-		BufferedImage image = page.convertToImage();
-		
-		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-		ImageIO.write(image, "png", outputStream);
-		
-		return outputStream.toByteArray();
-		
+	public WebAsyncTask<ResponseEntity<byte[]>> png(@RequestParam(value = "id", defaultValue = "1") int id,
+			@RequestParam(value = "page", defaultValue = "0") int page, @RequestParam(value = "width", required = false) Integer width,
+			HttpServletRequest request) {
+
+		return thumbnailTask(id, candidateId(request), PdfBoxRenderer.ENGINE, page, width);
 	}
-	
-	@ResponseBody
+
 	@RequestMapping(value = "/png2", method = RequestMethod.GET, produces = MediaType.IMAGE_PNG_VALUE)
-	public byte[] png2() throws IOException, PdfException {
-		
-		PdfDecoder pdfDecoder = new PdfDecoder(true);
-		
-		FontMappings.setFontReplacements();
-		
-		pdfDecoder.openPdfArray(documentRepository.findOne(1).getContent());
-		
-		BufferedImage image = pdfDecoder.getPageAsImage(1);
-		
-		pdfDecoder.closePdfFile();
-		
-		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-		ImageIO.write(image, "png", outputStream);
-		
-		return outputStream.toByteArray();
-		
+	public WebAsyncTask<ResponseEntity<byte[]>> png2(@RequestParam(value = "id", defaultValue = "1") int id,
+			@RequestParam(value = "page", defaultValue = "0") int page, @RequestParam(value = "width", required = false) Integer width,
+			HttpServletRequest request) {
+
+		return thumbnailTask(id, candidateId(request), JPedalRenderer.ENGINE, page, width);
+	}
+
+	//Looking up the document and reading the thumbnail from disk happens on the thumbnailExecutor.
+	//If that takes too long the placeholder is delivered, the browser asks again.
+	//The parameters are checked before, the timeout delivers a placeholder of the requested width too.
+	private WebAsyncTask<ResponseEntity<byte[]>> thumbnailTask(final int id, final Integer candidateId, final String engine,
+			final int page, Integer width) {
+
+		final int thumbnailWidth = width != null ? width : renderPipeline.getDefaultWidth();
+		if (page < 0 || thumbnailWidth < 0 || thumbnailWidth > MAX_WIDTH) {
+			throw new BadRequestException("No thumbnail of page " + page + " at width " + thumbnailWidth);
+		}
+		return thumbnailExecutor.task(new Callable<ResponseEntity<byte[]>>() {
+			@Override
+			public ResponseEntity<byte[]> call() throws IOException {
+				return thumbnail(id, candidateId, engine, page, thumbnailWidth);
+			}
+		}, new Callable<ResponseEntity<byte[]>>() {
+			@Override
+			public ResponseEntity<byte[]> call() throws IOException {
+				return notReady(thumbnailWidth);
+			}
+		});
+	}
+
+	private ResponseEntity<byte[]> thumbnail(int id, Integer candidateId, String engine, int page, int width) throws IOException {
+		DocumentSummary document = candidateId != null ? documentRepository.findSummaryByIdAndCandidateId(id, candidateId) : null;
+		if (document == null || !renderPipeline.hasEngine(engine) || (document.getPageCount() != null && page >= document.getPageCount())) {
+			throw new NotFoundException("No thumbnail of page " + page + " of document " + id);
+		}
+
+		byte[] png = renderPipeline.getThumbnail(document.getContentHash(), engine, page, width);
+		if (png != null) {
+			return new ResponseEntity<byte[]>(png, HttpStatus.OK);
+		}
+		if (renderPipeline.hasFailed(document.getContentHash())) {
+			throw new NotFoundException("Document " + id + " can't be rendered");
+		}
+
+		return notReady(width);
+	}
+
+	//The applicant is looked up on the container thread, the WizardStateInterceptor prepared the state there.
+	//Null before the applicant has saved the first form, there are no documents then.
+	static Integer candidateId(HttpServletRequest request) {
+		WizardState wizardState = (WizardState) request.getAttribute(WizardState.REQUEST_ATTRIBUTE);
+		return wizardState != null ? wizardState.getDraft().getCandidateId() : null;
+	}
+
+	private ResponseEntity<byte[]> notReady(int width) throws IOException {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setCacheControl("no-store");
+		headers.set("Retry-After", RETRY_AFTER_SECONDS);
+		return new ResponseEntity<byte[]>(placeholder(width), headers, HttpStatus.OK);
+	}
+
+	//A light grey page in A4 format, which is shown until the thumbnail is rendered.
+	//Only checked widths get here, so there are at most MAX_WIDTH + 1 of them.
+	private byte[] placeholder(int width) throws IOException {
+		byte[] png = placeholders.get(width);
+		if (png == null) {
+			int placeholderWidth = width > 0 ? width : 595;
+			BufferedImage image = new BufferedImage(placeholderWidth, placeholderWidth * 297 / 210, BufferedImage.TYPE_INT_RGB);
+			Graphics2D graphics = image.createGraphics();
+			graphics.setColor(new Color(0xEE, 0xEE, 0xEE));
+			graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+			graphics.dispose();
+
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			ImageIO.write(image, "png", outputStream);
+			png = outputStream.toByteArray();
+			placeholders.putIfAbsent(width, png);
+		}
+		return png;
 	}
 }
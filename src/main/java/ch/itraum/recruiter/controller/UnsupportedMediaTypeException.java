@@ -0,0 +1,14 @@
+package ch.itraum.recruiter.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+//Thrown if an upload isn't a PDF
+@SuppressWarnings("serial")
+@ResponseStatus(HttpStatus.UNSUPPORTED_MEDIA_TYPE)
+public class UnsupportedMediaTypeException extends RuntimeException {
+
+	public UnsupportedMediaTypeException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,129 @@
+package ch.itraum.recruiter.jdbc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+//Wraps a connection, its statements and their result sets, so they report to the given QueryStatistics.
+//Statements are counted when they're executed, a batch counts as one. Rows are counted by ResultSet.next,
+//bytes by the getters of byte arrays and strings, and LOBs by the getters of Blobs, Clobs and streams.
+class AccountingProxies {
+
+	private static final Set<String> EXECUTE_METHODS = new HashSet<String>(Arrays.asList("execute", "executeQuery", "executeUpdate",
+			"executeBatch"));
+
+	private static final Set<String> LOB_GETTERS = new HashSet<String>(Arrays.asList("getBlob", "getClob", "getNClob", "getBinaryStream",
+			"getCharacterStream", "getNCharacterStream", "getAsciiStream"));
+
+	private AccountingProxies() {
+	}
+
+	static Connection wrap(Connection connection, QueryStatistics statistics) {
+		return proxy(Connection.class, connection, new ConnectionHandler(connection, statistics));
+	}
+
+	private static <T> T proxy(Class<T> type, T target, InvocationHandler handler) {
+		return type.cast(Proxy.newProxyInstance(AccountingProxies.class.getClassLoader(), new Class<?>[] { type }, handler));
+	}
+
+	private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	private static class ConnectionHandler implements InvocationHandler {
+
+		private final Connection connection;
+
+		private final QueryStatistics statistics;
+
+		private ConnectionHandler(Connection connection, QueryStatistics statistics) {
+			this.connection = connection;
+			this.statistics = statistics;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			Object result = AccountingProxies.invoke(connection, method, args);
+			//The SQL of prepared statements is known now, the one of plain statements when they're executed
+			String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null;
+			if (result instanceof CallableStatement) {
+				return proxy(CallableStatement.class, (CallableStatement) result, new StatementHandler(result, sql, statistics));
+			} else if (result instanceof PreparedStatement) {
+				return proxy(PreparedStatement.class, (PreparedStatement) result, new StatementHandler(result, sql, statistics));
+			} else if (result instanceof Statement) {
+				return proxy(Statement.class, (Statement) result, new StatementHandler(result, null, statistics));
+			}
+			return result;
+		}
+	}
+
+	private static class StatementHandler implements InvocationHandler {
+
+		private final Object statement;
+
+		private final String sql;
+
+		private final QueryStatistics statistics;
+
+		private StatementHandler(Object statement, String sql, QueryStatistics statistics) {
+			this.statement = statement;
+			this.sql = sql;
+			this.statistics = statistics;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			if (EXECUTE_METHODS.contains(method.getName())) {
+				statistics.statementExecuted(args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : sql);
+			}
+			Object result = AccountingProxies.invoke(statement, method, args);
+			if (result instanceof ResultSet) {
+				return proxy(ResultSet.class, (ResultSet) result, new ResultSetHandler(result, statistics));
+			}
+			return result;
+		}
+	}
+
+	private static class ResultSetHandler implements InvocationHandler {
+
+		private final Object resultSet;
+
+		private final QueryStatistics statistics;
+
+		private ResultSetHandler(Object resultSet, QueryStatistics statistics) {
+			this.resultSet = resultSet;
+			this.statistics = statistics;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			Object result = AccountingProxies.invoke(resultSet, method, args);
+			String name = method.getName();
+			if ("next".equals(name)) {
+				if (Boolean.TRUE.equals(result)) {
+					statistics.rowFetched();
+				}
+			} else if (result instanceof byte[]) {
+				statistics.bytesFetched(((byte[]) result).length);
+			} else if (result instanceof String && name.startsWith("get")) {
+				statistics.bytesFetched(((String) result).length());
+			} else if (result != null && LOB_GETTERS.contains(name)) {
+				statistics.lobFetched();
+			}
+			return result;
+		}
+	}
+}
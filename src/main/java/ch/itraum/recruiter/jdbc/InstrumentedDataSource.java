@@ -0,0 +1,92 @@
+package ch.itraum.recruiter.jdbc;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.apache.tomcat.jdbc.pool.PoolExhaustedException;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import ch.itraum.recruiter.metrics.Counter;
+import ch.itraum.recruiter.metrics.Gauge;
+import ch.itraum.recruiter.metrics.MetricsRegistry;
+
+//The connection pool as the application sees it. Publishes the state of the pool and
+//measures how long the application waits for a connection, which the pool itself doesn't.
+//While a QueryAccounting runs on the current thread, the connections report their statements to it.
+public class InstrumentedDataSource extends DelegatingDataSource {
+
+	private final org.apache.tomcat.jdbc.pool.DataSource pool;
+
+	private final Counter connectionsAcquired;
+
+	private final Counter waitMillis;
+
+	private final Counter timeouts;
+
+	public InstrumentedDataSource(final org.apache.tomcat.jdbc.pool.DataSource pool, MetricsRegistry metricsRegistry) {
+		super(pool);
+		this.pool = pool;
+
+		connectionsAcquired = metricsRegistry.counter("db.pool.acquired");
+		waitMillis = metricsRegistry.counter("db.pool.wait.millis");
+		timeouts = metricsRegistry.counter("db.pool.timeouts");
+		metricsRegistry.register("db.pool.active", new Gauge() {
+			@Override
+			public long getValue() {
+				return pool.getActive();
+			}
+		});
+		metricsRegistry.register("db.pool.idle", new Gauge() {
+			@Override
+			public long getValue() {
+				return pool.getIdle();
+			}
+		});
+		metricsRegistry.register("db.pool.pending", new Gauge() {
+			@Override
+			public long getValue() {
+				return pool.getWaitCount();
+			}
+		});
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		long start = System.currentTimeMillis();
+		try {
+			Connection connection = super.getConnection();
+			connectionsAcquired.increment();
+			return account(connection);
+		} catch (PoolExhaustedException e) {
+			timeouts.increment();
+			throw e;
+		} finally {
+			waitMillis.add(System.currentTimeMillis() - start);
+		}
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		long start = System.currentTimeMillis();
+		try {
+			Connection connection = super.getConnection(username, password);
+			connectionsAcquired.increment();
+			return account(connection);
+		} catch (PoolExhaustedException e) {
+			timeouts.increment();
+			throw e;
+		} finally {
+			waitMillis.add(System.currentTimeMillis() - start);
+		}
+	}
+
+	private Connection account(Connection connection) {
+		QueryStatistics statistics = QueryAccounting.current();
+		return statistics != null ? AccountingProxies.wrap(connection, statistics) : connection;
+	}
+
+	//Called by Spring when the application context is closed
+	public void close() {
+		pool.close();
+	}
+}
@@ -0,0 +1,33 @@
+package ch.itraum.recruiter.jdbc;
+
+//Collects the QueryStatistics of the current thread between begin and end, e.g. for an HTTP request.
+//Connections taken from the InstrumentedDataSource while the accounting runs report to it,
+//all other connections (like the ones of the render threads) aren't counted.
+public class QueryAccounting {
+
+	private static final ThreadLocal<QueryStatistics> CURRENT = new ThreadLocal<QueryStatistics>();
+
+	private QueryAccounting() {
+	}
+
+	public static void begin() {
+		CURRENT.set(new QueryStatistics());
+	}
+
+	//Continues counting into statistics begun on another thread, e.g. when a request is handled asynchronously
+	public static void resume(QueryStatistics statistics) {
+		CURRENT.set(statistics);
+	}
+
+	//Stops counting and returns what was counted since begin, null if nothing was
+	public static QueryStatistics end() {
+		QueryStatistics statistics = CURRENT.get();
+		CURRENT.remove();
+		return statistics;
+	}
+
+	//The statistics of the current thread, null if no accounting runs
+	public static QueryStatistics current() {
+		return CURRENT.get();
+	}
+}
@@ -0,0 +1,128 @@
+package ch.itraum.recruiter.jdbc;
+
+import java.util.concurrent.Callable;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.CallableProcessingInterceptorAdapter;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+import ch.itraum.recruiter.metrics.Counter;
+import ch.itraum.recruiter.metrics.MetricsRegistry;
+
+//Counts what every request does with the database (see QueryAccounting) and logs the requests which exceed the budget,
+//together with their SQL, so N+1 queries and loaded LOBs show up before they hurt.
+//The statistics are left in the request attribute STATISTICS_ATTRIBUTE, where tests can check them.
+//Handlers returning a Callable are counted on all the threads they run on, until the request completes.
+public class QueryBudgetInterceptor extends HandlerInterceptorAdapter {
+
+	public static final String STATISTICS_ATTRIBUTE = QueryBudgetInterceptor.class.getName() + ".statistics";
+
+	private static final String OWNER_ATTRIBUTE = QueryBudgetInterceptor.class.getName() + ".owner";
+
+	//The statistics of a request while its handler runs asynchronously
+	private static final String SUSPENDED_ATTRIBUTE = QueryBudgetInterceptor.class.getName() + ".suspended";
+
+	private static final Logger logger = LoggerFactory.getLogger(QueryBudgetInterceptor.class);
+
+	private final int maxStatements;
+
+	private final long maxRows;
+
+	private final long maxBytes;
+
+	private final int maxLobs;
+
+	private final Counter statements;
+
+	private final Counter rows;
+
+	private final Counter bytes;
+
+	private final Counter overBudget;
+
+	public QueryBudgetInterceptor(int maxStatements, long maxRows, long maxBytes, int maxLobs, MetricsRegistry metricsRegistry) {
+		this.maxStatements = maxStatements;
+		this.maxRows = maxRows;
+		this.maxBytes = maxBytes;
+		this.maxLobs = maxLobs;
+		statements = metricsRegistry.counter("db.requests.statements");
+		rows = metricsRegistry.counter("db.requests.rows");
+		bytes = metricsRegistry.counter("db.requests.bytes");
+		overBudget = metricsRegistry.counter("db.requests.overBudget");
+	}
+
+	@Override
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+		//A forward within the request is counted with the request that started it
+		if (QueryAccounting.current() != null) {
+			return true;
+		}
+		QueryStatistics suspended = (QueryStatistics) request.getAttribute(SUSPENDED_ATTRIBUTE);
+		if (suspended != null) {
+			//The dispatch after asynchronous handling continues the statistics of the request
+			request.removeAttribute(SUSPENDED_ATTRIBUTE);
+			QueryAccounting.resume(suspended);
+		} else {
+			QueryAccounting.begin();
+			request.setAttribute(OWNER_ATTRIBUTE, Boolean.TRUE);
+		}
+		return true;
+	}
+
+	//The handler continues on another thread, the container thread must not keep counting
+	@Override
+	public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+		if (request.getAttribute(OWNER_ATTRIBUTE) != null) {
+			request.setAttribute(SUSPENDED_ATTRIBUTE, QueryAccounting.end());
+		}
+	}
+
+	//Counts what a Callable returned by a handler does on its own thread, see WebConfig.configureAsyncSupport
+	public CallableProcessingInterceptor callableInterceptor() {
+		return new CallableProcessingInterceptorAdapter() {
+			@Override
+			public <T> void preProcess(NativeWebRequest request, Callable<T> task) {
+				QueryStatistics suspended = (QueryStatistics) request.getAttribute(SUSPENDED_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+				if (suspended != null) {
+					QueryAccounting.resume(suspended);
+				}
+			}
+
+			//The request may have timed out and been completed meanwhile, so it isn't asked whether counting was resumed.
+			//Ending it anyway keeps the statistics from staying on the thread for the next task.
+			@Override
+			public <T> void postProcess(NativeWebRequest request, Callable<T> task, Object concurrentResult) {
+				QueryAccounting.end();
+			}
+		};
+	}
+
+	@Override
+	public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+		if (request.getAttribute(OWNER_ATTRIBUTE) == null) {
+			return;
+		}
+		request.removeAttribute(OWNER_ATTRIBUTE);
+		QueryStatistics statistics = QueryAccounting.end();
+		if (statistics == null) {
+			return;
+		}
+		request.setAttribute(STATISTICS_ATTRIBUTE, statistics);
+		statements.add(statistics.getStatements());
+		rows.add(statistics.getRows());
+		bytes.add(statistics.getBytes());
+		if (statistics.getStatements() > maxStatements || statistics.getRows() > maxRows || statistics.getBytes() > maxBytes
+				|| statistics.getLobs() > maxLobs) {
+			overBudget.increment();
+			logger.warn(request.getMethod() + " " + request.getRequestURI() + " exceeded the query budget with " + statistics + ": "
+					+ statistics.getSql());
+		}
+	}
+}
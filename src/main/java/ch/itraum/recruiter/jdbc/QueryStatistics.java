@@ -0,0 +1,69 @@
+package ch.itraum.recruiter.jdbc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+//What one request did with the database: the statements executed, the rows read from their results,
+//the bytes read from columns (characters for text) and how many LOBs were opened.
+//Only used by the thread that does the request, see QueryAccounting.
+public class QueryStatistics {
+
+	//Only so many statements are kept for the log, the counts go on
+	private static final int MAX_KEPT_STATEMENTS = 100;
+
+	private int statements;
+
+	private long rows;
+
+	private long bytes;
+
+	private int lobs;
+
+	private final List<String> sql = new ArrayList<String>();
+
+	void statementExecuted(String statement) {
+		statements++;
+		if (sql.size() < MAX_KEPT_STATEMENTS) {
+			sql.add(statement);
+		}
+	}
+
+	void rowFetched() {
+		rows++;
+	}
+
+	void bytesFetched(long amount) {
+		bytes += amount;
+	}
+
+	void lobFetched() {
+		lobs++;
+	}
+
+	public int getStatements() {
+		return statements;
+	}
+
+	public long getRows() {
+		return rows;
+	}
+
+	public long getBytes() {
+		return bytes;
+	}
+
+	public int getLobs() {
+		return lobs;
+	}
+
+	//The SQL of the first statements, in the order they were executed
+	public List<String> getSql() {
+		return Collections.unmodifiableList(sql);
+	}
+
+	@Override
+	public String toString() {
+		return statements + " statements, " + rows + " rows, " + bytes + " bytes, " + lobs + " LOBs";
+	}
+}
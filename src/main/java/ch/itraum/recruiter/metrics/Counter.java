@@ -0,0 +1,22 @@
+package ch.itraum.recruiter.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+//A value that only ever goes up, like the number of cache hits
+public class Counter implements Gauge {
+
+	private final AtomicLong count = new AtomicLong();
+
+	public void increment() {
+		count.incrementAndGet();
+	}
+
+	public void add(long amount) {
+		count.addAndGet(amount);
+	}
+
+	@Override
+	public long getValue() {
+		return count.get();
+	}
+}
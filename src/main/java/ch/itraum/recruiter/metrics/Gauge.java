@@ -0,0 +1,7 @@
+package ch.itraum.recruiter.metrics;
+
+//A value that is read whenever the metrics are collected, like the current size of a cache
+public interface Gauge {
+
+	long getValue();
+}
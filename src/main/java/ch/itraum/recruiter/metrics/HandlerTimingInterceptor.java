@@ -0,0 +1,76 @@
+package ch.itraum.recruiter.metrics;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+//Measures how long every @RequestMapping method takes, including the rendering of its view,
+//in a histogram http.<controller>.<method>. Requests ending with an exception or a 5xx status are counted in http.<controller>.<method>.errors.
+//It should be the first interceptor, so the time of the others is included.
+//Asynchronously handled requests are measured from their start until the response is complete.
+public class HandlerTimingInterceptor extends HandlerInterceptorAdapter {
+
+	private static final String START_ATTRIBUTE = HandlerTimingInterceptor.class.getName() + ".start";
+
+	private final MetricsRegistry metricsRegistry;
+
+	//Looked up by the method, Spring creates a new HandlerMethod for every request
+	private final ConcurrentMap<Method, HandlerMetrics> handlerMetrics = new ConcurrentHashMap<Method, HandlerMetrics>();
+
+	public HandlerTimingInterceptor(MetricsRegistry metricsRegistry) {
+		this.metricsRegistry = metricsRegistry;
+	}
+
+	@Override
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+		//The dispatch after asynchronous handling keeps the start of the request
+		if (handler instanceof HandlerMethod && request.getAttribute(START_ATTRIBUTE) == null) {
+			request.setAttribute(START_ATTRIBUTE, System.nanoTime());
+		}
+		return true;
+	}
+
+	@Override
+	public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+		Object start = request.getAttribute(START_ATTRIBUTE);
+		if (start == null || !(handler instanceof HandlerMethod)) {
+			return;
+		}
+		HandlerMetrics metrics = getHandlerMetrics((HandlerMethod) handler);
+		metrics.time.recordNanos(System.nanoTime() - (Long) start);
+		if (ex != null || response.getStatus() >= HttpServletResponse.SC_INTERNAL_SERVER_ERROR) {
+			metrics.errors.increment();
+		}
+	}
+
+	private HandlerMetrics getHandlerMetrics(HandlerMethod handlerMethod) {
+		HandlerMetrics metrics = handlerMetrics.get(handlerMethod.getMethod());
+		if (metrics == null) {
+			String name = "http." + handlerMethod.getBeanType().getSimpleName() + "." + handlerMethod.getMethod().getName();
+			metrics = new HandlerMetrics(metricsRegistry.histogram(name), metricsRegistry.counter(name + ".errors"));
+			HandlerMetrics existing = handlerMetrics.putIfAbsent(handlerMethod.getMethod(), metrics);
+			if (existing != null) {
+				metrics = existing;
+			}
+		}
+		return metrics;
+	}
+
+	private static class HandlerMetrics {
+
+		private final Histogram time;
+
+		private final Counter errors;
+
+		private HandlerMetrics(Histogram time, Counter errors) {
+			this.time = time;
+			this.errors = errors;
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package ch.itraum.recruiter.metrics;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//Distribution of durations in fixed buckets, e.g. how long the requests of a handler take.
+//Recording only increments a few atomic longs: no locks and nothing is allocated, so it can be done on every request.
+//The percentiles in a snapshot are the upper bounds of the buckets they fall into (at most the maximum), precise enough to see trends.
+public class Histogram {
+
+	//Upper bounds of the buckets in microseconds, the last bucket takes everything above
+	private static final long[] BOUNDS = { 100, 250, 500, 1000, 2500, 5000, 10000, 25000, 50000, 100000, 250000, 500000, 1000000, 2500000,
+			5000000, 10000000 };
+
+	private static final int[] PERCENTILES = { 50, 95, 99 };
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS.length + 1);
+
+	private final AtomicLong count = new AtomicLong();
+
+	private final AtomicLong sum = new AtomicLong();
+
+	private final AtomicLong max = new AtomicLong();
+
+	public void recordNanos(long nanos) {
+		recordMicros(nanos / 1000);
+	}
+
+	public void recordMicros(long micros) {
+		buckets.incrementAndGet(bucket(micros));
+		count.incrementAndGet();
+		sum.addAndGet(micros);
+		long currentMax = max.get();
+		while (micros > currentMax && !max.compareAndSet(currentMax, micros)) {
+			currentMax = max.get();
+		}
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	//Adds the values of this histogram to a snapshot: count, sum, max and percentiles in microseconds,
+	//and the number of values up to each bound as name.le.<bound>
+	void addTo(Map<String, Long> values, String name) {
+		long[] counts = new long[buckets.length()];
+		long total = 0;
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = buckets.get(i);
+			total += counts[i];
+		}
+		values.put(name + ".count", total);
+		values.put(name + ".sum.micros", sum.get());
+		values.put(name + ".max.micros", max.get());
+		for (int percentile : PERCENTILES) {
+			values.put(name + ".p" + percentile + ".micros", percentile(counts, total, percentile));
+		}
+		long cumulative = 0;
+		for (int i = 0; i < BOUNDS.length; i++) {
+			cumulative += counts[i];
+			values.put(name + ".le." + BOUNDS[i], cumulative);
+		}
+	}
+
+	private long percentile(long[] counts, long total, int percentile) {
+		if (total == 0) {
+			return 0;
+		}
+		long rank = (total * percentile + 99) / 100;
+		long cumulative = 0;
+		for (int i = 0; i < BOUNDS.length; i++) {
+			cumulative += counts[i];
+			if (cumulative >= rank) {
+				return Math.min(BOUNDS[i], max.get());
+			}
+		}
+		return max.get();
+	}
+
+	//Binary search for the first bound the value doesn't exceed
+	private static int bucket(long micros) {
+		int low = 0;
+		int high = BOUNDS.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (micros <= BOUNDS[middle]) {
+				high = middle;
+			} else {
+				low = middle + 1;
+			}
+		}
+		return low;
+	}
+}
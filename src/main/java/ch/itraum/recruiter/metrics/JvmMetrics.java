@@ -0,0 +1,75 @@
+package ch.itraum.recruiter.metrics;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+
+//Gauges for the memory, garbage collectors and threads of the JVM, read from the platform MXBeans whenever the metrics are collected
+public class JvmMetrics {
+
+	public static void register(MetricsRegistry metricsRegistry) {
+		final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		metricsRegistry.register("jvm.heap.used", new Gauge() {
+			@Override
+			public long getValue() {
+				return memory.getHeapMemoryUsage().getUsed();
+			}
+		});
+		metricsRegistry.register("jvm.heap.committed", new Gauge() {
+			@Override
+			public long getValue() {
+				return memory.getHeapMemoryUsage().getCommitted();
+			}
+		});
+		metricsRegistry.register("jvm.heap.max", new Gauge() {
+			@Override
+			public long getValue() {
+				return memory.getHeapMemoryUsage().getMax();
+			}
+		});
+		metricsRegistry.register("jvm.nonHeap.used", new Gauge() {
+			@Override
+			public long getValue() {
+				return memory.getNonHeapMemoryUsage().getUsed();
+			}
+		});
+
+		//One pair per collector, e.g. jvm.gc.PS_Scavenge.count
+		for (final GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			String name = "jvm.gc." + collector.getName().replaceAll("[^A-Za-z0-9]", "_");
+			metricsRegistry.register(name + ".count", new Gauge() {
+				@Override
+				public long getValue() {
+					return collector.getCollectionCount();
+				}
+			});
+			metricsRegistry.register(name + ".millis", new Gauge() {
+				@Override
+				public long getValue() {
+					return collector.getCollectionTime();
+				}
+			});
+		}
+
+		final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		metricsRegistry.register("jvm.threads", new Gauge() {
+			@Override
+			public long getValue() {
+				return threads.getThreadCount();
+			}
+		});
+		metricsRegistry.register("jvm.threads.peak", new Gauge() {
+			@Override
+			public long getValue() {
+				return threads.getPeakThreadCount();
+			}
+		});
+		metricsRegistry.register("jvm.uptime.millis", new Gauge() {
+			@Override
+			public long getValue() {
+				return ManagementFactory.getRuntimeMXBean().getUptime();
+			}
+		});
+	}
+}
@@ -0,0 +1,62 @@
+package ch.itraum.recruiter.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+//Central place where the components of the application publish their metrics.
+//Components ask for their counters and histograms once and keep them, so counting itself never looks anything up.
+public class MetricsRegistry {
+
+	private final ConcurrentMap<String, Gauge> gauges = new ConcurrentHashMap<String, Gauge>();
+
+	private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+
+	//Returns the counter with the given name, creating it on first use
+	public Counter counter(String name) {
+		Gauge existing = gauges.get(name);
+		if (existing == null) {
+			Counter counter = new Counter();
+			existing = gauges.putIfAbsent(name, counter);
+			if (existing == null) {
+				return counter;
+			}
+		}
+		if (!(existing instanceof Counter)) {
+			throw new IllegalArgumentException("Metric " + name + " is not a counter");
+		}
+		return (Counter) existing;
+	}
+
+	//Returns the histogram with the given name, creating it on first use
+	public Histogram histogram(String name) {
+		Histogram histogram = histograms.get(name);
+		if (histogram == null) {
+			histogram = new Histogram();
+			Histogram existing = histograms.putIfAbsent(name, histogram);
+			if (existing != null) {
+				histogram = existing;
+			}
+		}
+		return histogram;
+	}
+
+	public void register(String name, Gauge gauge) {
+		gauges.put(name, gauge);
+	}
+
+	//Reads all metrics, ordered by name
+	public SortedMap<String, Long> snapshot() {
+		SortedMap<String, Long> values = new TreeMap<String, Long>();
+		for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+			values.put(entry.getKey(), entry.getValue().getValue());
+		}
+		for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+			entry.getValue().addTo(values, entry.getKey());
+		}
+		return Collections.unmodifiableSortedMap(values);
+	}
+}
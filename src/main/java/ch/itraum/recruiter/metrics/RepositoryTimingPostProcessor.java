@@ -0,0 +1,76 @@
+package ch.itraum.recruiter.metrics;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.data.repository.Repository;
+
+//Wraps every Spring Data repository, so the time of each of its methods is measured
+//in a histogram repository.<bean name>.<method>, e.g. repository.documentRepository.findSummariesByCandidateId.
+//The MetricsRegistry is taken from the bean factory, a BeanPostProcessor is created before the other beans.
+public class RepositoryTimingPostProcessor implements BeanPostProcessor, BeanFactoryAware {
+
+	private BeanFactory beanFactory;
+
+	@Override
+	public void setBeanFactory(BeanFactory beanFactory) {
+		this.beanFactory = beanFactory;
+	}
+
+	@Override
+	public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+		return bean;
+	}
+
+	@Override
+	public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+		if (!(bean instanceof Repository)) {
+			return bean;
+		}
+		ProxyFactory proxyFactory = new ProxyFactory(bean);
+		proxyFactory.addAdvice(new TimingInterceptor("repository." + beanName, beanFactory.getBean(MetricsRegistry.class)));
+		return proxyFactory.getProxy();
+	}
+
+	private static class TimingInterceptor implements MethodInterceptor {
+
+		private final String prefix;
+
+		private final MetricsRegistry metricsRegistry;
+
+		//Methods inherited from CrudRepository are shared by all repositories, so every repository has its own interceptor
+		private final ConcurrentMap<Method, Histogram> histograms = new ConcurrentHashMap<Method, Histogram>();
+
+		private TimingInterceptor(String prefix, MetricsRegistry metricsRegistry) {
+			this.prefix = prefix;
+			this.metricsRegistry = metricsRegistry;
+		}
+
+		@Override
+		public Object invoke(MethodInvocation invocation) throws Throwable {
+			long start = System.nanoTime();
+			try {
+				return invocation.proceed();
+			} finally {
+				getHistogram(invocation.getMethod()).recordNanos(System.nanoTime() - start);
+			}
+		}
+
+		private Histogram getHistogram(Method method) {
+			Histogram histogram = histograms.get(method);
+			if (histogram == null) {
+				histogram = metricsRegistry.histogram(prefix + "." + method.getName());
+				histograms.putIfAbsent(method, histogram);
+			}
+			return histogram;
+		}
+	}
+}
@@ -0,0 +1,37 @@
+package ch.itraum.recruiter.metrics;
+
+import java.lang.management.ManagementFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+
+//Reports how long the application took to start once its context is ready:
+//startup.millis since the JVM was started and startup.context.millis since the context started.
+public class StartupTimer implements ApplicationListener<ContextRefreshedEvent> {
+
+	private static final Logger logger = LoggerFactory.getLogger(StartupTimer.class);
+
+	private final Counter startupMillis;
+
+	private final Counter contextStartupMillis;
+
+	public StartupTimer(MetricsRegistry metricsRegistry) {
+		startupMillis = metricsRegistry.counter("startup.millis");
+		contextStartupMillis = metricsRegistry.counter("startup.context.millis");
+	}
+
+	@Override
+	public void onApplicationEvent(ContextRefreshedEvent event) {
+		//Only the first refresh is the startup
+		if (startupMillis.getValue() > 0) {
+			return;
+		}
+		long jvmMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+		long contextMillis = System.currentTimeMillis() - event.getApplicationContext().getStartupDate();
+		startupMillis.add(jvmMillis);
+		contextStartupMillis.add(contextMillis);
+		logger.info("Started in " + jvmMillis + " ms, " + contextMillis + " ms of them for the application context");
+	}
+}
@@ -0,0 +1,73 @@
+package ch.itraum.recruiter.metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+
+//Counts how many applicants get through each step of the wizard: funnel.started when the first page is shown,
+//funnel.<step>.completed when a step is left forward with valid data, and funnel.cancelled.
+//funnel.<step>.conversion.permille is the share of the applicants of the previous step that completed a step.
+//Going back and forward again counts a step twice, so this shows trends rather than exact numbers of applicants.
+public class WizardFunnel {
+
+	public static final String AGREEMENT = "agreement";
+	public static final String CANDIDATE = "candidate";
+	public static final String SKILLS = "skills";
+	public static final String DOCUMENTS = "documents";
+	public static final String LETTER_OF_MOTIVATION = "letterOfMotivation";
+	public static final String SUBMITTED = "submitted";
+
+	private static final String[] STEPS = { AGREEMENT, CANDIDATE, SKILLS, DOCUMENTS, LETTER_OF_MOTIVATION, SUBMITTED };
+
+	private final Counter started;
+
+	private final Counter cancelled;
+
+	//Only read after the constructor
+	private final Map<String, Counter> completed = new HashMap<String, Counter>();
+
+	public WizardFunnel(MetricsRegistry metricsRegistry) {
+		started = metricsRegistry.counter("funnel.started");
+		cancelled = metricsRegistry.counter("funnel.cancelled");
+		Counter previous = started;
+		for (String step : STEPS) {
+			Counter counter = metricsRegistry.counter("funnel." + step + ".completed");
+			metricsRegistry.register("funnel." + step + ".conversion.permille", new Conversion(previous, counter));
+			completed.put(step, counter);
+			previous = counter;
+		}
+	}
+
+	public void started() {
+		started.increment();
+	}
+
+	public void completed(String step) {
+		Counter counter = completed.get(step);
+		if (counter == null) {
+			throw new IllegalArgumentException("Unknown wizard step " + step);
+		}
+		counter.increment();
+	}
+
+	public void cancelled() {
+		cancelled.increment();
+	}
+
+	private static class Conversion implements Gauge {
+
+		private final Counter previous;
+
+		private final Counter current;
+
+		private Conversion(Counter previous, Counter current) {
+			this.previous = previous;
+			this.current = current;
+		}
+
+		@Override
+		public long getValue() {
+			long before = previous.getValue();
+			return before == 0 ? 0 : current.getValue() * 1000 / before;
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package ch.itraum.recruiter.migration;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataRetrievalFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+
+import ch.itraum.recruiter.service.DocumentService;
+import ch.itraum.recruiter.storage.DocumentContentStore;
+import ch.itraum.recruiter.storage.StoredContent;
+
+//Databases from before the DocumentContentStore keep the content of the documents in the column DOCUMENT.CONTENT.
+//It is streamed into the store one document at a time, then the column is dropped. Databases created later
+//don't have the column and are left alone.
+public class DocumentContentMigration implements JavaMigration {
+
+	private static final Logger logger = LoggerFactory.getLogger(DocumentContentMigration.class);
+
+	private final DocumentContentStore documentContentStore;
+
+	public DocumentContentMigration(DocumentContentStore documentContentStore) {
+		this.documentContentStore = documentContentStore;
+	}
+
+	@Override
+	public String getDescription() {
+		return "move document content to store";
+	}
+
+	@Override
+	public void migrate(JdbcTemplate jdbcTemplate) throws IOException {
+		if (jdbcTemplate.queryForObject("SELECT COUNT(*) FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_SCHEMA = SCHEMA() "
+				+ "AND TABLE_NAME = 'DOCUMENT' AND COLUMN_NAME = 'CONTENT'", Integer.class) == 0) {
+			return;
+		}
+
+		List<Integer> ids = jdbcTemplate.queryForList("SELECT ID FROM DOCUMENT WHERE CONTENTHASH IS NULL ORDER BY ID", Integer.class);
+		for (final Integer id : ids) {
+			StoredContent stored = jdbcTemplate.query("SELECT CONTENT FROM DOCUMENT WHERE ID = ?", new ResultSetExtractor<StoredContent>() {
+				@Override
+				public StoredContent extractData(ResultSet resultSet) throws SQLException, DataAccessException {
+					if (!resultSet.next()) {
+						return null;
+					}
+					InputStream content = resultSet.getBinaryStream(1);
+					try {
+						return documentContentStore.store(content);
+					} catch (IOException e) {
+						throw new DataRetrievalFailureException("The content of document " + id + " couldn't be stored", e);
+					} finally {
+						try {
+							content.close();
+						} catch (IOException e) {
+							logger.debug("Closing the content of document " + id + " failed", e);
+						}
+					}
+				}
+			}, id);
+			if (stored == null) {
+				continue;
+			}
+
+			//Another node starting at the same time may have moved it first, then its reference is the one that counts
+			int updated = jdbcTemplate.update("UPDATE DOCUMENT SET CONTENTHASH = ?, CONTENTLENGTH = ?, CONTENTTYPE = COALESCE(CONTENTTYPE, ?) "
+					+ "WHERE ID = ? AND CONTENTHASH IS NULL", stored.getHash(), stored.getSize(), DocumentService.PDF_CONTENT_TYPE, id);
+			if (updated == 0) {
+				documentContentStore.release(stored.getHash());
+			}
+		}
+
+		jdbcTemplate.execute("ALTER TABLE DOCUMENT DROP COLUMN IF EXISTS CONTENT");
+		jdbcTemplate.execute("ALTER TABLE DOCUMENT ALTER COLUMN CONTENTHASH SET NOT NULL");
+		logger.info("Moved the content of " + ids.size() + " documents to the content store");
+	}
+}
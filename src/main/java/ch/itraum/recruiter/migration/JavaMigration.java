@@ -0,0 +1,14 @@
+package ch.itraum.recruiter.migration;
+
+import java.io.IOException;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+//A migration which can't be written in SQL, e.g. because it moves data out of the DB.
+//It is registered with the SchemaMigrator under a version and runs in order with the scripts.
+public interface JavaMigration {
+
+	String getDescription();
+
+	void migrate(JdbcTemplate jdbcTemplate) throws IOException;
+}
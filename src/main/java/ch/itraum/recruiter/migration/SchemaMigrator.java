@@ -0,0 +1,156 @@
+package ch.itraum.recruiter.migration;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import ch.itraum.recruiter.metrics.Counter;
+import ch.itraum.recruiter.metrics.Gauge;
+import ch.itraum.recruiter.metrics.MetricsRegistry;
+
+//Brings the schema up to date before Hibernate starts, which then only validates it.
+//Migrations are SQL scripts named V<version>__<description>.sql in the given classpath directory.
+//Each one is executed once, in the order of the versions, and recorded in the table SCHEMA_VERSION.
+//Migrations which can't be written in SQL are added as JavaMigrations, their versions are counted with the scripts'.
+//Scripts should only use CREATE ... IF NOT EXISTS and the like: if two nodes start at the same time
+//both may execute a script, only one of them records it.
+public class SchemaMigrator {
+
+	private static final Pattern SCRIPT_NAME = Pattern.compile("V(\\d+)__(\\w+)\\.sql");
+
+	private static final Logger logger = LoggerFactory.getLogger(SchemaMigrator.class);
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final String location;
+
+	private final Map<Integer, JavaMigration> javaMigrations = new TreeMap<Integer, JavaMigration>();
+
+	private final Counter migrationMillis;
+
+	private final Counter migrationsApplied;
+
+	//A point in time value, which a migrator created again replaces instead of adding to it
+	private volatile int schemaVersion;
+
+	public SchemaMigrator(DataSource dataSource, String location, MetricsRegistry metricsRegistry) {
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+		this.location = location;
+		migrationMillis = metricsRegistry.counter("db.migration.millis");
+		migrationsApplied = metricsRegistry.counter("db.migration.applied");
+		metricsRegistry.register("db.schema.version", new Gauge() {
+			@Override
+			public long getValue() {
+				return schemaVersion;
+			}
+		});
+	}
+
+	public void addMigration(int version, JavaMigration migration) {
+		if (javaMigrations.put(version, migration) != null) {
+			throw new IllegalStateException("Two Java migrations have the version " + version);
+		}
+	}
+
+	//Called by Spring when the migrator is created
+	public void migrate() throws IOException {
+		long start = System.currentTimeMillis();
+		jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS SCHEMA_VERSION (VERSION INTEGER PRIMARY KEY, DESCRIPTION VARCHAR(200) NOT NULL, "
+				+ "INSTALLED_AT TIMESTAMP NOT NULL, EXECUTION_MILLIS BIGINT NOT NULL)");
+		Set<Integer> appliedVersions = new HashSet<Integer>(jdbcTemplate.queryForList("SELECT VERSION FROM SCHEMA_VERSION", Integer.class));
+
+		Map<Integer, Resource> scripts = findScripts();
+		Set<Integer> versions = new TreeSet<Integer>(scripts.keySet());
+		for (Map.Entry<Integer, JavaMigration> migration : javaMigrations.entrySet()) {
+			Resource script = scripts.get(migration.getKey());
+			if (script != null) {
+				throw new IllegalStateException("Migration " + script.getFilename() + " and a Java migration have the same version");
+			}
+			versions.add(migration.getKey());
+		}
+
+		int applied = 0;
+		int currentVersion = 0;
+		for (int version : versions) {
+			if (!appliedVersions.contains(version)) {
+				if (scripts.containsKey(version)) {
+					apply(version, scripts.get(version));
+				} else {
+					apply(version, javaMigrations.get(version));
+				}
+				applied++;
+			}
+			currentVersion = version;
+		}
+
+		long millis = System.currentTimeMillis() - start;
+		migrationMillis.add(millis);
+		migrationsApplied.add(applied);
+		schemaVersion = currentVersion;
+		logger.info("Schema is at version " + currentVersion + ", " + applied + " migrations applied in " + millis + " ms");
+	}
+
+	private void apply(int version, Resource script) {
+		long start = System.currentTimeMillis();
+		ResourceDatabasePopulator populator = new ResourceDatabasePopulator();
+		populator.addScript(script);
+		populator.setSqlScriptEncoding("UTF-8");
+		DatabasePopulatorUtils.execute(populator, jdbcTemplate.getDataSource());
+		record(version, description(script), script.getFilename(), System.currentTimeMillis() - start);
+	}
+
+	private void apply(int version, JavaMigration migration) throws IOException {
+		long start = System.currentTimeMillis();
+		migration.migrate(jdbcTemplate);
+		record(version, migration.getDescription(), migration.getClass().getSimpleName(), System.currentTimeMillis() - start);
+	}
+
+	private void record(int version, String description, String name, long millis) {
+		try {
+			jdbcTemplate.update("INSERT INTO SCHEMA_VERSION (VERSION, DESCRIPTION, INSTALLED_AT, EXECUTION_MILLIS) VALUES (?, ?, ?, ?)",
+					version, description, new Timestamp(System.currentTimeMillis()), millis);
+			logger.info("Applied migration " + name + " in " + millis + " ms");
+		} catch (DuplicateKeyException e) {
+			logger.info("Migration " + name + " was recorded by another node in the meantime");
+		}
+	}
+
+	//The scripts by version, a version must not be used twice
+	private Map<Integer, Resource> findScripts() throws IOException {
+		Map<Integer, Resource> scripts = new TreeMap<Integer, Resource>();
+		for (Resource resource : new PathMatchingResourcePatternResolver().getResources(location + "/V*__*.sql")) {
+			Matcher matcher = SCRIPT_NAME.matcher(resource.getFilename());
+			if (!matcher.matches()) {
+				throw new IllegalStateException("Migration " + resource.getFilename() + " is not named V<version>__<description>.sql");
+			}
+			Resource previous = scripts.put(Integer.valueOf(matcher.group(1)), resource);
+			if (previous != null) {
+				throw new IllegalStateException("Migrations " + previous.getFilename() + " and " + resource.getFilename() + " have the same version");
+			}
+		}
+		return scripts;
+	}
+
+	private static String description(Resource script) {
+		Matcher matcher = SCRIPT_NAME.matcher(script.getFilename());
+		matcher.matches();
+		return matcher.group(2).replace('_', ' ');
+	}
+}
@@ -40,6 +40,16 @@ public class Candidate extends AbstractPersistable<Integer> {
 	@NotEmpty
 	private String email;
 
+	
+	public Candidate() {
+	}
+	
+	
+	//Rebuilds a candidate which was saved to the DB before, see ApplicationDraft
+	public Candidate(Integer id) {
+		setId(id);
+	}
+
 
 	public String getTitle() {
 		return title;
@@ -1,8 +1,12 @@
 package ch.itraum.recruiter.model;
 
+import java.util.Date;
+
+import javax.persistence.Column;
 import javax.persistence.Entity;
-import javax.persistence.Lob;
 import javax.persistence.ManyToOne;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
 import javax.validation.constraints.NotNull;
 
 import org.hibernate.validator.constraints.NotEmpty;
@@ -15,9 +19,22 @@ public class Document extends AbstractPersistable<Integer> {
 	@NotEmpty
 	private String name;
 	
-	@NotNull
-	@Lob
-	private byte[] content;
+	//The content itself is kept in the DocumentContentStore.
+	//The DB only holds the SHA-256 hash of the content to find it there.
+	@NotEmpty
+	@Column(length = 64)
+	private String contentHash;
+	
+	//The following metadata is determined once when the content is saved,
+	//so listing documents never has to look at the content itself.
+	private Long contentLength;
+	
+	private String contentType;
+	
+	private Integer pageCount;
+	
+	@Temporal(TemporalType.TIMESTAMP)
+	private Date uploadedAt;
 
 	@NotNull
 	@ManyToOne
@@ -31,12 +48,44 @@ public class Document extends AbstractPersistable<Integer> {
 		this.name = name;
 	}
 
-	public byte[] getContent() {
-		return content;
+	public String getContentHash() {
+		return contentHash;
+	}
+
+	public void setContentHash(String contentHash) {
+		this.contentHash = contentHash;
+	}
+
+	public Long getContentLength() {
+		return contentLength;
+	}
+
+	public void setContentLength(Long contentLength) {
+		this.contentLength = contentLength;
+	}
+
+	public String getContentType() {
+		return contentType;
+	}
+
+	public void setContentType(String contentType) {
+		this.contentType = contentType;
+	}
+
+	public Integer getPageCount() {
+		return pageCount;
+	}
+
+	public void setPageCount(Integer pageCount) {
+		this.pageCount = pageCount;
+	}
+
+	public Date getUploadedAt() {
+		return uploadedAt;
 	}
 
-	public void setContent(byte[] content) {
-		this.content = content;
+	public void setUploadedAt(Date uploadedAt) {
+		this.uploadedAt = uploadedAt;
 	}
 
 	public Candidate getCandidate() {
@@ -0,0 +1,63 @@
+package ch.itraum.recruiter.model;
+
+import java.io.Serializable;
+import java.util.Date;
+
+//Read only view on the metadata of a Document, used wherever documents are only listed.
+//It is filled directly by a query, so listing documents never touches their content.
+@SuppressWarnings("serial")
+public class DocumentSummary implements Serializable {
+
+	private final Integer id;
+
+	private final String name;
+
+	private final Long contentLength;
+
+	private final String contentType;
+
+	private final Integer pageCount;
+
+	private final Date uploadedAt;
+
+	private final String contentHash;
+
+	public DocumentSummary(Integer id, String name, Long contentLength, String contentType, Integer pageCount,
+			Date uploadedAt, String contentHash) {
+		this.id = id;
+		this.name = name;
+		this.contentLength = contentLength;
+		this.contentType = contentType;
+		this.pageCount = pageCount;
+		this.uploadedAt = uploadedAt;
+		this.contentHash = contentHash;
+	}
+
+	public Integer getId() {
+		return id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public Long getContentLength() {
+		return contentLength;
+	}
+
+	public String getContentType() {
+		return contentType;
+	}
+
+	public Integer getPageCount() {
+		return pageCount;
+	}
+
+	public Date getUploadedAt() {
+		return uploadedAt;
+	}
+
+	public String getContentHash() {
+		return contentHash;
+	}
+}
@@ -0,0 +1,74 @@
+package ch.itraum.recruiter.model;
+
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.JoinColumn;
+import javax.persistence.OneToOne;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import javax.validation.constraints.NotNull;
+
+import org.springframework.data.jpa.domain.AbstractPersistable;
+
+//The letter of motivation a candidate enters as text. It is kept in its own table with one row per candidate,
+//found by the unique (and so indexed) candidate column, instead of as a Document with a special name.
+//The text is stored as UTF-8, together with its SHA-256 hash, so an unchanged letter doesn't have to be written again.
+@Entity
+@SuppressWarnings("serial")
+public class LetterOfMotivation extends AbstractPersistable<Integer> {
+
+	//Enough for MAX_CHARACTERS characters in UTF-8
+	public static final int MAX_BYTES = 65536;
+
+	public static final int MAX_CHARACTERS = 20000;
+
+	@NotNull
+	@OneToOne
+	@JoinColumn(unique = true)
+	private Candidate candidate;
+
+	@NotNull
+	@Column(length = MAX_BYTES)
+	private byte[] content;
+
+	@NotNull
+	@Column(length = 64)
+	private String contentHash;
+
+	@Temporal(TemporalType.TIMESTAMP)
+	private Date savedAt;
+
+	public Candidate getCandidate() {
+		return candidate;
+	}
+
+	public void setCandidate(Candidate candidate) {
+		this.candidate = candidate;
+	}
+
+	public byte[] getContent() {
+		return content;
+	}
+
+	public void setContent(byte[] content) {
+		this.content = content;
+	}
+
+	public String getContentHash() {
+		return contentHash;
+	}
+
+	public void setContentHash(String contentHash) {
+		this.contentHash = contentHash;
+	}
+
+	public Date getSavedAt() {
+		return savedAt;
+	}
+
+	public void setSavedAt(Date savedAt) {
+		this.savedAt = savedAt;
+	}
+}
@@ -75,6 +75,15 @@ public class Skills extends AbstractPersistable<Integer>{
 	private Boolean hasNoExperience;
 	
 	
+	public Skills() {
+	}
+	
+	//Rebuilds skills which were saved to the DB before, see ApplicationDraft
+	public Skills(Integer id) {
+		setId(id);
+	}
+	
+	
 	public Candidate getCandidate() {
 		return candidate;
 	}
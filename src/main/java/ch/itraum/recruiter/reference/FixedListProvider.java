@@ -0,0 +1,28 @@
+package ch.itraum.recruiter.reference;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+//Entries which are the same for every locale and year, like the languages, each named in its own language
+public class FixedListProvider implements ReferenceDataProvider {
+
+	private final String name;
+
+	private final Map<String, String> entries;
+
+	public FixedListProvider(String name, Map<String, String> entries) {
+		this.name = name;
+		this.entries = new LinkedHashMap<String, String>(entries);
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public Map<String, String> build(Locale locale, int currentYear) {
+		return entries;
+	}
+}
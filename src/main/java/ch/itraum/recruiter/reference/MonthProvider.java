@@ -0,0 +1,37 @@
+package ch.itraum.recruiter.reference;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.springframework.context.MessageSource;
+
+//The months, numbered from 0 like java.util.Date does, with their names translated to the locale
+public class MonthProvider implements ReferenceDataProvider {
+
+	private static final String[] MESSAGE_KEYS = { "january", "february", "march", "april", "may", "june", "july", "august",
+			"september", "october", "november", "december" };
+
+	private final String name;
+
+	private final MessageSource messageSource;
+
+	public MonthProvider(String name, MessageSource messageSource) {
+		this.name = name;
+		this.messageSource = messageSource;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public Map<String, String> build(Locale locale, int currentYear) {
+		Map<String, String> months = new LinkedHashMap<String, String>();
+		for (int month = 0; month < MESSAGE_KEYS.length; month++) {
+			months.put(Integer.toString(month), messageSource.getMessage(MESSAGE_KEYS[month], null, MESSAGE_KEYS[month], locale));
+		}
+		return months;
+	}
+}
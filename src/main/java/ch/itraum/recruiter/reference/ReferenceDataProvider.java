@@ -0,0 +1,16 @@
+package ch.itraum.recruiter.reference;
+
+import java.util.Locale;
+import java.util.Map;
+
+//Builds one dataset for the dropdown lists of the forms, e.g. the months or the years to choose from.
+//The ReferenceDataRegistry asks for it once per locale and year and keeps the result,
+//so a provider may look its values up wherever it wants, a lookup table in the DB for instance.
+public interface ReferenceDataProvider {
+
+	//The name of the dataset in the model of the views
+	String getName();
+
+	//The entries as value of the option and text shown, in the order they are shown
+	Map<String, String> build(Locale locale, int currentYear);
+}
@@ -0,0 +1,106 @@
+package ch.itraum.recruiter.reference;
+
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+//The datasets of the dropdown lists, built once per locale and kept as unmodifiable maps.
+//As the year ranges depend on the current year, everything is built again after New Year.
+//Without caching (during development) the datasets are built on every call, so changed translations show up.
+//The locale comes from the client (?lang= or the cookie), so it is mapped to one of the supported locales first,
+//otherwise every made up locale would keep a set of datasets until New Year. The first one is the default.
+public class ReferenceDataRegistry {
+
+	private final Map<String, ReferenceDataProvider> providers = new LinkedHashMap<String, ReferenceDataProvider>();
+
+	private final List<Locale> supportedLocales;
+
+	private final boolean cacheable;
+
+	private volatile Datasets datasets = new Datasets(0, Long.MIN_VALUE);
+
+	public ReferenceDataRegistry(List<ReferenceDataProvider> providers, List<Locale> supportedLocales, boolean cacheable) {
+		for (ReferenceDataProvider provider : providers) {
+			this.providers.put(provider.getName(), provider);
+		}
+		this.supportedLocales = supportedLocales;
+		this.cacheable = cacheable;
+	}
+
+	//Returns the dataset with the given name for the locale
+	public Map<String, String> get(String name, Locale locale) {
+		ReferenceDataProvider provider = providers.get(name);
+		if (provider == null) {
+			throw new IllegalArgumentException("Unknown reference data " + name + ", known are " + providers.keySet());
+		}
+		Locale supportedLocale = supportedLocale(locale);
+		Datasets current = currentDatasets();
+		if (!cacheable) {
+			return Collections.unmodifiableMap(provider.build(supportedLocale, current.year));
+		}
+		Map<String, Map<String, String>> forLocale = current.byLocale.get(supportedLocale);
+		if (forLocale == null) {
+			forLocale = buildAll(supportedLocale, current.year);
+			Map<String, Map<String, String>> existing = current.byLocale.putIfAbsent(supportedLocale, forLocale);
+			if (existing != null) {
+				forLocale = existing;
+			}
+		}
+		return forLocale.get(name);
+	}
+
+	//The supported locale with the same language, e.g. de for de_CH
+	private Locale supportedLocale(Locale locale) {
+		if (locale != null) {
+			for (Locale supportedLocale : supportedLocales) {
+				if (supportedLocale.getLanguage().equals(locale.getLanguage())) {
+					return supportedLocale;
+				}
+			}
+		}
+		return supportedLocales.get(0);
+	}
+
+	private Datasets currentDatasets() {
+		Datasets current = datasets;
+		if (System.currentTimeMillis() >= current.validUntil) {
+			Calendar now = Calendar.getInstance();
+			int year = now.get(Calendar.YEAR);
+			Calendar newYear = Calendar.getInstance();
+			newYear.clear();
+			newYear.set(year + 1, Calendar.JANUARY, 1);
+			current = new Datasets(year, newYear.getTimeInMillis());
+			datasets = current;
+		}
+		return current;
+	}
+
+	private Map<String, Map<String, String>> buildAll(Locale locale, int year) {
+		Map<String, Map<String, String>> forLocale = new HashMap<String, Map<String, String>>();
+		for (ReferenceDataProvider provider : providers.values()) {
+			forLocale.put(provider.getName(), Collections.unmodifiableMap(new LinkedHashMap<String, String>(provider.build(locale, year))));
+		}
+		return Collections.unmodifiableMap(forLocale);
+	}
+
+	//The datasets of one year, by locale
+	private static class Datasets {
+
+		private final int year;
+
+		private final long validUntil;
+
+		private final ConcurrentMap<Locale, Map<String, Map<String, String>>> byLocale = new ConcurrentHashMap<Locale, Map<String, Map<String, String>>>();
+
+		public Datasets(int year, long validUntil) {
+			this.year = year;
+			this.validUntil = validUntil;
+		}
+	}
+}
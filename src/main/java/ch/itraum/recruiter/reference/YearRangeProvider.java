@@ -0,0 +1,36 @@
+package ch.itraum.recruiter.reference;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+//The years from a fixed first year up to some years after the current one
+public class YearRangeProvider implements ReferenceDataProvider {
+
+	private final String name;
+
+	private final int firstYear;
+
+	private final int yearsAfterCurrentYear;
+
+	public YearRangeProvider(String name, int firstYear, int yearsAfterCurrentYear) {
+		this.name = name;
+		this.firstYear = firstYear;
+		this.yearsAfterCurrentYear = yearsAfterCurrentYear;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public Map<String, String> build(Locale locale, int currentYear) {
+		Map<String, String> years = new LinkedHashMap<String, String>();
+		for (int year = firstYear; year <= currentYear + yearsAfterCurrentYear; year++) {
+			String value = Integer.toString(year);
+			years.put(value, value);
+		}
+		return years;
+	}
+}
@@ -1,9 +1,17 @@
 package ch.itraum.recruiter.repository;
 
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.transaction.annotation.Transactional;
 
 import ch.itraum.recruiter.model.Candidate;
 
 public interface CandidateRepository extends CrudRepository<Candidate, Integer> {
 
+	//Unlike delete(id) this doesn't load the candidate first
+	@Modifying
+	@Transactional
+	@Query("delete from Candidate c where c.id = ?1")
+	int deleteById(int id);
 }
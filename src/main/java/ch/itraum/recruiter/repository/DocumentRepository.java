@@ -1,11 +1,53 @@
 package ch.itraum.recruiter.repository;
 
+import java.util.Collection;
 import java.util.List;
 
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.transaction.annotation.Transactional;
 
 import ch.itraum.recruiter.model.Document;
+import ch.itraum.recruiter.model.DocumentSummary;
 
 public interface DocumentRepository extends CrudRepository<Document, Integer> {
 	List<Document> findByCandidate_Id(int id);
+	
+	//Only used to move the letters of motivation, which used to be documents with a special name
+	List<Document> findByName(String name);
+	
+	//Only selects the metadata, neither the content nor the candidate are loaded
+	@Query("select new ch.itraum.recruiter.model.DocumentSummary(d.id, d.name, d.contentLength, d.contentType, d.pageCount, d.uploadedAt, d.contentHash) "
+			+ "from Document d where d.candidate.id = ?1 order by d.id")
+	List<DocumentSummary> findSummariesByCandidateId(int id);
+	
+	//Null unless the document belongs to the candidate, so nobody gets at the documents of other applicants
+	@Query("select new ch.itraum.recruiter.model.DocumentSummary(d.id, d.name, d.contentLength, d.contentType, d.pageCount, d.uploadedAt, d.contentHash) "
+			+ "from Document d where d.id = ?1 and d.candidate.id = ?2")
+	DocumentSummary findSummaryByIdAndCandidateId(int id, int candidateId);
+	
+	//The page count is only known once the document was analysed by the RenderPipeline
+	@Modifying
+	@Transactional
+	@Query("update Document d set d.pageCount = ?2 where d.contentHash = ?1")
+	int updatePageCount(String contentHash, int pageCount);
+	
+	//Bulk operations: one statement for any number of documents, nothing is loaded into the persistence context.
+	//The content hashes are selected first, so the content can be released once the rows are gone.
+	@Query("select d.contentHash from Document d where d.candidate.id = ?1 and d.id in ?2")
+	List<String> findContentHashesByCandidateIdAndIdIn(int candidateId, Collection<Integer> ids);
+	
+	@Modifying
+	@Transactional
+	@Query("delete from Document d where d.candidate.id = ?1 and d.id in ?2")
+	int deleteByCandidateIdAndIdIn(int candidateId, Collection<Integer> ids);
+	
+	@Query("select d.contentHash from Document d where d.candidate.id = ?1")
+	List<String> findContentHashesByCandidateId(int candidateId);
+	
+	@Modifying
+	@Transactional
+	@Query("delete from Document d where d.candidate.id = ?1")
+	int deleteByCandidateId(int candidateId);
 }
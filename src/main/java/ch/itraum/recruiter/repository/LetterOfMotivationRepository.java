@@ -0,0 +1,30 @@
+package ch.itraum.recruiter.repository;
+
+import java.util.Date;
+
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.transaction.annotation.Transactional;
+
+import ch.itraum.recruiter.model.LetterOfMotivation;
+
+public interface LetterOfMotivationRepository extends CrudRepository<LetterOfMotivation, Integer> {
+
+	@Query("select l.content from LetterOfMotivation l where l.candidate.id = ?1")
+	byte[] findContentByCandidateId(int candidateId);
+
+	//Enough to decide whether the letter has to be written, the content isn't loaded
+	@Query("select l.contentHash from LetterOfMotivation l where l.candidate.id = ?1")
+	String findContentHashByCandidateId(int candidateId);
+
+	@Modifying
+	@Transactional
+	@Query("update LetterOfMotivation l set l.content = ?2, l.contentHash = ?3, l.savedAt = ?4 where l.candidate.id = ?1")
+	int updateByCandidateId(int candidateId, byte[] content, String contentHash, Date savedAt);
+
+	@Modifying
+	@Transactional
+	@Query("delete from LetterOfMotivation l where l.candidate.id = ?1")
+	int deleteByCandidateId(int candidateId);
+}
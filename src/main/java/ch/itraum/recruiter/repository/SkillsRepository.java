@@ -1,9 +1,16 @@
 package ch.itraum.recruiter.repository;
 
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.transaction.annotation.Transactional;
 
 import ch.itraum.recruiter.model.Skills;
 
 public interface SkillsRepository extends CrudRepository<Skills, Integer> {
 
+	@Modifying
+	@Transactional
+	@Query("delete from Skills s where s.candidate.id = ?1")
+	int deleteByCandidateId(int candidateId);
 }
@@ -0,0 +1,39 @@
+package ch.itraum.recruiter.resource;
+
+import java.util.Collections;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.web.servlet.support.RequestDataValueProcessor;
+
+//Thymeleaf passes every URL of a link expression like @{/resources/css/bootstrap.css} through the
+//RequestDataValueProcessor of the application. This one adds the version of the static resources.
+public class ResourceUrlProcessor implements RequestDataValueProcessor {
+
+	private final StaticResources staticResources;
+
+	public ResourceUrlProcessor(StaticResources staticResources) {
+		this.staticResources = staticResources;
+	}
+
+	@Override
+	public String processUrl(HttpServletRequest request, String url) {
+		return staticResources.versionUrl(request.getContextPath(), url);
+	}
+
+	@Override
+	public String processAction(HttpServletRequest request, String action) {
+		return action;
+	}
+
+	@Override
+	public String processFormFieldValue(HttpServletRequest request, String name, String value, String type) {
+		return value;
+	}
+
+	@Override
+	public Map<String, String> getExtraHiddenFields(HttpServletRequest request) {
+		return Collections.emptyMap();
+	}
+}
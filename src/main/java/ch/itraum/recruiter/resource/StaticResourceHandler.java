@@ -0,0 +1,156 @@
+package ch.itraum.recruiter.resource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.core.io.Resource;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.HttpRequestHandler;
+import org.springframework.web.context.ServletContextAware;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.support.ServletContextResource;
+import org.springframework.web.servlet.HandlerMapping;
+
+import ch.itraum.recruiter.metrics.Counter;
+import ch.itraum.recruiter.metrics.MetricsRegistry;
+
+//Serves the static resources. Requests for the current version get a year of caching and are never revalidated,
+//requests without a version (or for an old one) are revalidated with Last-Modified. A gzip variant created by the build
+//is sent to browsers accepting gzip. Files of at least sendfileMinBytes are handed to the connector if it supports sendfile
+//(Tomcat's NIO connector does), which copies them to the socket without passing them through the heap.
+public class StaticResourceHandler implements HttpRequestHandler, ServletContextAware {
+
+	private static final String IMMUTABLE = "public, max-age=31536000, immutable";
+
+	private static final String REVALIDATE = "no-cache";
+
+	//Request attributes of Tomcat's sendfile support, see org.apache.catalina.Globals
+	private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+
+	private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+
+	private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+
+	private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+	private final StaticResources staticResources;
+
+	private final Counter requests;
+
+	private final Counter immutableRequests;
+
+	private final Counter gzipRequests;
+
+	private final Counter notModified;
+
+	private final Counter sendfileRequests;
+
+	private final long sendfileMinBytes;
+
+	private ServletContext servletContext;
+
+	public StaticResourceHandler(StaticResources staticResources, long sendfileMinBytes, MetricsRegistry metricsRegistry) {
+		this.staticResources = staticResources;
+		this.sendfileMinBytes = sendfileMinBytes;
+		requests = metricsRegistry.counter("resources.requests");
+		immutableRequests = metricsRegistry.counter("resources.requests.immutable");
+		gzipRequests = metricsRegistry.counter("resources.requests.gzip");
+		notModified = metricsRegistry.counter("resources.requests.notModified");
+		sendfileRequests = metricsRegistry.counter("resources.requests.sendfile");
+	}
+
+	@Override
+	public void setServletContext(ServletContext servletContext) {
+		this.servletContext = servletContext;
+	}
+
+	@Override
+	public void handleRequest(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+		requests.increment();
+		String path = (String) request.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE);
+		boolean immutable = false;
+		int slash = path.indexOf('/');
+		if (slash > 0 && path.substring(0, slash).equals(staticResources.getVersion())) {
+			path = path.substring(slash + 1);
+			immutable = true;
+		} else if (slash > 0 && path.substring(0, slash).matches("[0-9a-f]{16}")) {
+			//An old version, the current content is sent but must not be cached under this URL
+			path = path.substring(slash + 1);
+		}
+
+		Resource resource = new ServletContextResource(servletContext, StaticResources.DIRECTORY + path);
+		if (path.contains("..") || path.endsWith(StaticResources.GZIP_SUFFIX) || !resource.exists() || !resource.isReadable()) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+
+		Resource gzipResource = new ServletContextResource(servletContext, StaticResources.DIRECTORY + path + StaticResources.GZIP_SUFFIX);
+		if (gzipResource.exists()) {
+			response.setHeader("Vary", "Accept-Encoding");
+		} else {
+			gzipResource = null;
+		}
+		if (immutable) {
+			immutableRequests.increment();
+			response.setHeader("Cache-Control", IMMUTABLE);
+		} else {
+			response.setHeader("Cache-Control", REVALIDATE);
+			if (new ServletWebRequest(request, response).checkNotModified(resource.lastModified())) {
+				notModified.increment();
+				return;
+			}
+		}
+
+		String contentType = servletContext.getMimeType(path);
+		if (contentType != null) {
+			response.setContentType(contentType);
+		}
+		if (gzipResource != null && acceptsGzip(request)) {
+			gzipRequests.increment();
+			response.setHeader("Content-Encoding", "gzip");
+			resource = gzipResource;
+		}
+		long length = resource.contentLength();
+		if (length <= Integer.MAX_VALUE) {
+			response.setContentLength((int) length);
+		}
+		if (!"HEAD".equals(request.getMethod()) && !sendfile(request, resource, length)) {
+			InputStream inputStream = resource.getInputStream();
+			try {
+				StreamUtils.copy(inputStream, response.getOutputStream());
+			} finally {
+				inputStream.close();
+			}
+		}
+	}
+
+	//Leaves writing the file to the connector, returns false if the file has to be copied to the response after all
+	private boolean sendfile(HttpServletRequest request, Resource resource, long length) {
+		if (length < sendfileMinBytes || !Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+			return false;
+		}
+		File file;
+		try {
+			file = resource.getFile();
+		} catch (IOException e) {
+			//Not a file, e.g. in a war which wasn't unpacked
+			return false;
+		}
+		sendfileRequests.increment();
+		request.setAttribute(SENDFILE_FILENAME, file.getAbsolutePath());
+		request.setAttribute(SENDFILE_START, Long.valueOf(0));
+		request.setAttribute(SENDFILE_END, Long.valueOf(length));
+		return true;
+	}
+
+	private boolean acceptsGzip(HttpServletRequest request) {
+		String acceptEncoding = request.getHeader("Accept-Encoding");
+		return acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+	}
+}
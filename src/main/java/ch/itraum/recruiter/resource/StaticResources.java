@@ -0,0 +1,96 @@
+package ch.itraum.recruiter.resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import javax.servlet.ServletContext;
+
+import org.springframework.web.context.ServletContextAware;
+
+//The static resources below /resources. Their URLs contain a version, the first characters of a SHA-256 over the content
+//of all of them: /resources/<version>/css/bootstrap.css. Because all resources share one version, the relative url(...)
+//references in the stylesheets point to the same version and need no rewriting. A new version of any resource changes
+//all URLs, which is what allows browsers to cache them for a year without ever asking again.
+public class StaticResources implements ServletContextAware {
+
+	public static final String DIRECTORY = "/resources/";
+
+	//Suffix of the gzip compressed variants created by the build, they don't change the version
+	public static final String GZIP_SUFFIX = ".gz";
+
+	private static final int VERSION_LENGTH = 16;
+
+	private ServletContext servletContext;
+
+	private String version;
+
+	@Override
+	public void setServletContext(ServletContext servletContext) {
+		this.servletContext = servletContext;
+		this.version = computeVersion();
+	}
+
+	public String getVersion() {
+		return version;
+	}
+
+	//Adds the version to the URL of a resource, URLs outside the resources are returned as they are
+	public String versionUrl(String contextPath, String url) {
+		String prefix = contextPath + DIRECTORY;
+		if (!url.startsWith(prefix) || url.startsWith(prefix + version + "/")) {
+			return url;
+		}
+		return prefix + version + "/" + url.substring(prefix.length());
+	}
+
+	private String computeVersion() {
+		List<String> paths = new ArrayList<String>();
+		collectFiles(DIRECTORY, paths);
+		Collections.sort(paths);
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			byte[] buffer = new byte[8192];
+			for (String path : paths) {
+				digest.update(path.getBytes("UTF-8"));
+				InputStream inputStream = servletContext.getResourceAsStream(path);
+				try {
+					int read;
+					while ((read = inputStream.read(buffer)) != -1) {
+						digest.update(buffer, 0, read);
+					}
+				} finally {
+					inputStream.close();
+				}
+			}
+			StringBuilder version = new StringBuilder();
+			for (byte b : digest.digest()) {
+				version.append(String.format("%02x", b & 0xff));
+			}
+			return version.substring(0, VERSION_LENGTH);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not read the static resources", e);
+		}
+	}
+
+	private void collectFiles(String directory, List<String> paths) {
+		Set<String> children = servletContext.getResourcePaths(directory);
+		if (children == null) {
+			return;
+		}
+		for (String child : children) {
+			if (child.endsWith("/")) {
+				collectFiles(child, paths);
+			} else if (!child.endsWith(GZIP_SUFFIX)) {
+				paths.add(child);
+			}
+		}
+	}
+}
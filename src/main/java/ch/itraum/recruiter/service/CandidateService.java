@@ -0,0 +1,53 @@
+package ch.itraum.recruiter.service;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import ch.itraum.recruiter.repository.CandidateRepository;
+import ch.itraum.recruiter.repository.DocumentRepository;
+import ch.itraum.recruiter.repository.LetterOfMotivationRepository;
+import ch.itraum.recruiter.repository.SkillsRepository;
+
+//Removes a candidate with everything belonging to it, e.g. when the application is cancelled
+public class CandidateService {
+
+	@Autowired
+	private CandidateRepository candidateRepository;
+
+	@Autowired
+	private SkillsRepository skillsRepository;
+
+	@Autowired
+	private DocumentRepository documentRepository;
+
+	@Autowired
+	private LetterOfMotivationRepository letterOfMotivationRepository;
+
+	@Autowired
+	private DocumentService documentService;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	//One transaction with the same five statements, no matter how many documents were uploaded.
+	//The content of the documents is released after the commit.
+	public void delete(final int candidateId) {
+		List<String> contentHashes = new TransactionTemplate(transactionManager).execute(new TransactionCallback<List<String>>() {
+			@Override
+			public List<String> doInTransaction(TransactionStatus status) {
+				List<String> contentHashes = documentRepository.findContentHashesByCandidateId(candidateId);
+				documentRepository.deleteByCandidateId(candidateId);
+				skillsRepository.deleteByCandidateId(candidateId);
+				letterOfMotivationRepository.deleteByCandidateId(candidateId);
+				candidateRepository.deleteById(candidateId);
+				return contentHashes;
+			}
+		});
+		documentService.releaseContent(contentHashes);
+	}
+}
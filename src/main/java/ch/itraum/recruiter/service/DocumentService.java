@@ -0,0 +1,120 @@
+package ch.itraum.recruiter.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import ch.itraum.recruiter.model.Document;
+import ch.itraum.recruiter.repository.DocumentRepository;
+import ch.itraum.recruiter.storage.DocumentContentStore;
+import ch.itraum.recruiter.storage.StoredContent;
+
+//Keeps the Document rows in the DB and their content in the DocumentContentStore in step.
+//The DB only knows the hash of the content, the bytes never pass through JPA.
+public class DocumentService {
+
+	public static final String PDF_CONTENT_TYPE = "application/pdf";
+
+	private Logger logger = LoggerFactory.getLogger(DocumentService.class);
+
+	@Autowired
+	private DocumentRepository documentRepository;
+
+	@Autowired
+	private DocumentContentStore documentContentStore;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	//Streams the content into the store and saves the document pointing to it.
+	//If the document had a different content before, the old content is released.
+	public Document save(Document document, InputStream content) throws IOException {
+		String previousHash = document.getContentHash();
+
+		StoredContent storedContent = documentContentStore.store(content);
+		document.setContentHash(storedContent.getHash());
+		document.setContentLength(storedContent.getSize());
+		document.setUploadedAt(new Date());
+
+		Document savedDocument;
+		try {
+			savedDocument = documentRepository.save(document);
+		} catch (RuntimeException e) {
+			//The row was not written, so nobody references the new content
+			document.setContentHash(previousHash);
+			documentContentStore.release(storedContent.getHash());
+			throw e;
+		}
+
+		if (previousHash != null) {
+			releaseQuietly(previousHash);
+		}
+		return savedDocument;
+	}
+
+	public void delete(Integer documentId) {
+		Document document = documentRepository.findOne(documentId);
+		if (document != null) {
+			delete(document);
+		}
+	}
+
+	public void delete(Document document) {
+		documentRepository.delete(document.getId());
+		releaseQuietly(document.getContentHash());
+	}
+
+	//Deletes the given documents of the candidate with two statements, whatever their number.
+	//Ids of documents belonging to somebody else are ignored.
+	public int delete(final int candidateId, final Collection<Integer> documentIds) {
+		if (documentIds.isEmpty()) {
+			return 0;
+		}
+		List<String> contentHashes = new TransactionTemplate(transactionManager).execute(new TransactionCallback<List<String>>() {
+			@Override
+			public List<String> doInTransaction(TransactionStatus status) {
+				List<String> contentHashes = documentRepository.findContentHashesByCandidateIdAndIdIn(candidateId, documentIds);
+				documentRepository.deleteByCandidateIdAndIdIn(candidateId, documentIds);
+				return contentHashes;
+			}
+		});
+		releaseContent(contentHashes);
+		return contentHashes.size();
+	}
+
+	//Only to be called after the rows referencing the content were deleted and committed
+	public void releaseContent(Collection<String> contentHashes) {
+		for (String contentHash : contentHashes) {
+			releaseQuietly(contentHash);
+		}
+	}
+
+	public InputStream openContent(Document document) throws IOException {
+		return documentContentStore.open(document.getContentHash());
+	}
+
+	public long transferContent(Document document, WritableByteChannel target) throws IOException {
+		return documentContentStore.transferTo(document.getContentHash(), target);
+	}
+
+	//The row is already gone at this point. If the content can't be released
+	//it is only wasting disk space, which is no reason to fail the request.
+	private void releaseQuietly(String hash) {
+		try {
+			documentContentStore.release(hash);
+		} catch (IOException e) {
+			logger.warn("Could not release document content " + hash, e);
+		}
+	}
+}
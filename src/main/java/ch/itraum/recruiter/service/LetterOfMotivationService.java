@@ -0,0 +1,108 @@
+package ch.itraum.recruiter.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.util.FileCopyUtils;
+
+import ch.itraum.recruiter.model.Candidate;
+import ch.itraum.recruiter.model.Document;
+import ch.itraum.recruiter.model.LetterOfMotivation;
+import ch.itraum.recruiter.repository.DocumentRepository;
+import ch.itraum.recruiter.repository.LetterOfMotivationRepository;
+import ch.itraum.recruiter.tools.RecruiterHelper;
+
+//Reads and writes the letter of motivation of a candidate. Text is always converted with UTF-8,
+//and a letter is only written if its hash differs from the one saved, so going back and forward costs a single select.
+public class LetterOfMotivationService {
+
+	private static final Logger logger = LoggerFactory.getLogger(LetterOfMotivationService.class);
+
+	@Autowired
+	private LetterOfMotivationRepository letterOfMotivationRepository;
+
+	@Autowired
+	private DocumentRepository documentRepository;
+
+	@Autowired
+	private DocumentService documentService;
+
+	//The text of the letter, empty if there is none
+	public String getText(int candidateId) {
+		byte[] content = letterOfMotivationRepository.findContentByCandidateId(candidateId);
+		return content != null ? new String(content, StandardCharsets.UTF_8) : "";
+	}
+
+	public boolean hasLetter(int candidateId) {
+		return letterOfMotivationRepository.findContentHashByCandidateId(candidateId) != null;
+	}
+
+	//Saves the text as letter of the candidate, an empty text deletes the letter.
+	//Returns whether anything was written.
+	public boolean save(int candidateId, String text) {
+		String previousHash = letterOfMotivationRepository.findContentHashByCandidateId(candidateId);
+		if (text == null || text.isEmpty()) {
+			return previousHash != null && letterOfMotivationRepository.deleteByCandidateId(candidateId) > 0;
+		}
+		if (text.length() > LetterOfMotivation.MAX_CHARACTERS) {
+			throw new IllegalArgumentException("The letter of motivation has more than " + LetterOfMotivation.MAX_CHARACTERS + " characters");
+		}
+
+		byte[] content = text.getBytes(StandardCharsets.UTF_8);
+		String contentHash = hash(content);
+		if (contentHash.equals(previousHash)) {
+			return false;
+		}
+		if (previousHash != null) {
+			return letterOfMotivationRepository.updateByCandidateId(candidateId, content, contentHash, new Date()) > 0;
+		}
+		LetterOfMotivation letter = new LetterOfMotivation();
+		letter.setCandidate(new Candidate(candidateId));
+		letter.setContent(content);
+		letter.setContentHash(contentHash);
+		letter.setSavedAt(new Date());
+		letterOfMotivationRepository.save(letter);
+		return true;
+	}
+
+	//Letters used to be saved as Documents with a special name, in the default charset of the server.
+	//They are moved to the new table once, when the application starts.
+	public void migrateLegacyLetters() throws IOException {
+		List<Document> legacyLetters = documentRepository.findByName(RecruiterHelper.FILE_NAME_MOTIVATIONSSCHREIBEN);
+		for (Document legacyLetter : legacyLetters) {
+			int candidateId = legacyLetter.getCandidate().getId();
+			InputStream inputStream = documentService.openContent(legacyLetter);
+			try {
+				save(candidateId, new String(FileCopyUtils.copyToByteArray(inputStream), Charset.defaultCharset()));
+			} finally {
+				inputStream.close();
+			}
+			documentService.delete(candidateId, Collections.singleton(legacyLetter.getId()));
+		}
+		if (!legacyLetters.isEmpty()) {
+			logger.info("Moved " + legacyLetters.size() + " letters of motivation out of the documents");
+		}
+	}
+
+	private static String hash(byte[] content) {
+		try {
+			StringBuilder hash = new StringBuilder();
+			for (byte b : MessageDigest.getInstance("SHA-256").digest(content)) {
+				hash.append(String.format("%02x", b & 0xff));
+			}
+			return hash.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	}
+}
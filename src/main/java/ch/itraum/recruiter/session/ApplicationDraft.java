@@ -0,0 +1,198 @@
+package ch.itraum.recruiter.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Date;
+
+import ch.itraum.recruiter.model.Candidate;
+import ch.itraum.recruiter.model.Skills;
+
+//Everything the wizard has to remember between two requests: the DB IDs of what was saved
+//and the values entered in the forms. It replaces the Candidate and Skills entities which used to be kept in the HttpSession,
+//which carried Hibernate state, mutable Dates and all transient form fields with them.
+//Drafts are kept in a WizardStateStore, every save increases the revision of the draft.
+//Dates are kept as milliseconds, so the draft only consists of strings and numbers and serializes compactly.
+public class ApplicationDraft implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private long revision;
+
+	private Integer candidateId;
+
+	private Integer skillsId;
+
+	//Contact data
+	private String title;
+
+	private String firstName;
+
+	private String lastName;
+
+	private String street;
+
+	private Integer plz;
+
+	private String city;
+
+	private String phoneFix;
+
+	private String phoneMobile;
+
+	private String email;
+
+	//Skills, only valid once hasSkills is set
+	private boolean hasSkills;
+
+	private String institution;
+
+	private String topic;
+
+	private String degree;
+
+	private long startDateEducation;
+
+	private long endDateEducation;
+
+	private Boolean prospectiveEnd;
+
+	private String position;
+
+	private String jobField;
+
+	private String cancelationPeriod;
+
+	private long startDateExperience;
+
+	private long endDateExperience;
+
+	private Boolean currentPosition;
+
+	private Boolean hasNoExperience;
+
+	public long getRevision() {
+		return revision;
+	}
+
+	public void setRevision(long revision) {
+		this.revision = revision;
+	}
+
+	public Integer getCandidateId() {
+		return candidateId;
+	}
+
+	public void setCandidateId(Integer candidateId) {
+		this.candidateId = candidateId;
+	}
+
+	public Integer getSkillsId() {
+		return skillsId;
+	}
+
+	public void setSkillsId(Integer skillsId) {
+		this.skillsId = skillsId;
+	}
+
+	//Takes over the values entered in the contact form, the ID of the candidate stays the same
+	public void setCandidate(Candidate candidate) {
+		title = candidate.getTitle();
+		firstName = candidate.getFirstName();
+		lastName = candidate.getLastName();
+		street = candidate.getStreet();
+		plz = candidate.getPlz();
+		city = candidate.getCity();
+		phoneFix = candidate.getPhoneFix();
+		phoneMobile = candidate.getPhoneMobile();
+		email = candidate.getEmail();
+	}
+
+	//A new candidate with the values of the draft. If it was saved before it has its DB ID,
+	//so saving it again updates the existing row.
+	public Candidate toCandidate() {
+		Candidate candidate = new Candidate(candidateId);
+		candidate.setTitle(title);
+		candidate.setFirstName(firstName);
+		candidate.setLastName(lastName);
+		candidate.setStreet(street);
+		candidate.setPlz(plz);
+		candidate.setCity(city);
+		candidate.setPhoneFix(phoneFix);
+		candidate.setPhoneMobile(phoneMobile);
+		candidate.setEmail(email);
+		return candidate;
+	}
+
+	//Takes over the values entered in the skills form, the ID of the skills stays the same
+	public void setSkills(Skills skills) {
+		hasSkills = true;
+		institution = skills.getInstitution();
+		topic = skills.getTopic();
+		degree = skills.getDegree();
+		startDateEducation = skills.getStartDateEducation().getTime();
+		endDateEducation = skills.getEndDateEducation().getTime();
+		prospectiveEnd = skills.getProspectiveEnd();
+		position = skills.getPosition();
+		jobField = skills.getJobField();
+		cancelationPeriod = skills.getCancelationPeriod();
+		startDateExperience = skills.getStartDateExperience().getTime();
+		endDateExperience = skills.getEndDateExperience().getTime();
+		currentPosition = skills.getCurrentPosition();
+		hasNoExperience = skills.getHasNoExperience();
+	}
+
+	//New skills with the values of the draft, belonging to the candidate of the draft.
+	//As long as the skills form wasn't submitted, the skills have their default values.
+	public Skills toSkills() {
+		Skills skills = new Skills(skillsId);
+		if (!hasSkills) {
+			return skills;
+		}
+		skills.setCandidate(toCandidate());
+		skills.setInstitution(institution);
+		skills.setTopic(topic);
+		skills.setDegree(degree);
+		skills.setStartDateEducation(new Date(startDateEducation));
+		skills.setEndDateEducation(new Date(endDateEducation));
+		skills.setProspectiveEnd(prospectiveEnd);
+		skills.setPosition(position);
+		skills.setJobField(jobField);
+		skills.setCancelationPeriod(cancelationPeriod);
+		skills.setStartDateExperience(new Date(startDateExperience));
+		skills.setEndDateExperience(new Date(endDateExperience));
+		skills.setCurrentPosition(currentPosition);
+		skills.setHasNoExperience(hasNoExperience);
+		return skills;
+	}
+
+	public byte[] serialize() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+		try {
+			ObjectOutputStream outputStream = new ObjectOutputStream(bytes);
+			outputStream.writeObject(this);
+			outputStream.close();
+		} catch (IOException e) {
+			throw new IllegalStateException("Draft could not be serialized", e);
+		}
+		return bytes.toByteArray();
+	}
+
+	public static ApplicationDraft deserialize(byte[] serializedDraft) {
+		try {
+			ObjectInputStream inputStream = new ObjectInputStream(new ByteArrayInputStream(serializedDraft));
+			try {
+				return (ApplicationDraft) inputStream.readObject();
+			} finally {
+				inputStream.close();
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Draft could not be deserialized", e);
+		} catch (ClassNotFoundException e) {
+			throw new IllegalStateException("Draft could not be deserialized", e);
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package ch.itraum.recruiter.session;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+//Keeps the drafts in this JVM, like the HttpSession did. Fine as long as there is only one node.
+//Drafts which weren't touched for the given time are dropped, the same way a session times out.
+public class InMemoryWizardStateStore implements WizardStateStore {
+
+	//Expired drafts are looked for at most this often
+	private static final long PURGE_INTERVAL_MILLIS = 60000;
+
+	private final ConcurrentMap<String, StoredDraft> drafts = new ConcurrentHashMap<String, StoredDraft>();
+
+	private final long expireAfterMillis;
+
+	private volatile long lastPurge = System.currentTimeMillis();
+
+	public InMemoryWizardStateStore(long expireAfterMillis) {
+		this.expireAfterMillis = expireAfterMillis;
+	}
+
+	@Override
+	public ApplicationDraft load(String token, long revision) {
+		StoredDraft entry = drafts.get(token);
+		if (entry == null || entry.isExpired(System.currentTimeMillis())) {
+			return null;
+		}
+		entry.touchedAt = System.currentTimeMillis();
+		return entry.draft;
+	}
+
+	@Override
+	public void save(String token, ApplicationDraft draft) {
+		drafts.put(token, new StoredDraft(draft));
+		purgeExpiredFromTimeToTime();
+	}
+
+	@Override
+	public void remove(String token) {
+		drafts.remove(token);
+	}
+
+	public int size() {
+		return drafts.size();
+	}
+
+	private void purgeExpiredFromTimeToTime() {
+		long now = System.currentTimeMillis();
+		if (now - lastPurge < PURGE_INTERVAL_MILLIS) {
+			return;
+		}
+		lastPurge = now;
+		Iterator<StoredDraft> iterator = drafts.values().iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next().isExpired(now)) {
+				iterator.remove();
+			}
+		}
+	}
+
+	private class StoredDraft {
+
+		private final ApplicationDraft draft;
+
+		private volatile long touchedAt = System.currentTimeMillis();
+
+		public StoredDraft(ApplicationDraft draft) {
+			this.draft = draft;
+		}
+
+		public boolean isExpired(long now) {
+			return now - touchedAt > expireAfterMillis;
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package ch.itraum.recruiter.session;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+//Keeps the drafts in the database, where every node of the application finds them.
+//A draft is stored serialized in one row per token of the table WIZARD_STATE (see db/migration), the whole draft is written at once.
+//Drafts which weren't saved for the given time are ignored and deleted from time to time.
+public class JdbcWizardStateStore implements WizardStateStore {
+
+	//Expired drafts are deleted at most this often
+	private static final long PURGE_INTERVAL_MILLIS = 60000;
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final long expireAfterMillis;
+
+	private volatile long lastPurge = System.currentTimeMillis();
+
+	public JdbcWizardStateStore(DataSource dataSource, long expireAfterMillis) {
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+		this.expireAfterMillis = expireAfterMillis;
+	}
+
+	@Override
+	public ApplicationDraft load(String token, long revision) {
+		List<ApplicationDraft> drafts = jdbcTemplate.query("SELECT DRAFT FROM WIZARD_STATE WHERE TOKEN = ? AND SAVED_AT > ?",
+				new RowMapper<ApplicationDraft>() {
+					@Override
+					public ApplicationDraft mapRow(ResultSet resultSet, int rowNum) throws SQLException {
+						return ApplicationDraft.deserialize(resultSet.getBytes(1));
+					}
+				}, token, expiredBefore(System.currentTimeMillis()));
+		return drafts.isEmpty() ? null : drafts.get(0);
+	}
+
+	@Override
+	public void save(String token, ApplicationDraft draft) {
+		long now = System.currentTimeMillis();
+		jdbcTemplate.update("MERGE INTO WIZARD_STATE (TOKEN, REVISION, DRAFT, SAVED_AT) KEY (TOKEN) VALUES (?, ?, ?, ?)",
+				token, draft.getRevision(), draft.serialize(), new Timestamp(now));
+		if (now - lastPurge > PURGE_INTERVAL_MILLIS) {
+			lastPurge = now;
+			jdbcTemplate.update("DELETE FROM WIZARD_STATE WHERE SAVED_AT <= ?", expiredBefore(now));
+		}
+	}
+
+	@Override
+	public void remove(String token) {
+		jdbcTemplate.update("DELETE FROM WIZARD_STATE WHERE TOKEN = ?", token);
+	}
+
+	private Timestamp expiredBefore(long now) {
+		return new Timestamp(now - expireAfterMillis);
+	}
+}
@@ -0,0 +1,211 @@
+package ch.itraum.recruiter.session;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ch.itraum.recruiter.metrics.Counter;
+import ch.itraum.recruiter.metrics.Gauge;
+import ch.itraum.recruiter.metrics.MetricsRegistry;
+
+//Keeps the most recently used drafts of a shared store in this JVM, so reading a draft doesn't leave the process.
+//Writes are coalesced: a saved draft is written to the shared store writeBehindMillis later, and whatever the
+//applicant saved in the meantime goes with that one write. With writeBehindMillis 0 every save is written through.
+//A cached draft is only used if its revision is at least the one the applicant saw last:
+//if the previous request went to another node, the draft is read from the shared store again. If the other node
+//hasn't written it yet, the read waits for it, at most twice writeBehindMillis.
+//The drafts are cached serialized, so a request changing its draft never changes the cached one.
+//Drafts not written yet are lost if the JVM dies, shutdown() writes them when the application stops.
+public class NearCacheWizardStateStore implements WizardStateStore {
+
+	private static final long STALE_POLL_MILLIS = 50;
+
+	private static final Logger logger = LoggerFactory.getLogger(NearCacheWizardStateStore.class);
+
+	private final WizardStateStore sharedStore;
+
+	private final long expireAfterMillis;
+
+	private final long writeBehindMillis;
+
+	private final Map<String, CachedDraft> cachedDrafts;
+
+	//Saved drafts not written to the shared store yet, a write is scheduled for each of them
+	private final ConcurrentMap<String, CachedDraft> unwrittenDrafts = new ConcurrentHashMap<String, CachedDraft>();
+
+	//One thread, so the writes of a token are done in the order of the saves
+	private final ScheduledExecutorService writer;
+
+	//Keeps a write and a remove of the shared store from overtaking each other
+	private final Object writeLock = new Object();
+
+	private final Counter hits;
+
+	private final Counter misses;
+
+	private final Counter writes;
+
+	private final Counter coalescedWrites;
+
+	private final Counter staleReads;
+
+	public NearCacheWizardStateStore(WizardStateStore sharedStore, final int maxEntries, long expireAfterMillis, long writeBehindMillis,
+			MetricsRegistry metricsRegistry) {
+		this.sharedStore = sharedStore;
+		this.expireAfterMillis = expireAfterMillis;
+		this.writeBehindMillis = writeBehindMillis;
+		this.cachedDrafts = Collections.synchronizedMap(new LinkedHashMap<String, CachedDraft>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedDraft> eldest) {
+				return size() > maxEntries;
+			}
+		});
+		writer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "wizard-writer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		hits = metricsRegistry.counter("wizard.nearCache.hits");
+		misses = metricsRegistry.counter("wizard.nearCache.misses");
+		writes = metricsRegistry.counter("wizard.nearCache.writes");
+		coalescedWrites = metricsRegistry.counter("wizard.nearCache.writes.coalesced");
+		staleReads = metricsRegistry.counter("wizard.nearCache.stale");
+		metricsRegistry.register("wizard.nearCache.writes.pending", new Gauge() {
+			@Override
+			public long getValue() {
+				return unwrittenDrafts.size();
+			}
+		});
+	}
+
+	@Override
+	public ApplicationDraft load(String token, long revision) {
+		long now = System.currentTimeMillis();
+		//Not written yet, so it can't be older than what the shared store has
+		CachedDraft cached = unwrittenDrafts.get(token);
+		if (cached == null) {
+			cached = cachedDrafts.get(token);
+		}
+		//An entry unused for longer than a draft lives may have expired in the shared store
+		if (cached != null && cached.revision >= revision && now - cached.usedAt <= expireAfterMillis) {
+			cached.usedAt = now;
+			hits.increment();
+			return ApplicationDraft.deserialize(cached.serializedDraft);
+		}
+		misses.increment();
+		ApplicationDraft draft = loadShared(token, revision);
+		if (draft != null) {
+			cachedDrafts.put(token, new CachedDraft(draft));
+		} else {
+			cachedDrafts.remove(token);
+		}
+		return draft;
+	}
+
+	@Override
+	public void save(String token, ApplicationDraft draft) {
+		if (writeBehindMillis <= 0) {
+			sharedStore.save(token, draft);
+			writes.increment();
+			cachedDrafts.put(token, new CachedDraft(draft));
+			return;
+		}
+		CachedDraft cached = new CachedDraft(draft);
+		cachedDrafts.put(token, cached);
+		if (unwrittenDrafts.put(token, cached) != null) {
+			//The write scheduled for the previous save takes this one along
+			coalescedWrites.increment();
+			return;
+		}
+		final String savedToken = token;
+		writer.schedule(new Runnable() {
+			@Override
+			public void run() {
+				writeUnwritten(savedToken);
+			}
+		}, writeBehindMillis, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void remove(String token) {
+		synchronized (writeLock) {
+			unwrittenDrafts.remove(token);
+			cachedDrafts.remove(token);
+			sharedStore.remove(token);
+		}
+	}
+
+	//Called by Spring when the application context is closed, writes the drafts not written yet
+	public void shutdown() {
+		writer.shutdownNow();
+		for (String token : unwrittenDrafts.keySet()) {
+			writeUnwritten(token);
+		}
+	}
+
+	//Waits for another node which saved a newer revision to write it. A draft which expired
+	//is only known to be gone once that wait is over.
+	private ApplicationDraft loadShared(String token, long revision) {
+		ApplicationDraft draft = sharedStore.load(token, revision);
+		long waitUntil = System.currentTimeMillis() + 2 * writeBehindMillis;
+		while ((draft == null || draft.getRevision() < revision) && System.currentTimeMillis() < waitUntil) {
+			try {
+				Thread.sleep(STALE_POLL_MILLIS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+			draft = sharedStore.load(token, revision);
+		}
+		if (draft != null && draft.getRevision() < revision) {
+			//The node which saved it is gone or slow, the older draft is better than none
+			staleReads.increment();
+			logger.warn("Revision " + revision + " of a wizard draft wasn't written, continuing with " + draft.getRevision());
+		}
+		return draft;
+	}
+
+	private void writeUnwritten(String token) {
+		try {
+			synchronized (writeLock) {
+				CachedDraft cached = unwrittenDrafts.remove(token);
+				if (cached != null) {
+					sharedStore.save(token, ApplicationDraft.deserialize(cached.serializedDraft));
+					writes.increment();
+				}
+			}
+		} catch (RuntimeException e) {
+			//The applicant's next save schedules the next write
+			logger.warn("A wizard draft could not be written to the shared store", e);
+		}
+	}
+
+	private static class CachedDraft {
+
+		private final long revision;
+
+		private final byte[] serializedDraft;
+
+		private volatile long usedAt = System.currentTimeMillis();
+
+		public CachedDraft(ApplicationDraft draft) {
+			this.revision = draft.getRevision();
+			this.serializedDraft = draft.serialize();
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package ch.itraum.recruiter.session;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ch.itraum.recruiter.metrics.Counter;
+import ch.itraum.recruiter.metrics.Gauge;
+import ch.itraum.recruiter.metrics.MetricsRegistry;
+
+//Estimates how much memory the state kept for one applicant takes, before it is saved.
+//The estimate is the size of the serialized value: it is what has to be written to a shared store,
+//and for a value made of strings and numbers it is close to what it takes on the heap.
+//Values larger than the maximum are refused, so the state of a single applicant can't grow without bounds.
+public class SessionSizeEstimator {
+
+	private final int maxBytes;
+
+	private final Counter writes;
+
+	private final Counter writtenBytes;
+
+	private final Counter rejected;
+
+	private final AtomicLong largestBytes = new AtomicLong();
+
+	public SessionSizeEstimator(int maxBytes, MetricsRegistry metricsRegistry) {
+		this.maxBytes = maxBytes;
+		writes = metricsRegistry.counter("session.writes");
+		writtenBytes = metricsRegistry.counter("session.bytes");
+		rejected = metricsRegistry.counter("session.rejected");
+		metricsRegistry.register("session.bytes.max", new Gauge() {
+			@Override
+			public long getValue() {
+				return largestBytes.get();
+			}
+		});
+	}
+
+	//Throws a SessionStateTooLargeException if the value is too large to be saved
+	public void check(String name, Serializable value) {
+		int bytes = estimate(value);
+		if (bytes > maxBytes) {
+			rejected.increment();
+			throw new SessionStateTooLargeException(name, bytes, maxBytes);
+		}
+		writes.increment();
+		writtenBytes.add(bytes);
+		long largest = largestBytes.get();
+		while (bytes > largest && !largestBytes.compareAndSet(largest, bytes)) {
+			largest = largestBytes.get();
+		}
+	}
+
+	public int estimate(Serializable value) {
+		CountingOutputStream counter = new CountingOutputStream();
+		try {
+			ObjectOutputStream outputStream = new ObjectOutputStream(counter);
+			outputStream.writeObject(value);
+			outputStream.close();
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Session attribute can't be serialized: " + value.getClass().getName(), e);
+		}
+		return counter.count;
+	}
+
+	//Only counts the bytes, nothing is kept
+	private static class CountingOutputStream extends OutputStream {
+
+		private int count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+}
@@ -0,0 +1,14 @@
+package ch.itraum.recruiter.session;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+//Thrown if the state a request wants to keep in the session exceeds the configured maximum
+@SuppressWarnings("serial")
+@ResponseStatus(HttpStatus.REQUEST_ENTITY_TOO_LARGE)
+public class SessionStateTooLargeException extends RuntimeException {
+
+	public SessionStateTooLargeException(String name, int bytes, int maxBytes) {
+		super("Session state " + name + " would take " + bytes + " bytes, at most " + maxBytes + " are allowed");
+	}
+}
@@ -0,0 +1,81 @@
+package ch.itraum.recruiter.session;
+
+//The draft of the applicant of the current request. It is read from the WizardStateStore when it is first needed,
+//and written back once when the request was handled, no matter how often the controller saved it in between.
+//The WizardStateInterceptor creates it for every request and writes it back.
+public class WizardState {
+
+	public static final String REQUEST_ATTRIBUTE = WizardState.class.getName();
+
+	private static final String DRAFT_NAME = "draft";
+
+	private final WizardStateStore store;
+
+	private final SessionSizeEstimator sessionSizeEstimator;
+
+	private final String token;
+
+	//The revision the applicant saw last, 0 for a new applicant
+	private final long knownRevision;
+
+	private ApplicationDraft draft;
+
+	private boolean changed;
+
+	private boolean removed;
+
+	public WizardState(WizardStateStore store, SessionSizeEstimator sessionSizeEstimator, String token, long knownRevision) {
+		this.store = store;
+		this.sessionSizeEstimator = sessionSizeEstimator;
+		this.token = token;
+		this.knownRevision = knownRevision;
+	}
+
+	public String getToken() {
+		return token;
+	}
+
+	//The saved draft, or a new, empty one if there is none
+	public ApplicationDraft getDraft() {
+		if (draft == null) {
+			draft = removed || knownRevision == 0 ? null : store.load(token, knownRevision);
+			if (draft == null) {
+				draft = new ApplicationDraft();
+			}
+		}
+		return draft;
+	}
+
+	//Throws a SessionStateTooLargeException right away if the draft is too large to be kept
+	public void save(ApplicationDraft draft) {
+		sessionSizeEstimator.check(DRAFT_NAME, draft);
+		this.draft = draft;
+		changed = true;
+		removed = false;
+	}
+
+	public void remove() {
+		draft = null;
+		changed = false;
+		removed = true;
+	}
+
+	public boolean isRemoved() {
+		return removed;
+	}
+
+	//Writes the changes of this request to the store. Returns the new revision, or 0 if nothing was written.
+	public long flush() {
+		if (removed) {
+			store.remove(token);
+			return 0;
+		}
+		if (!changed) {
+			return 0;
+		}
+		draft.setRevision(Math.max(knownRevision, draft.getRevision()) + 1);
+		store.save(token, draft);
+		changed = false;
+		return draft.getRevision();
+	}
+}
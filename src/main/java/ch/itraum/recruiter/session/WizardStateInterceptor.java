@@ -0,0 +1,97 @@
+package ch.itraum.recruiter.session;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+//Finds the applicant of a request by a token in a cookie instead of the HttpSession, so any node can handle the request.
+//The cookie also carries the revision of the draft the applicant saw last, which lets the nodes tell whether
+//a draft they have cached is still current. The cookie is rewritten whenever the draft was saved.
+public class WizardStateInterceptor extends HandlerInterceptorAdapter {
+
+	public static final String COOKIE_NAME = "recruiterWizard";
+
+	//The value is "token.revision", the token is 32 hex digits
+	public static final Pattern COOKIE_VALUE_PATTERN = Pattern.compile("([0-9a-f]{32})\\.(\\d{1,18})");
+
+	private final WizardStateStore store;
+
+	private final SessionSizeEstimator sessionSizeEstimator;
+
+	private final SecureRandom random = new SecureRandom();
+
+	public WizardStateInterceptor(WizardStateStore store, SessionSizeEstimator sessionSizeEstimator) {
+		this.store = store;
+		this.sessionSizeEstimator = sessionSizeEstimator;
+	}
+
+	@Override
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+		String token = null;
+		long revision = 0;
+		String cookieValue = findCookie(request);
+		if (cookieValue != null) {
+			Matcher matcher = COOKIE_VALUE_PATTERN.matcher(cookieValue);
+			if (matcher.matches()) {
+				token = matcher.group(1);
+				revision = Long.parseLong(matcher.group(2));
+			}
+		}
+		if (token == null) {
+			token = newToken();
+		}
+		request.setAttribute(WizardState.REQUEST_ATTRIBUTE, new WizardState(store, sessionSizeEstimator, token, revision));
+		return true;
+	}
+
+	//Runs before the view is rendered, so the cookie still gets into the response. Redirects are views as well.
+	@Override
+	public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler, ModelAndView modelAndView) {
+		WizardState wizardState = (WizardState) request.getAttribute(WizardState.REQUEST_ATTRIBUTE);
+		if (wizardState == null) {
+			return;
+		}
+		long revision = wizardState.flush();
+		if (revision > 0) {
+			addCookie(request, response, wizardState.getToken() + "." + revision, -1);
+		} else if (wizardState.isRemoved()) {
+			addCookie(request, response, "", 0);
+		}
+	}
+
+	private String findCookie(HttpServletRequest request) {
+		Cookie[] cookies = request.getCookies();
+		if (cookies != null) {
+			for (Cookie cookie : cookies) {
+				if (COOKIE_NAME.equals(cookie.getName())) {
+					return cookie.getValue();
+				}
+			}
+		}
+		return null;
+	}
+
+	private void addCookie(HttpServletRequest request, HttpServletResponse response, String value, int maxAge) {
+		Cookie cookie = new Cookie(COOKIE_NAME, value);
+		cookie.setPath(request.getContextPath().isEmpty() ? "/" : request.getContextPath());
+		cookie.setHttpOnly(true);
+		cookie.setSecure(request.isSecure());
+		cookie.setMaxAge(maxAge);
+		response.addCookie(cookie);
+	}
+
+	//128 random bits as 32 hex digits
+	private String newToken() {
+		byte[] bytes = new byte[16];
+		random.nextBytes(bytes);
+		return String.format("%032x", new BigInteger(1, bytes));
+	}
+}
@@ -0,0 +1,16 @@
+package ch.itraum.recruiter.session;
+
+//Keeps the drafts of the application wizard, each under the token of the applicant.
+//The wizard doesn't depend on the HttpSession of one JVM: with a shared store every node can serve every request.
+public interface WizardStateStore {
+
+	//Returns the draft saved under the token, null if there is none or it expired.
+	//The revision is the one the applicant saw last. A store that caches drafts only returns
+	//a cached one if it has at least this revision, older ones were replaced on another node.
+	ApplicationDraft load(String token, long revision);
+
+	//The draft must already carry its new revision
+	void save(String token, ApplicationDraft draft);
+
+	void remove(String token);
+}
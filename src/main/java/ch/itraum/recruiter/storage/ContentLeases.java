@@ -0,0 +1,64 @@
+package ch.itraum.recruiter.storage;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+//Work which keeps something derived from stored content, like rendering thumbnails of a document, holds a lease on it.
+//Once the content is deleted its leases are revoked: the work stops and throws away what it wrote after the deletion.
+//The leases have to be revoked before the listeners purging what was derived from the content run.
+public class ContentLeases implements ContentReleaseListener {
+
+	//Only the leases not ended yet, so the map doesn't grow with the content ever deleted
+	private final Map<String, Set<Lease>> leases = new HashMap<String, Set<Lease>>();
+
+	public synchronized Lease take(String contentHash) {
+		Set<Lease> leasesOfContent = leases.get(contentHash);
+		if (leasesOfContent == null) {
+			leasesOfContent = new HashSet<Lease>();
+			leases.put(contentHash, leasesOfContent);
+		}
+		Lease lease = new Lease(contentHash);
+		leasesOfContent.add(lease);
+		return lease;
+	}
+
+	@Override
+	public synchronized void contentDeleted(String contentHash) {
+		Set<Lease> revoked = leases.remove(contentHash);
+		if (revoked != null) {
+			for (Lease lease : revoked) {
+				lease.revoked = true;
+			}
+		}
+	}
+
+	private synchronized void end(Lease lease) {
+		Set<Lease> leasesOfContent = leases.get(lease.contentHash);
+		if (leasesOfContent != null && leasesOfContent.remove(lease) && leasesOfContent.isEmpty()) {
+			leases.remove(lease.contentHash);
+		}
+	}
+
+	public class Lease {
+
+		private final String contentHash;
+
+		private volatile boolean revoked;
+
+		private Lease(String contentHash) {
+			this.contentHash = contentHash;
+		}
+
+		//True once the content was deleted, anything written for it afterwards has to be deleted again
+		public boolean isRevoked() {
+			return revoked;
+		}
+
+		//Has to be called when the work is done, revoked or not
+		public void end() {
+			ContentLeases.this.end(this);
+		}
+	}
+}
@@ -0,0 +1,9 @@
+package ch.itraum.recruiter.storage;
+
+//Told by the DocumentContentStore when content is deleted because its last reference was released,
+//so whatever was derived from the content can be deleted as well
+public interface ContentReleaseListener {
+
+	//Called while no other thread can store the same content
+	void contentDeleted(String hash);
+}
@@ -0,0 +1,39 @@
+package ch.itraum.recruiter.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+//Keeps the binary content of documents outside of the DB.
+//Content is immutable and addressed by the SHA-256 hash of its bytes,
+//so the DB only has to remember the hash. Storing the same content twice
+//returns the same hash and adds a reference instead of a second copy.
+public interface DocumentContentStore {
+
+	//Streams the content into the store and adds a reference to it.
+	//Every call has to be balanced by a call to release(hash) once the content is not needed anymore.
+	StoredContent store(InputStream content) throws IOException;
+
+	//Drops one reference. The content is deleted as soon as nobody references it anymore,
+	//and the ContentReleaseListeners are told.
+	void release(String hash) throws IOException;
+
+	void addReleaseListener(ContentReleaseListener listener);
+
+	boolean exists(String hash);
+
+	long size(String hash) throws IOException;
+
+	InputStream open(String hash) throws IOException;
+
+	//The file holding the content, for readers which need random access to it. It must not be modified.
+	File file(String hash) throws IOException;
+
+	//Copies the content to the target channel, letting the OS do the copy where it can.
+	long transferTo(String hash, WritableByteChannel target) throws IOException;
+
+	//Returns a read only view on the content without copying it to the heap
+	ByteBuffer map(String hash) throws IOException;
+}
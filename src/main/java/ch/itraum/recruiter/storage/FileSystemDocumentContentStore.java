@@ -0,0 +1,227 @@
+package ch.itraum.recruiter.storage;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+//Default DocumentContentStore, which keeps every content as an immutable file named by its SHA-256 hash.
+//The files are spread over two levels of sub directories (ab/cd/abcd...) to keep the directories small.
+//Next to every content file there is a small ".refs" file holding the number of references to it.
+public class FileSystemDocumentContentStore implements DocumentContentStore {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final int LOCK_STRIPES = 64;
+
+	private static final Pattern HASH_PATTERN = Pattern.compile("[0-9a-f]{64}");
+
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	private Logger logger = LoggerFactory.getLogger(FileSystemDocumentContentStore.class);
+
+	private final Path baseDirectory;
+
+	private final Path incomingDirectory;
+
+	//Storing and releasing the same hash must not interleave, otherwise a reference count could get lost
+	private final Object[] locks = new Object[LOCK_STRIPES];
+
+	private final List<ContentReleaseListener> releaseListeners = new CopyOnWriteArrayList<ContentReleaseListener>();
+
+	public FileSystemDocumentContentStore(File baseDirectory) throws IOException {
+		this.baseDirectory = baseDirectory.toPath();
+		this.incomingDirectory = this.baseDirectory.resolve("incoming");
+		Files.createDirectories(incomingDirectory);
+
+		for (int i = 0; i < LOCK_STRIPES; i++) {
+			locks[i] = new Object();
+		}
+		logger.info("Storing document content in " + this.baseDirectory.toAbsolutePath());
+	}
+
+	@Override
+	public StoredContent store(InputStream content) throws IOException {
+		//The content is written to a temporary file first and hashed on the way,
+		//so we never need more memory than one buffer, whatever the size of the content.
+		Path incoming = Files.createTempFile(incomingDirectory, "content-", ".tmp");
+		try {
+			MessageDigest digest = newDigest();
+			byte[] buffer = new byte[BUFFER_SIZE];
+			long size = 0;
+
+			OutputStream out = Files.newOutputStream(incoming);
+			try {
+				int read;
+				while ((read = content.read(buffer)) != -1) {
+					digest.update(buffer, 0, read);
+					out.write(buffer, 0, read);
+					size += read;
+				}
+			} finally {
+				out.close();
+			}
+
+			String hash = toHex(digest.digest());
+			synchronized (lockFor(hash)) {
+				Path target = contentPath(hash);
+				if (!Files.exists(target)) {
+					Files.createDirectories(target.getParent());
+					Files.move(incoming, target, StandardCopyOption.ATOMIC_MOVE);
+				}
+				writeReferenceCount(hash, readReferenceCount(hash) + 1);
+			}
+			return new StoredContent(hash, size);
+		} finally {
+			Files.deleteIfExists(incoming);
+		}
+	}
+
+	@Override
+	public void release(String hash) throws IOException {
+		synchronized (lockFor(hash)) {
+			int references = readReferenceCount(hash) - 1;
+			if (references > 0) {
+				writeReferenceCount(hash, references);
+			} else {
+				Files.deleteIfExists(contentPath(hash));
+				Files.deleteIfExists(referencesPath(hash));
+				for (ContentReleaseListener listener : releaseListeners) {
+					try {
+						listener.contentDeleted(hash);
+					} catch (RuntimeException e) {
+						logger.warn("Release listener " + listener + " failed for " + hash, e);
+					}
+				}
+			}
+		}
+	}
+
+	@Override
+	public void addReleaseListener(ContentReleaseListener listener) {
+		releaseListeners.add(listener);
+	}
+
+	@Override
+	public boolean exists(String hash) {
+		return Files.exists(contentPath(hash));
+	}
+
+	@Override
+	public long size(String hash) throws IOException {
+		return Files.size(contentPath(hash));
+	}
+
+	@Override
+	public InputStream open(String hash) throws IOException {
+		return Files.newInputStream(contentPath(hash));
+	}
+
+	@Override
+	public File file(String hash) throws IOException {
+		Path path = contentPath(hash);
+		if (!Files.exists(path)) {
+			throw new FileNotFoundException("No content with hash " + hash);
+		}
+		return path.toFile();
+	}
+
+	@Override
+	public long transferTo(String hash, WritableByteChannel target) throws IOException {
+		FileChannel channel = FileChannel.open(contentPath(hash), StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			long position = 0;
+			//transferTo may copy less than requested, so we have to loop
+			while (position < size) {
+				position += channel.transferTo(position, size - position, target);
+			}
+			return size;
+		} finally {
+			channel.close();
+		}
+	}
+
+	@Override
+	public ByteBuffer map(String hash) throws IOException {
+		FileChannel channel = FileChannel.open(contentPath(hash), StandardOpenOption.READ);
+		try {
+			//The mapping stays valid after the channel is closed
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			channel.close();
+		}
+	}
+
+	private Path contentPath(String hash) {
+		if (hash == null || !HASH_PATTERN.matcher(hash).matches()) {
+			throw new IllegalArgumentException("Not a valid content hash: " + hash);
+		}
+		return baseDirectory.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash);
+	}
+
+	private Path referencesPath(String hash) {
+		Path contentPath = contentPath(hash);
+		return contentPath.resolveSibling(contentPath.getFileName() + ".refs");
+	}
+
+	//Content without a ".refs" file is not referenced by anybody
+	private int readReferenceCount(String hash) throws IOException {
+		Path referencesPath = referencesPath(hash);
+		if (!Files.exists(referencesPath)) {
+			return 0;
+		}
+		return Integer.parseInt(new String(Files.readAllBytes(referencesPath), StandardCharsets.US_ASCII).trim());
+	}
+
+	//Written to a temporary file and moved into place so a crash never leaves a half written count
+	private void writeReferenceCount(String hash, int references) throws IOException {
+		Path referencesPath = referencesPath(hash);
+		Path temporary = Files.createTempFile(incomingDirectory, "refs-", ".tmp");
+		try {
+			Files.write(temporary, String.valueOf(references).getBytes(StandardCharsets.US_ASCII));
+			Files.move(temporary, referencesPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	private Object lockFor(String hash) {
+		return locks[(hash.hashCode() & Integer.MAX_VALUE) % LOCK_STRIPES];
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			//Every Java platform has to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		char[] hex = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			hex[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0x0f];
+			hex[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0x0f];
+		}
+		return new String(hex);
+	}
+}
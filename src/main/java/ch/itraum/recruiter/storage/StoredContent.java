@@ -0,0 +1,22 @@
+package ch.itraum.recruiter.storage;
+
+//Result of putting content into a DocumentContentStore
+public class StoredContent {
+
+	private final String hash;
+
+	private final long size;
+
+	public StoredContent(String hash, long size) {
+		this.hash = hash;
+		this.size = size;
+	}
+
+	public String getHash() {
+		return hash;
+	}
+
+	public long getSize() {
+		return size;
+	}
+}
@@ -0,0 +1,103 @@
+package ch.itraum.recruiter.thumbnail;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+//Helpers shared by the PdfRenderer implementations and the code delivering their images
+public final class Images {
+
+	private Images() {
+	}
+
+	//Scales the image down to the given width, keeping the aspect ratio. Smaller images and a width of 0 are left alone.
+	public static BufferedImage scaleToWidth(BufferedImage image, int width) {
+		if (width <= 0 || width >= image.getWidth()) {
+			return image;
+		}
+		int height = Math.max(1, image.getHeight() * width / image.getWidth());
+		BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D graphics = scaled.createGraphics();
+		graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		graphics.drawImage(image, 0, 0, width, height, null);
+		graphics.dispose();
+		return scaled;
+	}
+
+	//The size of a contact sheet of the given pages, see contactSheet
+	public static Dimension contactSheetSize(List<byte[]> pngs, int columns, int gap) throws IOException {
+		Dimension cell = cellSize(pngs);
+		columns = Math.max(1, Math.min(columns, pngs.size()));
+		int rows = Math.max(1, (pngs.size() + columns - 1) / columns);
+		return new Dimension(gap + columns * (cell.width + gap), gap + rows * (cell.height + gap));
+	}
+
+	//Lays the pages out in rows of the given number of columns, each page in a cell as large as the largest page.
+	//Only one page is decoded at a time, so the sheet is the only large image.
+	public static BufferedImage contactSheet(List<byte[]> pngs, int columns, int gap, Color background) throws IOException {
+		Dimension cell = cellSize(pngs);
+		Dimension size = contactSheetSize(pngs, columns, gap);
+		columns = Math.max(1, Math.min(columns, pngs.size()));
+		BufferedImage sheet = new BufferedImage(size.width, size.height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D graphics = sheet.createGraphics();
+		try {
+			graphics.setColor(background);
+			graphics.fillRect(0, 0, sheet.getWidth(), sheet.getHeight());
+			for (int i = 0; i < pngs.size(); i++) {
+				int x = gap + (i % columns) * (cell.width + gap);
+				int y = gap + (i / columns) * (cell.height + gap);
+				graphics.drawImage(ImageIO.read(new ByteArrayInputStream(pngs.get(i))), x, y, null);
+			}
+		} finally {
+			graphics.dispose();
+		}
+		return sheet;
+	}
+
+	//The size of a PNG, read from its header without decoding the image
+	public static Dimension pngSize(byte[] png) throws IOException {
+		ImageInputStream inputStream = ImageIO.createImageInputStream(new ByteArrayInputStream(png));
+		try {
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(inputStream);
+			if (!readers.hasNext()) {
+				throw new IOException("Not an image");
+			}
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(inputStream);
+				return new Dimension(reader.getWidth(0), reader.getHeight(0));
+			} finally {
+				reader.dispose();
+			}
+		} finally {
+			inputStream.close();
+		}
+	}
+
+	private static Dimension cellSize(List<byte[]> pngs) throws IOException {
+		Dimension cell = new Dimension(1, 1);
+		for (byte[] png : pngs) {
+			Dimension size = pngSize(png);
+			cell.width = Math.max(cell.width, size.width);
+			cell.height = Math.max(cell.height, size.height);
+		}
+		return cell;
+	}
+
+	public static byte[] toPng(BufferedImage image) throws IOException {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		ImageIO.write(image, "png", outputStream);
+		return outputStream.toByteArray();
+	}
+}
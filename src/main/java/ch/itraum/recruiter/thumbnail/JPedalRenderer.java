@@ -0,0 +1,127 @@
+package ch.itraum.recruiter.thumbnail;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.jpedal.PdfDecoder;
+import org.jpedal.exception.PdfException;
+import org.jpedal.fonts.FontMappings;
+
+//Renders with JPedal. A PdfDecoder is expensive to create and not thread safe,
+//so the decoders are kept in a pool and every opened document borrows one until it is closed.
+//JPedal reads the document from its file as needed. It always renders pages at their natural size,
+//so pages bigger than the RasterBudget allows are refused rather than scaled down.
+public class JPedalRenderer implements PdfRenderer {
+
+	public static final String ENGINE = "jpedal";
+
+	private final BlockingQueue<PdfDecoder> idleDecoders;
+
+	//Limits the number of decoders in use, idle decoders are reused before new ones are created
+	private final Semaphore availableDecoders;
+
+	private final long acquireTimeoutMillis;
+
+	private final RasterBudget rasterBudget;
+
+	public JPedalRenderer(int poolSize, long acquireTimeoutMillis, RasterBudget rasterBudget) {
+		this.idleDecoders = new ArrayBlockingQueue<PdfDecoder>(poolSize);
+		this.availableDecoders = new Semaphore(poolSize, true);
+		this.acquireTimeoutMillis = acquireTimeoutMillis;
+		this.rasterBudget = rasterBudget;
+
+		//The font replacements are global to JPedal, so they only have to be set up once
+		FontMappings.setFontReplacements();
+	}
+
+	@Override
+	public String getEngine() {
+		return ENGINE;
+	}
+
+	@Override
+	public RenderablePdf open(File content) throws IOException {
+		PdfDecoder decoder = borrowDecoder();
+		try {
+			decoder.openPdfFile(content.getAbsolutePath());
+			return new JPedalPdf(decoder);
+		} catch (PdfException e) {
+			returnDecoder(decoder);
+			throw new IOException("JPedal could not open the document", e);
+		} catch (RuntimeException e) {
+			returnDecoder(decoder);
+			throw e;
+		}
+	}
+
+	private PdfDecoder borrowDecoder() throws IOException {
+		try {
+			if (!availableDecoders.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+				throw new IOException("No JPedal decoder became available within " + acquireTimeoutMillis + " ms");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for a JPedal decoder", e);
+		}
+		PdfDecoder decoder = idleDecoders.poll();
+		return decoder != null ? decoder : new PdfDecoder(true);
+	}
+
+	private void returnDecoder(PdfDecoder decoder) {
+		try {
+			decoder.closePdfFile();
+			idleDecoders.offer(decoder);
+		} finally {
+			availableDecoders.release();
+		}
+	}
+
+	private class JPedalPdf implements RenderablePdf {
+
+		private PdfDecoder decoder;
+
+		public JPedalPdf(PdfDecoder decoder) {
+			this.decoder = decoder;
+		}
+
+		@Override
+		public int getPageCount() {
+			return decoder.getPageCount();
+		}
+
+		@Override
+		public BufferedImage renderPage(int page, int width) throws IOException {
+			//JPedal counts the pages from 1
+			int pageWidth = decoder.getPdfPageData().getCropBoxWidth(page + 1);
+			int pageHeight = decoder.getPdfPageData().getCropBoxHeight(page + 1);
+			rasterBudget.checkPixels(pageWidth, pageHeight);
+			RasterBudget.Reservation reservation = rasterBudget.reserve((long) pageWidth * pageHeight);
+			try {
+				return Images.scaleToWidth(decoder.getPageAsImage(page + 1), width);
+			} catch (PdfException e) {
+				throw new IOException("JPedal could not render page " + page, e);
+			} finally {
+				reservation.release();
+			}
+		}
+
+		//The LGPL version of JPedal has no usable text extraction
+		@Override
+		public String extractText() {
+			return null;
+		}
+
+		@Override
+		public void close() {
+			if (decoder != null) {
+				returnDecoder(decoder);
+				decoder = null;
+			}
+		}
+	}
+}
@@ -0,0 +1,11 @@
+package ch.itraum.recruiter.thumbnail;
+
+//Receives the pages rendered by the PreviewRenderer as soon as they're done, on the threads of its pool
+public interface PageListener {
+
+	//Returns false if no more pages are wanted, the pages not started yet are skipped then
+	boolean pageRendered(int page, byte[] png);
+
+	//Called once after the last page, failure is the first exception of a page which couldn't be rendered, or null
+	void finished(Exception failure);
+}
@@ -0,0 +1,143 @@
+package ch.itraum.recruiter.thumbnail;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.pdfbox.io.RandomAccessFile;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.util.PDFTextStripper;
+
+//Renders with Apache PDFBox. Every opened document gets its own PDDocument, so nothing is shared between threads.
+//Documents are parsed with the non-sequential parser, which reads objects from the file when they're needed,
+//and the decoded streams are kept in a scratch file instead of on the heap.
+public class PdfBoxRenderer implements PdfRenderer {
+
+	public static final String ENGINE = "pdfbox";
+
+	//Resolution PDFBox uses if nothing else is requested
+	private static final int DEFAULT_RESOLUTION = 96;
+
+	private static final int POINTS_PER_INCH = 72;
+
+	private static final String SCRATCH_PREFIX = "pdfbox-";
+
+	private static final String SCRATCH_SUFFIX = ".scratch";
+
+	private final File scratchDirectory;
+
+	private final RasterBudget rasterBudget;
+
+	public PdfBoxRenderer(File scratchDirectory, RasterBudget rasterBudget) throws IOException {
+		this.scratchDirectory = scratchDirectory;
+		this.rasterBudget = rasterBudget;
+		if (!scratchDirectory.isDirectory() && !scratchDirectory.mkdirs()) {
+			throw new IOException("Could not create the scratch directory " + scratchDirectory);
+		}
+		//Left over if the JVM didn't stop normally
+		File[] leftovers = scratchDirectory.listFiles();
+		if (leftovers != null) {
+			for (File leftover : leftovers) {
+				if (leftover.getName().startsWith(SCRATCH_PREFIX) && leftover.getName().endsWith(SCRATCH_SUFFIX)) {
+					leftover.delete();
+				}
+			}
+		}
+	}
+
+	@Override
+	public String getEngine() {
+		return ENGINE;
+	}
+
+	@Override
+	public RenderablePdf open(File content) throws IOException {
+		File scratchFile = File.createTempFile(SCRATCH_PREFIX, SCRATCH_SUFFIX, scratchDirectory);
+		RandomAccessFile scratch = null;
+		try {
+			scratch = new RandomAccessFile(scratchFile, "rw");
+			return new PdfBoxPdf(PDDocument.loadNonSeq(content, scratch), scratch, scratchFile);
+		} catch (IOException e) {
+			closeScratch(scratch, scratchFile);
+			throw e;
+		} catch (RuntimeException e) {
+			closeScratch(scratch, scratchFile);
+			throw e;
+		}
+	}
+
+	private static void closeScratch(RandomAccessFile scratch, File scratchFile) throws IOException {
+		try {
+			if (scratch != null) {
+				scratch.close();
+			}
+		} finally {
+			scratchFile.delete();
+		}
+	}
+
+	private class PdfBoxPdf implements RenderablePdf {
+
+		private final PDDocument pdf;
+
+		private final RandomAccessFile scratch;
+
+		private final File scratchFile;
+
+		private final List<?> pages;
+
+		public PdfBoxPdf(PDDocument pdf, RandomAccessFile scratch, File scratchFile) {
+			this.pdf = pdf;
+			this.scratch = scratch;
+			this.scratchFile = scratchFile;
+			this.pages = pdf.getDocumentCatalog().getAllPages();
+		}
+
+		@Override
+		public int getPageCount() {
+			return pages.size();
+		}
+
+		@Override
+		public BufferedImage renderPage(int page, int width) throws IOException {
+			PDPage pdfPage = (PDPage) pages.get(page);
+			PDRectangle mediaBox = pdfPage.findMediaBox();
+			if (mediaBox == null || mediaBox.getWidth() <= 0 || mediaBox.getHeight() <= 0) {
+				throw new IOException("Page " + page + " has no size");
+			}
+			//Render at the resolution closest to the requested width instead of scaling down a big image,
+			//but never bigger than the budget allows
+			int resolution = DEFAULT_RESOLUTION;
+			if (width > 0) {
+				resolution = Math.max(1, (int) Math.ceil(width * POINTS_PER_INCH / mediaBox.getWidth()));
+			}
+			resolution = rasterBudget.fitResolution(mediaBox.getWidth(), mediaBox.getHeight(), resolution);
+
+			long pixels = (long) Math.ceil(mediaBox.getWidth() * resolution / POINTS_PER_INCH)
+					* (long) Math.ceil(mediaBox.getHeight() * resolution / POINTS_PER_INCH);
+			RasterBudget.Reservation reservation = rasterBudget.reserve(pixels);
+			try {
+				return Images.scaleToWidth(pdfPage.convertToImage(BufferedImage.TYPE_INT_RGB, resolution), width);
+			} finally {
+				reservation.release();
+			}
+		}
+
+		@Override
+		public String extractText() throws IOException {
+			return new PDFTextStripper().getText(pdf);
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				pdf.close();
+			} finally {
+				closeScratch(scratch, scratchFile);
+			}
+		}
+	}
+}
@@ -0,0 +1,15 @@
+package ch.itraum.recruiter.thumbnail;
+
+import java.io.IOException;
+import java.io.File;
+
+//A PDF engine able to turn the pages of a document into images.
+//Implementations have to be thread safe, the documents they open don't.
+public interface PdfRenderer {
+
+	//Short name of the engine, used in configuration and in the keys of the ThumbnailCache
+	String getEngine();
+
+	//Opens the document from its file, which engines can read from as they need it instead of loading it into memory
+	RenderablePdf open(File content) throws IOException;
+}
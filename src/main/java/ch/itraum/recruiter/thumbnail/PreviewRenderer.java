@@ -0,0 +1,229 @@
+package ch.itraum.recruiter.thumbnail;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.springframework.beans.factory.annotation.Autowired;
+
+import ch.itraum.recruiter.metrics.Counter;
+import ch.itraum.recruiter.metrics.Gauge;
+import ch.itraum.recruiter.metrics.Histogram;
+import ch.itraum.recruiter.metrics.MetricsRegistry;
+import ch.itraum.recruiter.storage.ContentLeases;
+import ch.itraum.recruiter.storage.DocumentContentStore;
+
+//Renders many pages of a document at once for a preview, while somebody waits for them. Unlike the RenderPipeline
+//it renders the pages in parallel: the range of pages is split on a ForkJoinPool until a task has at most pagesPerTask pages.
+//Every task opens the document on its own, since a RenderablePdf must not be shared between threads, so pagesPerTask
+//weighs parsing the document again against rendering more pages at the same time.
+//Every page goes to the PageListener as soon as it is done. Pages in the ThumbnailCache aren't rendered again,
+//rendered pages are put there, so the thumbnail requests find them as well.
+//A preview holds a lease on the content, once the content is deleted it stops and keeps none of the pages.
+public class PreviewRenderer {
+
+	@Autowired
+	private DocumentContentStore documentContentStore;
+
+	@Autowired
+	private ThumbnailCache thumbnailCache;
+
+	@Autowired
+	private ContentLeases contentLeases;
+
+	private final Map<String, PdfRenderer> renderers = new HashMap<String, PdfRenderer>();
+
+	private final ForkJoinPool pool;
+
+	private final int pagesPerTask;
+
+	private final Counter previews;
+
+	private final Counter tasks;
+
+	private final Counter pagesRendered;
+
+	private final Counter pagesCached;
+
+	private final Histogram previewTimes;
+
+	public PreviewRenderer(List<PdfRenderer> renderers, int threads, int pagesPerTask, MetricsRegistry metricsRegistry) {
+		for (PdfRenderer renderer : renderers) {
+			this.renderers.put(renderer.getEngine(), renderer);
+		}
+		this.pool = new ForkJoinPool(threads);
+		this.pagesPerTask = Math.max(1, pagesPerTask);
+
+		previews = metricsRegistry.counter("preview.requests");
+		tasks = metricsRegistry.counter("preview.tasks");
+		pagesRendered = metricsRegistry.counter("preview.pages.rendered");
+		pagesCached = metricsRegistry.counter("preview.pages.cached");
+		previewTimes = metricsRegistry.histogram("preview.time");
+		metricsRegistry.register("preview.threads.active", new Gauge() {
+			@Override
+			public long getValue() {
+				return pool.getActiveThreadCount();
+			}
+		});
+		metricsRegistry.register("preview.queued", new Gauge() {
+			@Override
+			public long getValue() {
+				return pool.getQueuedSubmissionCount();
+			}
+		});
+	}
+
+	//Renders the pages firstPage to lastPage (counted from 0), or up to the last page of the document if it has fewer.
+	//pageCount is the number of pages of the document if it is known, otherwise the document is opened to count them.
+	//Returns right away, the pages are handed to the listener in the order they're done.
+	public void render(String contentHash, String engine, int firstPage, int lastPage, int width, Integer pageCount,
+			PageListener listener) {
+		PdfRenderer renderer = renderers.get(engine);
+		if (renderer == null) {
+			throw new IllegalArgumentException("Unknown PDF engine " + engine + ", known are " + renderers.keySet());
+		}
+		previews.increment();
+		ContentLeases.Lease lease = contentLeases.take(contentHash);
+		try {
+			pool.execute(new Preview(renderer, contentHash, firstPage, lastPage, width, pageCount, listener, lease));
+		} catch (RuntimeException e) {
+			lease.end();
+			throw e;
+		}
+	}
+
+	//Called by Spring when the application context is closed
+	public void shutdown() {
+		pool.shutdownNow();
+	}
+
+	//A whole preview: counts the pages if needed, renders them and tells the listener when it's finished
+	private class Preview extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final PdfRenderer renderer;
+
+		private final String contentHash;
+
+		private final int firstPage;
+
+		private final int lastPage;
+
+		private final int width;
+
+		private final Integer pageCount;
+
+		private final PageListener listener;
+
+		private final ContentLeases.Lease lease;
+
+		private final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+
+		//Set once the listener wants no more pages
+		private volatile boolean stopped;
+
+		private Preview(PdfRenderer renderer, String contentHash, int firstPage, int lastPage, int width, Integer pageCount,
+				PageListener listener, ContentLeases.Lease lease) {
+			this.renderer = renderer;
+			this.contentHash = contentHash;
+			this.firstPage = firstPage;
+			this.lastPage = lastPage;
+			this.width = width;
+			this.pageCount = pageCount;
+			this.listener = listener;
+			this.lease = lease;
+		}
+
+		@Override
+		protected void compute() {
+			long startedAt = System.nanoTime();
+			try {
+				int last = Math.min(lastPage, (pageCount != null ? pageCount : countPages()) - 1);
+				if (firstPage <= last) {
+					new PageRange(firstPage, last).invoke();
+				}
+			} catch (Exception e) {
+				failure.compareAndSet(null, e);
+			} finally {
+				previewTimes.recordNanos(System.nanoTime() - startedAt);
+				lease.end();
+				listener.finished(failure.get());
+			}
+		}
+
+		private int countPages() throws IOException {
+			RenderablePdf pdf = renderer.open(documentContentStore.file(contentHash));
+			try {
+				return pdf.getPageCount();
+			} finally {
+				pdf.close();
+			}
+		}
+
+		//Takes the pages from the cache, the others are rendered with the document opened once for all of them.
+		//A page which fails ends the range, the other ranges go on.
+		private void renderPages(int first, int last) throws IOException {
+			RenderablePdf pdf = null;
+			try {
+				for (int page = first; page <= last && !stopped && !lease.isRevoked(); page++) {
+					String key = ThumbnailCache.key(contentHash, renderer.getEngine(), page, width);
+					byte[] png = thumbnailCache.get(key);
+					if (png != null) {
+						pagesCached.increment();
+					} else {
+						if (pdf == null) {
+							pdf = renderer.open(documentContentStore.file(contentHash));
+						}
+						png = Images.toPng(pdf.renderPage(page, width));
+						if (!thumbnailCache.put(key, png, lease)) {
+							return;
+						}
+						pagesRendered.increment();
+					}
+					if (!listener.pageRendered(page, png)) {
+						stopped = true;
+					}
+				}
+			} finally {
+				if (pdf != null) {
+					pdf.close();
+				}
+			}
+		}
+
+		//Splits the range in halves until one task can render it
+		private class PageRange extends RecursiveAction {
+
+			private static final long serialVersionUID = 1L;
+
+			private final int first;
+
+			private final int last;
+
+			private PageRange(int first, int last) {
+				this.first = first;
+				this.last = last;
+			}
+
+			@Override
+			protected void compute() {
+				if (last - first + 1 > pagesPerTask) {
+					int middle = (first + last) >>> 1;
+					invokeAll(new PageRange(first, middle), new PageRange(middle + 1, last));
+					return;
+				}
+				tasks.increment();
+				try {
+					renderPages(first, last);
+				} catch (Exception e) {
+					failure.compareAndSet(null, e);
+				}
+			}
+		}
+	}
+}
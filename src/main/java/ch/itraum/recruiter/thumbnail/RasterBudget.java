@@ -0,0 +1,112 @@
+package ch.itraum.recruiter.thumbnail;
+
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import ch.itraum.recruiter.metrics.Counter;
+import ch.itraum.recruiter.metrics.Gauge;
+import ch.itraum.recruiter.metrics.MetricsRegistry;
+
+//Keeps the memory used for rendering pages within bounds. A single page may have at most maxPagePixels pixels,
+//bigger pages are rendered at a lower resolution or refused. All pages rendered at the same time together
+//may need at most totalBytes: a render reserves its estimated memory first and waits while there isn't enough left.
+public class RasterBudget {
+
+	//An RGB raster takes 4 bytes per pixel, the scaled copy and the buffers of the PNG encoder about as much again
+	private static final int BYTES_PER_PIXEL = 8;
+
+	//The semaphore counts kilobytes, so budgets of several gigabytes fit into its int
+	private static final int BYTES_PER_PERMIT = 1024;
+
+	private final long maxPagePixels;
+
+	private final int totalPermits;
+
+	private final Semaphore permits;
+
+	private final long acquireTimeoutMillis;
+
+	private final Counter pagesDownscaled;
+
+	private final Counter pagesRefused;
+
+	private final Counter waits;
+
+	public RasterBudget(long maxPagePixels, long totalBytes, long acquireTimeoutMillis, MetricsRegistry metricsRegistry) {
+		this.maxPagePixels = maxPagePixels;
+		this.totalPermits = (int) Math.min(Integer.MAX_VALUE, Math.max(1, totalBytes / BYTES_PER_PERMIT));
+		this.permits = new Semaphore(totalPermits, true);
+		this.acquireTimeoutMillis = acquireTimeoutMillis;
+
+		pagesDownscaled = metricsRegistry.counter("render.pages.downscaled");
+		pagesRefused = metricsRegistry.counter("render.pages.refused");
+		waits = metricsRegistry.counter("render.memory.waits");
+		metricsRegistry.register("render.memory.reserved", new Gauge() {
+			@Override
+			public long getValue() {
+				return (long) (totalPermits - permits.availablePermits()) * BYTES_PER_PERMIT;
+			}
+		});
+	}
+
+	//The highest resolution up to the requested one (in dots per inch) at which a page of the given size
+	//in points stays within maxPagePixels. Fails if not even 1 dpi is small enough.
+	public int fitResolution(float widthPoints, float heightPoints, int resolution) throws IOException {
+		double pixelsPerSquareInch = (double) maxPagePixels / ((widthPoints / 72.0) * (heightPoints / 72.0));
+		int maxResolution = (int) Math.floor(Math.sqrt(pixelsPerSquareInch));
+		if (resolution <= maxResolution) {
+			return resolution;
+		}
+		if (maxResolution < 1) {
+			pagesRefused.increment();
+			throw new IOException("A page of " + widthPoints + "x" + heightPoints + " points is too large to be rendered");
+		}
+		pagesDownscaled.increment();
+		return maxResolution;
+	}
+
+	//For engines rendering at a fixed size: fails if the page has more than maxPagePixels
+	public void checkPixels(long width, long height) throws IOException {
+		if (width * height > maxPagePixels) {
+			pagesRefused.increment();
+			throw new IOException("A page of " + width + "x" + height + " pixels is too large to be rendered");
+		}
+	}
+
+	//Reserves the memory for rendering the given number of pixels, to be released once the image is done.
+	//A page needing more than the whole budget reserves the whole budget, so it's rendered alone.
+	public Reservation reserve(long pixels) throws IOException {
+		int required = (int) Math.min(totalPermits, Math.max(1, pixels * BYTES_PER_PIXEL / BYTES_PER_PERMIT));
+		try {
+			if (!permits.tryAcquire(required)) {
+				waits.increment();
+				if (!permits.tryAcquire(required, acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+					throw new IOException("No memory for rendering became available within " + acquireTimeoutMillis + " ms");
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for memory to render", e);
+		}
+		return new Reservation(required);
+	}
+
+	public long getMaxPagePixels() {
+		return maxPagePixels;
+	}
+
+	public class Reservation {
+
+		private int reserved;
+
+		private Reservation(int reserved) {
+			this.reserved = reserved;
+		}
+
+		public void release() {
+			permits.release(reserved);
+			reserved = 0;
+		}
+	}
+}
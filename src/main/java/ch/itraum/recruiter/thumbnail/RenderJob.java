@@ -0,0 +1,91 @@
+package ch.itraum.recruiter.thumbnail;
+
+import ch.itraum.recruiter.storage.ContentLeases;
+
+//Describes which pages of a document content have to be rendered by the RenderPipeline.
+//The lease is held from the first attempt until the job is done, it tells the job when the content was deleted.
+public class RenderJob {
+
+	private final String contentHash;
+
+	private final String engine;
+
+	private final int width;
+
+	private final int firstPage;
+
+	private final int lastPage;
+
+	//Only the job started at upload time analyses the whole document (page count and text)
+	private final boolean analyseDocument;
+
+	private final int attempt;
+
+	private final ContentLeases.Lease lease;
+
+	private final long enqueuedAt;
+
+	public RenderJob(String contentHash, String engine, int width, int firstPage, int lastPage, boolean analyseDocument,
+			ContentLeases.Lease lease) {
+		this(contentHash, engine, width, firstPage, lastPage, analyseDocument, lease, 1);
+	}
+
+	private RenderJob(String contentHash, String engine, int width, int firstPage, int lastPage, boolean analyseDocument,
+			ContentLeases.Lease lease, int attempt) {
+		this.contentHash = contentHash;
+		this.engine = engine;
+		this.width = width;
+		this.firstPage = firstPage;
+		this.lastPage = lastPage;
+		this.analyseDocument = analyseDocument;
+		this.lease = lease;
+		this.attempt = attempt;
+		this.enqueuedAt = System.currentTimeMillis();
+	}
+
+	//The same job once more, used after a failed attempt
+	public RenderJob retry() {
+		return new RenderJob(contentHash, engine, width, firstPage, lastPage, analyseDocument, lease, attempt + 1);
+	}
+
+	//Two jobs with the same key would render exactly the same thumbnails
+	public String getKey() {
+		return contentHash + "-" + engine + "-w" + width + "-p" + firstPage + "-" + lastPage + (analyseDocument ? "-a" : "");
+	}
+
+	public String getContentHash() {
+		return contentHash;
+	}
+
+	public String getEngine() {
+		return engine;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getFirstPage() {
+		return firstPage;
+	}
+
+	public int getLastPage() {
+		return lastPage;
+	}
+
+	public boolean isAnalyseDocument() {
+		return analyseDocument;
+	}
+
+	public ContentLeases.Lease getLease() {
+		return lease;
+	}
+
+	public int getAttempt() {
+		return attempt;
+	}
+
+	public long getEnqueuedAt() {
+		return enqueuedAt;
+	}
+}
@@ -0,0 +1,351 @@
+package ch.itraum.recruiter.thumbnail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import ch.itraum.recruiter.metrics.Counter;
+import ch.itraum.recruiter.metrics.Gauge;
+import ch.itraum.recruiter.metrics.Histogram;
+import ch.itraum.recruiter.metrics.MetricsRegistry;
+import ch.itraum.recruiter.repository.DocumentRepository;
+import ch.itraum.recruiter.storage.ContentLeases;
+import ch.itraum.recruiter.storage.ContentReleaseListener;
+import ch.itraum.recruiter.storage.DocumentContentStore;
+
+//Renders thumbnails in the background, so no HTTP request ever has to wait for a PDF to be rendered.
+//As soon as a document is uploaded its first pages are rendered, its pages counted and its text extracted.
+//Requests only deliver what is in the ThumbnailCache, pages that are missing there are queued here.
+//The jobs run on a fixed number of threads with a bounded queue, a failed job is retried a few times.
+//A job holds a lease on its content: once the content is deleted, the job is cancelled or stops writing.
+public class RenderPipeline implements ContentReleaseListener {
+
+	private Logger logger = LoggerFactory.getLogger(RenderPipeline.class);
+
+	@Autowired
+	private DocumentContentStore documentContentStore;
+
+	@Autowired
+	private ThumbnailCache thumbnailCache;
+
+	@Autowired
+	private DocumentRepository documentRepository;
+
+	@Autowired
+	private ContentLeases contentLeases;
+
+	private final Map<String, PdfRenderer> renderers = new HashMap<String, PdfRenderer>();
+
+	private final String defaultEngine;
+
+	private final int defaultWidth;
+
+	private final int pagesRenderedOnUpload;
+
+	private final int maxAttempts;
+
+	private final long retryDelayMillis;
+
+	private final Path textDirectory;
+
+	private final ThreadPoolExecutor executor;
+
+	private final ScheduledExecutorService retryScheduler;
+
+	//Jobs which are queued, running or waiting for a retry, by their key
+	private final ConcurrentMap<String, RenderJob> pendingJobs = new ConcurrentHashMap<String, RenderJob>();
+
+	//Content which could not be rendered even after all retries
+	private final Set<String> failedContent = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	private final Counter jobsSubmitted;
+
+	private final Counter jobsRejected;
+
+	private final Counter jobsRetried;
+
+	private final Counter jobsFailed;
+
+	private final Counter jobsCompleted;
+
+	private final Counter jobsCancelled;
+
+	private final Counter waitMillis;
+
+	private final Counter renderMillis;
+
+	//Render time per engine, only read after the constructor
+	private final Map<String, Histogram> renderTimes = new HashMap<String, Histogram>();
+
+	private final Counter pagesRendered;
+
+	public RenderPipeline(List<PdfRenderer> renderers, String defaultEngine, int defaultWidth, int pagesRenderedOnUpload, int threads, int queueCapacity,
+			int maxAttempts, long retryDelayMillis, File textDirectory, MetricsRegistry metricsRegistry) throws IOException {
+		for (PdfRenderer renderer : renderers) {
+			this.renderers.put(renderer.getEngine(), renderer);
+			renderTimes.put(renderer.getEngine(), metricsRegistry.histogram("render.time." + renderer.getEngine()));
+		}
+		if (!this.renderers.containsKey(defaultEngine)) {
+			throw new IllegalArgumentException("Unknown PDF engine " + defaultEngine + ", known are " + this.renderers.keySet());
+		}
+		this.defaultEngine = defaultEngine;
+		this.defaultWidth = defaultWidth;
+		this.pagesRenderedOnUpload = pagesRenderedOnUpload;
+		this.maxAttempts = maxAttempts;
+		this.retryDelayMillis = retryDelayMillis;
+		this.textDirectory = textDirectory.toPath();
+		Files.createDirectories(this.textDirectory);
+
+		executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(queueCapacity),
+				new NamedThreadFactory("render"));
+		retryScheduler = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("render-retry"));
+
+		jobsSubmitted = metricsRegistry.counter("render.jobs.submitted");
+		jobsRejected = metricsRegistry.counter("render.jobs.rejected");
+		jobsRetried = metricsRegistry.counter("render.jobs.retried");
+		jobsFailed = metricsRegistry.counter("render.jobs.failed");
+		jobsCompleted = metricsRegistry.counter("render.jobs.completed");
+		jobsCancelled = metricsRegistry.counter("render.jobs.cancelled");
+		waitMillis = metricsRegistry.counter("render.wait.millis");
+		renderMillis = metricsRegistry.counter("render.time.millis");
+		pagesRendered = metricsRegistry.counter("render.pages");
+		metricsRegistry.register("render.queue.depth", new Gauge() {
+			@Override
+			public long getValue() {
+				return executor.getQueue().size();
+			}
+		});
+		metricsRegistry.register("render.jobs.active", new Gauge() {
+			@Override
+			public long getValue() {
+				return executor.getActiveCount();
+			}
+		});
+	}
+
+	public String getDefaultEngine() {
+		return defaultEngine;
+	}
+
+	public boolean hasEngine(String engine) {
+		return renderers.containsKey(engine);
+	}
+
+	public int getDefaultWidth() {
+		return defaultWidth;
+	}
+
+	//Called after an upload: renders the first pages and analyses the document
+	public void documentUploaded(String contentHash) {
+		submit(new RenderJob(contentHash, defaultEngine, defaultWidth, 0, pagesRenderedOnUpload - 1, true, contentLeases.take(contentHash)));
+	}
+
+	//Returns the thumbnail if it was rendered already. Otherwise the page is queued for rendering and null is returned.
+	public byte[] getThumbnail(String contentHash, String engine, int page, int width) {
+		byte[] png = thumbnailCache.get(ThumbnailCache.key(contentHash, engine, page, width));
+		if (png == null && !isPending(contentHash, engine, page, width) && !hasFailed(contentHash)) {
+			submit(new RenderJob(contentHash, engine, width, page, page, false, contentLeases.take(contentHash)));
+		}
+		return png;
+	}
+
+	public boolean hasFailed(String contentHash) {
+		return failedContent.contains(contentHash);
+	}
+
+	//Called by the DocumentContentStore once nobody references the content anymore, e.g. after an application
+	//was cancelled. Nothing extracted from a CV may be kept longer than the CV itself.
+	//The leases of the jobs were revoked before, a job still running deletes what it writes from now on.
+	@Override
+	public void contentDeleted(String contentHash) {
+		for (RenderJob job : pendingJobs.values()) {
+			if (job.getContentHash().equals(contentHash)) {
+				pendingJobs.remove(job.getKey(), job);
+			}
+		}
+		failedContent.remove(contentHash);
+		try {
+			Files.deleteIfExists(textPath(contentHash));
+		} catch (IOException e) {
+			logger.warn("Could not delete the text of " + contentHash, e);
+		}
+	}
+
+	//Called by Spring when the application context is closed
+	public void shutdown() {
+		retryScheduler.shutdownNow();
+		executor.shutdownNow();
+	}
+
+	private boolean isPending(String contentHash, String engine, int page, int width) {
+		for (RenderJob job : pendingJobs.values()) {
+			if (job.getContentHash().equals(contentHash) && job.getEngine().equals(engine) && job.getWidth() == width
+					&& job.getFirstPage() <= page && page <= job.getLastPage()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void submit(final RenderJob job) {
+		if (job.getAttempt() == 1 && pendingJobs.putIfAbsent(job.getKey(), job) != null) {
+			job.getLease().end();
+			return;
+		}
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					process(job);
+				}
+			});
+			jobsSubmitted.increment();
+		} catch (RejectedExecutionException e) {
+			//The queue is full. The page will be queued again by the next request asking for it.
+			finish(job);
+			jobsRejected.increment();
+		}
+	}
+
+	private void process(final RenderJob job) {
+		if (job.getLease().isRevoked()) {
+			finish(job);
+			jobsCancelled.increment();
+			return;
+		}
+		long startedAt = System.currentTimeMillis();
+		long startedNanos = System.nanoTime();
+		waitMillis.add(startedAt - job.getEnqueuedAt());
+		try {
+			render(job);
+			finish(job);
+			if (job.getLease().isRevoked()) {
+				jobsCancelled.increment();
+			} else {
+				jobsCompleted.increment();
+			}
+		} catch (Exception e) {
+			if (job.getLease().isRevoked()) {
+				//Most likely it failed because the content is gone
+				finish(job);
+				jobsCancelled.increment();
+			} else if (job.getAttempt() < maxAttempts) {
+				logger.info("Rendering " + job.getKey() + " failed in attempt " + job.getAttempt() + ", trying again", e);
+				jobsRetried.increment();
+				retryScheduler.schedule(new Runnable() {
+					@Override
+					public void run() {
+						submit(job.retry());
+					}
+				}, retryDelayMillis * job.getAttempt(), TimeUnit.MILLISECONDS);
+			} else {
+				logger.warn("Rendering " + job.getKey() + " failed " + maxAttempts + " times, giving up", e);
+				failedContent.add(job.getContentHash());
+				finish(job);
+				jobsFailed.increment();
+			}
+		} finally {
+			renderMillis.add(System.currentTimeMillis() - startedAt);
+			renderTimes.get(job.getEngine()).recordNanos(System.nanoTime() - startedNanos);
+		}
+	}
+
+	//Ends the job. Its key may already be taken by a job for the same content uploaded again, which stays pending.
+	private void finish(RenderJob job) {
+		RenderJob pending = pendingJobs.get(job.getKey());
+		if (pending != null && pending.getLease() == job.getLease()) {
+			pendingJobs.remove(job.getKey(), pending);
+		}
+		job.getLease().end();
+	}
+
+	private void render(RenderJob job) throws IOException {
+		ContentLeases.Lease lease = job.getLease();
+		PdfRenderer renderer = renderers.get(job.getEngine());
+		RenderablePdf pdf = renderer.open(documentContentStore.file(job.getContentHash()));
+		try {
+			int lastPage = Math.min(job.getLastPage(), pdf.getPageCount() - 1);
+			for (int page = job.getFirstPage(); page <= lastPage; page++) {
+				byte[] png = Images.toPng(pdf.renderPage(page, job.getWidth()));
+				if (!thumbnailCache.put(ThumbnailCache.key(job.getContentHash(), job.getEngine(), page, job.getWidth()), png, lease)) {
+					return;
+				}
+				pagesRendered.increment();
+			}
+			if (job.isAnalyseDocument() && !lease.isRevoked()) {
+				documentRepository.updatePageCount(job.getContentHash(), pdf.getPageCount());
+				String text = pdf.extractText();
+				if (text != null) {
+					writeText(job.getContentHash(), text, lease);
+				}
+			}
+		} finally {
+			pdf.close();
+		}
+	}
+
+	private void writeText(String contentHash, String text, ContentLeases.Lease lease) throws IOException {
+		if (lease.isRevoked()) {
+			return;
+		}
+		Path target = textPath(contentHash);
+		Path temporary = Files.createTempFile(textDirectory, "text-", ".tmp");
+		try {
+			Files.write(temporary, text.getBytes(StandardCharsets.UTF_8));
+			Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+		//Deleted while it was written, contentDeleted may have missed it
+		if (lease.isRevoked()) {
+			Files.deleteIfExists(target);
+		}
+	}
+
+	private Path textPath(String contentHash) {
+		if (!contentHash.matches("[0-9a-f]{64}")) {
+			throw new IllegalArgumentException("Not a valid content hash: " + contentHash);
+		}
+		return textDirectory.resolve(contentHash + ".txt");
+	}
+
+	private static class NamedThreadFactory implements ThreadFactory {
+
+		private final String prefix;
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		public NamedThreadFactory(String prefix) {
+			this.prefix = prefix;
+		}
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,17 @@
+package ch.itraum.recruiter.thumbnail;
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.IOException;
+
+//A document opened by a PdfRenderer. It must only be used by one thread at a time and has to be closed.
+public interface RenderablePdf extends Closeable {
+
+	int getPageCount();
+
+	//Renders a page (counted from 0) at the given width in pixels, a width of 0 renders the page at its natural size
+	BufferedImage renderPage(int page, int width) throws IOException;
+
+	//Returns the text of the whole document or null if the engine can't extract text
+	String extractText() throws IOException;
+}
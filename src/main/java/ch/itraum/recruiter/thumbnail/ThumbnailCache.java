@@ -0,0 +1,340 @@
+package ch.itraum.recruiter.thumbnail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ch.itraum.recruiter.metrics.Counter;
+import ch.itraum.recruiter.metrics.Gauge;
+import ch.itraum.recruiter.metrics.MetricsRegistry;
+import ch.itraum.recruiter.storage.ContentLeases;
+import ch.itraum.recruiter.storage.ContentReleaseListener;
+
+//Keeps rendered thumbnails (PNG bytes) in two tiers:
+//a small in-memory LRU bounded by the number of bytes it holds and a directory on disk, which survives restarts.
+//The disk tier is bounded too: once it holds more than maxDiskBytes, the files read or written longest ago are
+//deleted until it is down to three quarters of that.
+//Thumbnails are keyed by the hash of the document content, so a changed document can never hit an old thumbnail.
+//The thumbnails of content deleted from the DocumentContentStore are purged from both tiers.
+public class ThumbnailCache implements ContentReleaseListener {
+
+	private Logger logger = LoggerFactory.getLogger(ThumbnailCache.class);
+
+	private final Path directory;
+
+	private final long maxMemoryBytes;
+
+	private final long maxDiskBytes;
+
+	//Roughly what the files on disk take, counted exactly again by every sweep
+	private final AtomicLong diskBytes = new AtomicLong();
+
+	//Only one thread sweeps the disk at a time, the others don't wait for it
+	private final AtomicBoolean sweeping = new AtomicBoolean();
+
+	//Access ordered, so iterating starts with the least recently used entry
+	private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<String, byte[]>(64, 0.75f, true);
+
+	private long memoryBytes;
+
+	private final Counter memoryHits;
+
+	private final Counter diskHits;
+
+	private final Counter misses;
+
+	private final Counter evictions;
+
+	private final Counter diskEvictions;
+
+	public ThumbnailCache(File directory, long maxMemoryBytes, long maxDiskBytes, MetricsRegistry metricsRegistry) throws IOException {
+		this.directory = directory.toPath();
+		this.maxMemoryBytes = maxMemoryBytes;
+		this.maxDiskBytes = maxDiskBytes;
+		Files.createDirectories(this.directory);
+		diskBytes.set(sumDiskFiles(new ArrayList<DiskFile>()));
+
+		memoryHits = metricsRegistry.counter("thumbnails.cache.hits.memory");
+		diskHits = metricsRegistry.counter("thumbnails.cache.hits.disk");
+		misses = metricsRegistry.counter("thumbnails.cache.misses");
+		evictions = metricsRegistry.counter("thumbnails.cache.evictions");
+		diskEvictions = metricsRegistry.counter("thumbnails.cache.disk.evictions");
+		metricsRegistry.register("thumbnails.cache.disk.bytes", new Gauge() {
+			@Override
+			public long getValue() {
+				return diskBytes.get();
+			}
+		});
+		metricsRegistry.register("thumbnails.cache.memory.bytes", new Gauge() {
+			@Override
+			public long getValue() {
+				synchronized (memory) {
+					return memoryBytes;
+				}
+			}
+		});
+		metricsRegistry.register("thumbnails.cache.memory.entries", new Gauge() {
+			@Override
+			public long getValue() {
+				synchronized (memory) {
+					return memory.size();
+				}
+			}
+		});
+	}
+
+	public static String key(String contentHash, String engine, int page, int width) {
+		return contentHash + "-" + engine + "-p" + page + "-w" + width;
+	}
+
+	//Returns the PNG bytes of the thumbnail or null if it was never rendered
+	public byte[] get(String key) {
+		synchronized (memory) {
+			byte[] png = memory.get(key);
+			if (png != null) {
+				memoryHits.increment();
+				return png;
+			}
+		}
+
+		byte[] png = readFromDisk(key);
+		if (png != null) {
+			diskHits.increment();
+			touch(key);
+			putInMemory(key, png);
+			return png;
+		}
+
+		misses.increment();
+		return null;
+	}
+
+	public void put(String key, byte[] png) {
+		putInMemory(key, png);
+		writeToDisk(key, png);
+		if (diskBytes.get() > maxDiskBytes) {
+			sweepDisk();
+		}
+	}
+
+	//Puts a thumbnail rendered under the lease. Returns false and keeps nothing if the content was deleted meanwhile,
+	//even if that happened while the thumbnail was written.
+	public boolean put(String key, byte[] png, ContentLeases.Lease lease) {
+		if (lease.isRevoked()) {
+			return false;
+		}
+		put(key, png);
+		if (lease.isRevoked()) {
+			remove(key);
+			return false;
+		}
+		return true;
+	}
+
+	public void remove(String key) {
+		synchronized (memory) {
+			byte[] png = memory.remove(key);
+			if (png != null) {
+				memoryBytes -= png.length;
+			}
+		}
+		try {
+			Path file = diskPath(key);
+			long size = Files.size(file);
+			if (Files.deleteIfExists(file)) {
+				diskBytes.addAndGet(-size);
+			}
+		} catch (NoSuchFileException e) {
+			//Never written or already purged
+		} catch (IOException e) {
+			logger.warn("Could not delete thumbnail " + key, e);
+		}
+	}
+
+	//Called by the DocumentContentStore once nobody references the content anymore, e.g. after an application was cancelled
+	@Override
+	public void contentDeleted(String contentHash) {
+		String prefix = contentHash + "-";
+		synchronized (memory) {
+			Iterator<Map.Entry<String, byte[]>> entries = memory.entrySet().iterator();
+			while (entries.hasNext()) {
+				Map.Entry<String, byte[]> entry = entries.next();
+				if (entry.getKey().startsWith(prefix)) {
+					memoryBytes -= entry.getValue().length;
+					entries.remove();
+				}
+			}
+		}
+
+		Path subDirectory = diskPath(contentHash).getParent();
+		if (!Files.isDirectory(subDirectory)) {
+			return;
+		}
+		try {
+			DirectoryStream<Path> files = Files.newDirectoryStream(subDirectory, prefix + "*.png");
+			try {
+				for (Path file : files) {
+					long size = Files.size(file);
+					if (Files.deleteIfExists(file)) {
+						diskBytes.addAndGet(-size);
+					}
+				}
+			} finally {
+				files.close();
+			}
+		} catch (IOException e) {
+			logger.warn("Could not purge the thumbnails of " + contentHash, e);
+		}
+	}
+
+	private void putInMemory(String key, byte[] png) {
+		if (png.length > maxMemoryBytes) {
+			return;
+		}
+		synchronized (memory) {
+			byte[] previous = memory.put(key, png);
+			if (previous != null) {
+				memoryBytes -= previous.length;
+			}
+			memoryBytes += png.length;
+
+			Iterator<Map.Entry<String, byte[]>> leastRecentlyUsed = memory.entrySet().iterator();
+			while (memoryBytes > maxMemoryBytes) {
+				memoryBytes -= leastRecentlyUsed.next().getValue().length;
+				leastRecentlyUsed.remove();
+				evictions.increment();
+			}
+		}
+	}
+
+	private byte[] readFromDisk(String key) {
+		try {
+			return Files.readAllBytes(diskPath(key));
+		} catch (NoSuchFileException e) {
+			return null;
+		} catch (IOException e) {
+			logger.warn("Could not read thumbnail " + key, e);
+			return null;
+		}
+	}
+
+	//The disk tier is only a cache, so failing to write it must not fail the request
+	private void writeToDisk(String key, byte[] png) {
+		try {
+			Path target = diskPath(key);
+			Files.createDirectories(target.getParent());
+			Path temporary = Files.createTempFile(target.getParent(), "thumbnail-", ".tmp");
+			try {
+				Files.write(temporary, png);
+				Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				diskBytes.addAndGet(png.length);
+			} finally {
+				Files.deleteIfExists(temporary);
+			}
+		} catch (IOException e) {
+			logger.warn("Could not write thumbnail " + key, e);
+		}
+	}
+
+	//The modification time tells the sweep when a thumbnail was last used
+	private void touch(String key) {
+		try {
+			Files.setLastModifiedTime(diskPath(key), FileTime.fromMillis(System.currentTimeMillis()));
+		} catch (IOException e) {
+			//It was just purged or swept, it's rendered again when it's needed
+		}
+	}
+
+	private void sweepDisk() {
+		if (!sweeping.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			List<DiskFile> files = new ArrayList<DiskFile>();
+			long bytes = sumDiskFiles(files);
+			Collections.sort(files);
+			long target = maxDiskBytes / 4 * 3;
+			for (Iterator<DiskFile> oldest = files.iterator(); bytes > target && oldest.hasNext();) {
+				DiskFile file = oldest.next();
+				if (Files.deleteIfExists(file.path)) {
+					bytes -= file.size;
+					diskEvictions.increment();
+				}
+			}
+			diskBytes.set(bytes);
+		} catch (IOException e) {
+			logger.warn("Could not sweep the thumbnails in " + directory, e);
+		} finally {
+			sweeping.set(false);
+		}
+	}
+
+	//Adds the thumbnails on disk to files and returns their total size
+	private long sumDiskFiles(final List<DiskFile> files) throws IOException {
+		Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+				if (file.getFileName().toString().endsWith(".png")) {
+					files.add(new DiskFile(file, attributes.size(), attributes.lastModifiedTime().toMillis()));
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			//A file deleted while we walk is just not counted
+			@Override
+			public FileVisitResult visitFileFailed(Path file, IOException e) {
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		long bytes = 0;
+		for (DiskFile file : files) {
+			bytes += file.size;
+		}
+		return bytes;
+	}
+
+	//The key starts with the content hash, which is used to spread the files over sub directories
+	private Path diskPath(String key) {
+		return directory.resolve(key.substring(0, 2)).resolve(key + ".png");
+	}
+
+	//Sorted from the least recently used
+	private static class DiskFile implements Comparable<DiskFile> {
+
+		private final Path path;
+
+		private final long size;
+
+		private final long lastModified;
+
+		private DiskFile(Path path, long size, long lastModified) {
+			this.path = path;
+			this.size = size;
+			this.lastModified = lastModified;
+		}
+
+		@Override
+		public int compareTo(DiskFile other) {
+			return lastModified < other.lastModified ? -1 : (lastModified == other.lastModified ? 0 : 1);
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package ch.itraum.recruiter.tools;
 
 public class RecruiterHelper {
+	//Name of the Documents the letter of motivation used to be saved as, see LetterOfMotivationService.migrateLegacyLetters
 	public static final String FILE_NAME_MOTIVATIONSSCHREIBEN = "Motivationsschreiben_Kiebitz_1977-BG_1976-AK_1974-RM_1973-PG.txt";
 	public static final String LANGUAGE_GERMAN = "de";
 	public static final String LANGUAGE_ENGLISH = "en";
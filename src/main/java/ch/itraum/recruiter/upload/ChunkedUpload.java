@@ -0,0 +1,117 @@
+package ch.itraum.recruiter.upload;
+
+import java.io.File;
+import java.util.BitSet;
+
+//A file being uploaded in chunks of a fixed size. The chunks are written at their offset into the spool file,
+//the set of received chunks tells which ones are still missing. Chunk i covers the bytes from i * chunkSize
+//up to the next chunk, only the last one may be shorter.
+public class ChunkedUpload {
+
+	private final String id;
+
+	private final Integer candidateId;
+
+	private final String name;
+
+	private final String contentType;
+
+	private final long size;
+
+	private final int chunkSize;
+
+	private final File spoolFile;
+
+	//Guarded by this
+	private final BitSet receivedChunks = new BitSet();
+
+	private boolean assembling;
+
+	private volatile long lastActivityMillis;
+
+	ChunkedUpload(String id, Integer candidateId, String name, String contentType, long size, int chunkSize, File spoolFile) {
+		this.id = id;
+		this.candidateId = candidateId;
+		this.name = name;
+		this.contentType = contentType;
+		this.size = size;
+		this.chunkSize = chunkSize;
+		this.spoolFile = spoolFile;
+		this.lastActivityMillis = System.currentTimeMillis();
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public Integer getCandidateId() {
+		return candidateId;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getContentType() {
+		return contentType;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	public int getChunkCount() {
+		//An empty file still consists of one (empty) chunk
+		return (int) Math.max(1, (size + chunkSize - 1) / chunkSize);
+	}
+
+	public long getChunkOffset(int index) {
+		return (long) index * chunkSize;
+	}
+
+	public long getChunkLength(int index) {
+		return Math.min(chunkSize, size - getChunkOffset(index));
+	}
+
+	File getSpoolFile() {
+		return spoolFile;
+	}
+
+	long getLastActivityMillis() {
+		return lastActivityMillis;
+	}
+
+	void touch() {
+		lastActivityMillis = System.currentTimeMillis();
+	}
+
+	//Records the chunk. Returns true for exactly one caller, the one which completed the upload.
+	synchronized boolean chunkReceived(int index) {
+		receivedChunks.set(index);
+		if (assembling || receivedChunks.cardinality() < getChunkCount()) {
+			return false;
+		}
+		assembling = true;
+		return true;
+	}
+
+	public synchronized boolean isComplete() {
+		return receivedChunks.cardinality() == getChunkCount();
+	}
+
+	//Indexes of the chunks not received yet, comma separated
+	public synchronized String getMissingChunks() {
+		StringBuilder missing = new StringBuilder();
+		for (int index = receivedChunks.nextClearBit(0); index < getChunkCount(); index = receivedChunks.nextClearBit(index + 1)) {
+			if (missing.length() > 0) {
+				missing.append(',');
+			}
+			missing.append(index);
+		}
+		return missing.toString();
+	}
+}
@@ -0,0 +1,291 @@
+package ch.itraum.recruiter.upload;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.UrlPathHelper;
+
+import ch.itraum.recruiter.async.HandlerWork;
+import ch.itraum.recruiter.metrics.Counter;
+import ch.itraum.recruiter.metrics.Gauge;
+import ch.itraum.recruiter.metrics.MetricsRegistry;
+import ch.itraum.recruiter.session.WizardStateInterceptor;
+
+//Limits the uploads received at the same time, before the container reads their bodies:
+//all uploads together may carry at most maxInFlightBytes, every applicant may send at most maxPerClient at once
+//and every address at most maxPerAddress. The token in the cookie is made up by the client as easily as any other,
+//the limit of the address keeps a client sending a new one with every upload from getting around maxPerClient.
+//Nothing waits here, an upload which doesn't fit is answered right away with 503 and a Retry-After header,
+//which the chunked upload client honours. So a burst of applicants slows down uploads instead of filling heap and disk.
+//It is a filter and not an interceptor because the multipart resolver already reads the whole body before interceptors run.
+public class UploadAdmissionFilter extends OncePerRequestFilter {
+
+	//The semaphore counts kilobytes, like the RasterBudget
+	private static final int BYTES_PER_PERMIT = 1024;
+
+	private static final long DRAIN_POLL_MILLIS = 50;
+
+	private final UrlPathHelper urlPathHelper = new UrlPathHelper();
+
+	private final Semaphore inFlightKilobytes;
+
+	private final int totalPermits;
+
+	private final int maxPerClient;
+
+	private final int maxPerAddress;
+
+	private final long unknownLengthBytes;
+
+	private final String retryAfterSeconds;
+
+	//Uploads in progress per applicant and per address, entries are removed when they drop to 0
+	private final ConcurrentMap<String, AtomicInteger> uploadsPerClient = new ConcurrentHashMap<String, AtomicInteger>();
+
+	private final ConcurrentMap<String, AtomicInteger> uploadsPerAddress = new ConcurrentHashMap<String, AtomicInteger>();
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	//Set when the server shuts down, from then on every upload is rejected
+	private volatile boolean draining;
+
+	private final Counter admitted;
+
+	private final Counter rejected;
+
+	private final Counter rejectedPerClient;
+
+	private final Counter rejectedPerAddress;
+
+	//Browsers always send the length of an upload, a request without one is charged unknownLengthBytes
+	public UploadAdmissionFilter(long maxInFlightBytes, int maxPerClient, int maxPerAddress, long unknownLengthBytes,
+			int retryAfterSeconds, MetricsRegistry metricsRegistry) {
+		this.totalPermits = (int) Math.min(Integer.MAX_VALUE, Math.max(1, maxInFlightBytes / BYTES_PER_PERMIT));
+		this.inFlightKilobytes = new Semaphore(totalPermits);
+		this.maxPerClient = maxPerClient;
+		this.maxPerAddress = maxPerAddress;
+		this.unknownLengthBytes = unknownLengthBytes;
+		this.retryAfterSeconds = String.valueOf(retryAfterSeconds);
+
+		admitted = metricsRegistry.counter("upload.admission.admitted");
+		rejected = metricsRegistry.counter("upload.admission.rejected");
+		rejectedPerClient = metricsRegistry.counter("upload.admission.rejected.client");
+		rejectedPerAddress = metricsRegistry.counter("upload.admission.rejected.address");
+		metricsRegistry.register("upload.admission.inFlight", new Gauge() {
+			@Override
+			public long getValue() {
+				return inFlight.get();
+			}
+		});
+		metricsRegistry.register("upload.admission.inFlight.bytes", new Gauge() {
+			@Override
+			public long getValue() {
+				return (long) (totalPermits - inFlightKilobytes.availablePermits()) * BYTES_PER_PERMIT;
+			}
+		});
+	}
+
+	//Only the requests carrying file content, starting a chunked upload or asking for its state costs nothing
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) {
+		String path = urlPathHelper.getPathWithinApplication(request);
+		return !("POST".equals(request.getMethod()) && "/upload".equals(path))
+				&& !("PUT".equals(request.getMethod()) && path.startsWith("/upload/chunked/"));
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+
+		if (draining) {
+			reject(response);
+			return;
+		}
+		String address = request.getRemoteAddr();
+		AtomicInteger addressUploads = admit(uploadsPerAddress, address, maxPerAddress);
+		if (addressUploads == null) {
+			rejectedPerAddress.increment();
+			reject(response);
+			return;
+		}
+		String client = clientKey(request);
+		AtomicInteger clientUploads = admit(uploadsPerClient, client, maxPerClient);
+		if (clientUploads == null) {
+			release(uploadsPerAddress, address, addressUploads);
+			rejectedPerClient.increment();
+			reject(response);
+			return;
+		}
+		int permits = permitsFor(request);
+		if (!inFlightKilobytes.tryAcquire(permits)) {
+			release(uploadsPerClient, client, clientUploads);
+			release(uploadsPerAddress, address, addressUploads);
+			reject(response);
+			return;
+		}
+
+		admitted.increment();
+		inFlight.incrementAndGet();
+		final HandlerWork work = new HandlerWork(new Admission(client, clientUploads, address, addressUploads, permits));
+		request.setAttribute(HandlerWork.REQUEST_ATTRIBUTE, work);
+		try {
+			filterChain.doFilter(request, response);
+		} finally {
+			//An upload handled asynchronously still goes on. It is released once the response is complete
+			//and the upload isn't read or written anymore, which after a timeout may be later.
+			if (isAsyncStarted(request)) {
+				request.getAsyncContext().addListener(new AsyncListener() {
+					@Override
+					public void onComplete(AsyncEvent event) {
+						work.requestCompleted();
+					}
+
+					@Override
+					public void onTimeout(AsyncEvent event) {
+					}
+
+					@Override
+					public void onError(AsyncEvent event) {
+					}
+
+					@Override
+					public void onStartAsync(AsyncEvent event) {
+					}
+				});
+			} else {
+				work.requestCompleted();
+			}
+		}
+	}
+
+	//Rejects all uploads from now on and waits at most timeoutMillis for the admitted ones to complete.
+	//Returns whether all of them completed. Clients retry the rejected ones later, e.g. on the restarted server.
+	public boolean drain(long timeoutMillis) throws InterruptedException {
+		draining = true;
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		while (inFlight.get() > 0) {
+			if (System.currentTimeMillis() >= deadline) {
+				return false;
+			}
+			Thread.sleep(DRAIN_POLL_MILLIS);
+		}
+		return true;
+	}
+
+	//The counter of the client or address with one more upload, null if it already has max uploads in progress
+	private static AtomicInteger admit(ConcurrentMap<String, AtomicInteger> uploadsPerKey, String key, int max) {
+		AtomicInteger uploads = uploadsPerKey.get(key);
+		if (uploads == null) {
+			AtomicInteger newUploads = new AtomicInteger();
+			uploads = uploadsPerKey.putIfAbsent(key, newUploads);
+			if (uploads == null) {
+				uploads = newUploads;
+			}
+		}
+		while (true) {
+			int current = uploads.get();
+			if (current >= max) {
+				return null;
+			}
+			if (uploads.compareAndSet(current, current + 1)) {
+				return uploads;
+			}
+		}
+	}
+
+	//A counter removed while another request was just taking it only makes that request count for nobody,
+	//which lets a client have one upload too many for a moment but never blocks it
+	private static void release(ConcurrentMap<String, AtomicInteger> uploadsPerKey, String key, AtomicInteger uploads) {
+		if (uploads.decrementAndGet() <= 0) {
+			uploadsPerKey.remove(key, uploads);
+		}
+	}
+
+	//An upload bigger than the whole budget takes the whole budget, so it is only admitted alone
+	private int permitsFor(HttpServletRequest request) {
+		long length = request.getContentLength();
+		String header = request.getHeader("Content-Length");
+		if (length < 0 && header != null) {
+			try {
+				length = Long.parseLong(header.trim());
+			} catch (NumberFormatException e) {
+				length = -1;
+			}
+		}
+		if (length < 0) {
+			length = unknownLengthBytes;
+		}
+		return (int) Math.min(totalPermits, Math.max(1, (length + BYTES_PER_PERMIT - 1) / BYTES_PER_PERMIT));
+	}
+
+	private void reject(HttpServletResponse response) throws IOException {
+		rejected.increment();
+		response.setHeader("Retry-After", retryAfterSeconds);
+		response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+	}
+
+	//The applicant is known by the token in the wizard cookie, before the first form was sent only by the address.
+	//A cookie the WizardStateInterceptor wouldn't accept doesn't count as a token.
+	private String clientKey(HttpServletRequest request) {
+		Cookie[] cookies = request.getCookies();
+		if (cookies != null) {
+			for (Cookie cookie : cookies) {
+				if (WizardStateInterceptor.COOKIE_NAME.equals(cookie.getName()) && cookie.getValue() != null) {
+					Matcher matcher = WizardStateInterceptor.COOKIE_VALUE_PATTERN.matcher(cookie.getValue());
+					if (matcher.matches()) {
+						return matcher.group(1);
+					}
+				}
+			}
+		}
+		return request.getRemoteAddr();
+	}
+
+	//What an admitted upload holds, released exactly once
+	private class Admission implements Runnable {
+
+		private final String client;
+
+		private final AtomicInteger clientUploads;
+
+		private final String address;
+
+		private final AtomicInteger addressUploads;
+
+		private final int permits;
+
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		private Admission(String client, AtomicInteger clientUploads, String address, AtomicInteger addressUploads, int permits) {
+			this.client = client;
+			this.clientUploads = clientUploads;
+			this.address = address;
+			this.addressUploads = addressUploads;
+			this.permits = permits;
+		}
+
+		@Override
+		public void run() {
+			if (released.compareAndSet(false, true)) {
+				inFlight.decrementAndGet();
+				inFlightKilobytes.release(permits);
+				release(uploadsPerClient, client, clientUploads);
+				release(uploadsPerAddress, address, addressUploads);
+			}
+		}
+	}
+}
@@ -0,0 +1,185 @@
+package ch.itraum.recruiter.upload;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ch.itraum.recruiter.metrics.Counter;
+import ch.itraum.recruiter.metrics.Gauge;
+import ch.itraum.recruiter.metrics.MetricsRegistry;
+
+//Receives files in chunks, so a dropped connection only costs the chunks in flight and files
+//can be larger than what a single request may carry. Chunks may arrive in any order and in parallel,
+//each one is streamed through a small buffer to its offset in a spool file, so the memory needed per chunk
+//doesn't depend on the chunk size. Once the last chunk arrived the spool file holds the whole file.
+//Uploads only live in memory: after a restart or expireAfterMillis without a chunk they have to start over.
+public class UploadSpool {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final String SPOOL_SUFFIX = ".upload";
+
+	private Logger logger = LoggerFactory.getLogger(UploadSpool.class);
+
+	private final File directory;
+
+	private final long maxBytes;
+
+	private final int chunkSize;
+
+	private final long expireAfterMillis;
+
+	private final ConcurrentMap<String, ChunkedUpload> uploads = new ConcurrentHashMap<String, ChunkedUpload>();
+
+	private final Counter chunks;
+
+	private final Counter chunkBytes;
+
+	private final Counter completed;
+
+	private final Counter expired;
+
+	public UploadSpool(File directory, long maxBytes, int chunkSize, long expireAfterMillis, MetricsRegistry metricsRegistry)
+			throws IOException {
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+		this.chunkSize = chunkSize;
+		this.expireAfterMillis = expireAfterMillis;
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Could not create the upload directory " + directory);
+		}
+		//Nobody can resume these anymore
+		File[] leftovers = directory.listFiles();
+		if (leftovers != null) {
+			for (File leftover : leftovers) {
+				if (leftover.getName().endsWith(SPOOL_SUFFIX)) {
+					leftover.delete();
+				}
+			}
+		}
+
+		chunks = metricsRegistry.counter("upload.chunks");
+		chunkBytes = metricsRegistry.counter("upload.chunks.bytes");
+		completed = metricsRegistry.counter("upload.chunked.completed");
+		expired = metricsRegistry.counter("upload.chunked.expired");
+		metricsRegistry.register("upload.chunked.active", new Gauge() {
+			@Override
+			public long getValue() {
+				return uploads.size();
+			}
+		});
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	//Starts an upload of a file with the given size, which has to be checked against getMaxBytes() before
+	public ChunkedUpload begin(Integer candidateId, String name, String contentType, long size) throws IOException {
+		if (size < 0 || size > maxBytes) {
+			throw new IllegalArgumentException("Uploads may have at most " + maxBytes + " bytes, not " + size);
+		}
+		expireStaleUploads();
+
+		String id = UUID.randomUUID().toString();
+		File spoolFile = new File(directory, id + SPOOL_SUFFIX);
+		if (!spoolFile.createNewFile()) {
+			throw new IOException("Spool file " + spoolFile + " already exists");
+		}
+		ChunkedUpload upload = new ChunkedUpload(id, candidateId, name, contentType, size, chunkSize, spoolFile);
+		uploads.put(id, upload);
+		return upload;
+	}
+
+	//The upload with the given ID, if it was started by the same candidate
+	public ChunkedUpload get(String id, Integer candidateId) {
+		ChunkedUpload upload = uploads.get(id);
+		if (upload == null || (upload.getCandidateId() == null ? candidateId != null : !upload.getCandidateId().equals(candidateId))) {
+			return null;
+		}
+		return upload;
+	}
+
+	//Writes the chunk with the given index to its place in the spool file. Sending a chunk again simply overwrites it.
+	//Returns true if this chunk completed the upload, the caller then has to take the file and finish the upload.
+	//A chunk with a wrong index or length is rejected with an IllegalArgumentException.
+	public boolean writeChunk(ChunkedUpload upload, int index, InputStream content) throws IOException {
+		if (index < 0 || index >= upload.getChunkCount()) {
+			throw new IllegalArgumentException("Upload " + upload.getId() + " has no chunk " + index);
+		}
+		upload.touch();
+		long expectedLength = upload.getChunkLength(index);
+		long position = upload.getChunkOffset(index);
+		long written = 0;
+
+		FileChannel channel = FileChannel.open(upload.getSpoolFile().toPath(), StandardOpenOption.WRITE);
+		try {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int read;
+			while ((read = content.read(buffer)) != -1) {
+				if (written + read > expectedLength) {
+					throw new IllegalArgumentException("Chunk " + index + " of upload " + upload.getId() + " is longer than "
+							+ expectedLength + " bytes");
+				}
+				ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, read);
+				while (bytes.hasRemaining()) {
+					channel.write(bytes, position + written + bytes.position());
+				}
+				written += read;
+			}
+		} finally {
+			channel.close();
+		}
+		if (written != expectedLength) {
+			throw new IllegalArgumentException("Chunk " + index + " of upload " + upload.getId() + " has " + written + " instead of "
+					+ expectedLength + " bytes");
+		}
+
+		chunks.increment();
+		chunkBytes.add(written);
+		upload.touch();
+		return upload.chunkReceived(index);
+	}
+
+	//The assembled file of a complete upload, only valid until the upload is finished
+	public File getFile(ChunkedUpload upload) {
+		if (!upload.isComplete()) {
+			throw new IllegalStateException("Upload " + upload.getId() + " is not complete yet");
+		}
+		return upload.getSpoolFile();
+	}
+
+	//Forgets the upload and deletes its spool file, whether it was complete or not
+	public void finish(ChunkedUpload upload) throws IOException {
+		if (uploads.remove(upload.getId(), upload) && upload.isComplete()) {
+			completed.increment();
+		}
+		Files.deleteIfExists(upload.getSpoolFile().toPath());
+	}
+
+	private void expireStaleUploads() {
+		long expireBefore = System.currentTimeMillis() - expireAfterMillis;
+		Iterator<ChunkedUpload> iterator = uploads.values().iterator();
+		while (iterator.hasNext()) {
+			ChunkedUpload upload = iterator.next();
+			if (upload.getLastActivityMillis() < expireBefore) {
+				iterator.remove();
+				expired.increment();
+				if (!upload.getSpoolFile().delete()) {
+					logger.warn("Could not delete the spool file of the expired upload " + upload.getId());
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package ch.itraum.recruiter.view;
+
+import org.thymeleaf.cache.ICache;
+import org.thymeleaf.cache.ICacheEntryValidityChecker;
+import org.thymeleaf.cache.StandardCache;
+
+import ch.itraum.recruiter.metrics.Counter;
+import ch.itraum.recruiter.metrics.Gauge;
+import ch.itraum.recruiter.metrics.MetricsRegistry;
+
+//A Thymeleaf cache which counts its hits and misses. Thymeleaf itself only writes them to a trace log.
+public class CountingCache<K, V> implements ICache<K, V> {
+
+	private final ICache<K, V> cache;
+
+	private final Counter hits;
+
+	private final Counter misses;
+
+	public CountingCache(final ICache<K, V> cache, String name, MetricsRegistry metricsRegistry) {
+		this.cache = cache;
+		hits = metricsRegistry.counter(name + ".hits");
+		misses = metricsRegistry.counter(name + ".misses");
+		if (cache instanceof StandardCache) {
+			metricsRegistry.register(name + ".entries", new Gauge() {
+				@Override
+				public long getValue() {
+					return ((StandardCache<K, V>) cache).size();
+				}
+			});
+		}
+	}
+
+	@Override
+	public void put(K key, V value) {
+		cache.put(key, value);
+	}
+
+	@Override
+	public V get(K key) {
+		return count(cache.get(key));
+	}
+
+	@Override
+	public V get(K key, ICacheEntryValidityChecker<? super K, ? super V> validityChecker) {
+		return count(cache.get(key, validityChecker));
+	}
+
+	@Override
+	public void clear() {
+		cache.clear();
+	}
+
+	@Override
+	public void clearKey(K key) {
+		cache.clearKey(key);
+	}
+
+	private V count(V value) {
+		if (value != null) {
+			hits.increment();
+		} else {
+			misses.increment();
+		}
+		return value;
+	}
+}
@@ -0,0 +1,73 @@
+package ch.itraum.recruiter.view;
+
+import java.util.List;
+import java.util.Properties;
+
+import org.thymeleaf.Template;
+import org.thymeleaf.cache.ICache;
+import org.thymeleaf.cache.ICacheManager;
+import org.thymeleaf.dom.Node;
+
+import ch.itraum.recruiter.metrics.MetricsRegistry;
+
+//Publishes the statistics of the caches of the template engine as templates.cache.<cache>.hits, .misses and .entries
+public class CountingCacheManager implements ICacheManager {
+
+	private final ICacheManager cacheManager;
+
+	private final ICache<String, Template> templateCache;
+
+	private final ICache<String, List<Node>> fragmentCache;
+
+	private final ICache<String, Properties> messageCache;
+
+	private final ICache<String, Object> expressionCache;
+
+	public CountingCacheManager(ICacheManager cacheManager, MetricsRegistry metricsRegistry) {
+		this.cacheManager = cacheManager;
+		templateCache = count(cacheManager.getTemplateCache(), "template", metricsRegistry);
+		fragmentCache = count(cacheManager.getFragmentCache(), "fragment", metricsRegistry);
+		messageCache = count(cacheManager.getMessageCache(), "message", metricsRegistry);
+		expressionCache = count(cacheManager.getExpressionCache(), "expression", metricsRegistry);
+	}
+
+	//A cache with a size of 0 is switched off, Thymeleaf expects null for it
+	private static <K, V> ICache<K, V> count(ICache<K, V> cache, String name, MetricsRegistry metricsRegistry) {
+		return cache != null ? new CountingCache<K, V>(cache, "templates.cache." + name, metricsRegistry) : null;
+	}
+
+	@Override
+	public ICache<String, Template> getTemplateCache() {
+		return templateCache;
+	}
+
+	@Override
+	public ICache<String, List<Node>> getFragmentCache() {
+		return fragmentCache;
+	}
+
+	@Override
+	public ICache<String, Properties> getMessageCache() {
+		return messageCache;
+	}
+
+	@Override
+	public ICache<String, Object> getExpressionCache() {
+		return expressionCache;
+	}
+
+	@Override
+	public <K, V> ICache<K, V> getSpecificCache(String name) {
+		return cacheManager.getSpecificCache(name);
+	}
+
+	@Override
+	public List<String> getAllSpecificCacheNames() {
+		return cacheManager.getAllSpecificCacheNames();
+	}
+
+	@Override
+	public void clearAllCaches() {
+		cacheManager.clearAllCaches();
+	}
+}
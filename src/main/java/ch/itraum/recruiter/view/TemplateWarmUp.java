@@ -0,0 +1,83 @@
+package ch.itraum.recruiter.view;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.context.MessageSource;
+import org.springframework.core.io.Resource;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.TemplateProcessingParameters;
+import org.thymeleaf.context.Context;
+
+//Parses the templates of the given view directories into the template cache and loads the translations
+//of every locale when the application starts, so the first candidates after a deployment don't wait for it.
+//Templates are only parsed here, not rendered: rendering needs the model of a request.
+public class TemplateWarmUp implements ApplicationContextAware {
+
+	private Logger logger = LoggerFactory.getLogger(TemplateWarmUp.class);
+
+	private final TemplateEngine templateEngine;
+
+	private final MessageSource messageSource;
+
+	private final String prefix;
+
+	private final String suffix;
+
+	private final List<String> directories;
+
+	private final List<Locale> locales;
+
+	private final boolean enabled;
+
+	private ApplicationContext applicationContext;
+
+	public TemplateWarmUp(TemplateEngine templateEngine, MessageSource messageSource, String prefix, String suffix,
+			List<String> directories, List<Locale> locales, boolean enabled) {
+		this.templateEngine = templateEngine;
+		this.messageSource = messageSource;
+		this.prefix = prefix;
+		this.suffix = suffix;
+		this.directories = directories;
+		this.locales = locales;
+		this.enabled = enabled;
+	}
+
+	@Override
+	public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
+		this.applicationContext = applicationContext;
+	}
+
+	public void warmUp() throws IOException {
+		if (!enabled) {
+			return;
+		}
+		long start = System.currentTimeMillis();
+		templateEngine.initialize();
+
+		int templates = 0;
+		for (String directory : directories) {
+			for (Resource resource : applicationContext.getResources(prefix + directory + "/*" + suffix)) {
+				String fileName = resource.getFilename();
+				String templateName = directory + "/" + fileName.substring(0, fileName.length() - suffix.length());
+				templateEngine.getTemplateRepository().getTemplate(
+						new TemplateProcessingParameters(templateEngine.getConfiguration(), templateName, new Context(locales.get(0))));
+				templates++;
+			}
+		}
+
+		//The translations are loaded per locale the first time a message is looked up
+		for (Locale locale : locales) {
+			messageSource.getMessage("warmUp", null, "", locale);
+		}
+
+		logger.info("Parsed " + templates + " templates and loaded the translations for " + locales + " in "
+				+ (System.currentTimeMillis() - start) + " ms");
+	}
+}
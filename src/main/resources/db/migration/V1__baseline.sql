@@ -0,0 +1,71 @@
+-- The schema as Hibernate used to create it with hbm2ddl.auto=update.
+-- Databases created that way already have these tables, so nothing is created twice. Tables of older versions
+-- are completed below.
+
+CREATE TABLE IF NOT EXISTS CANDIDATE (
+    ID INTEGER AUTO_INCREMENT PRIMARY KEY,
+    CITY VARCHAR(255) NOT NULL,
+    EMAIL VARCHAR(255) NOT NULL,
+    FIRSTNAME VARCHAR(255) NOT NULL,
+    LASTNAME VARCHAR(255) NOT NULL,
+    PHONEFIX VARCHAR(255),
+    PHONEMOBILE VARCHAR(255),
+    PLZ INTEGER NOT NULL,
+    STREET VARCHAR(255) NOT NULL,
+    TITLE VARCHAR(255)
+);
+
+CREATE TABLE IF NOT EXISTS SKILLS (
+    ID INTEGER AUTO_INCREMENT PRIMARY KEY,
+    CANCELATIONPERIOD VARCHAR(255),
+    CURRENTPOSITION BOOLEAN,
+    DEGREE VARCHAR(255) NOT NULL,
+    ENDDATEEDUCATION TIMESTAMP,
+    ENDDATEEXPERIENCE TIMESTAMP,
+    INSTITUTION VARCHAR(255) NOT NULL,
+    JOBFIELD VARCHAR(255),
+    POSITION VARCHAR(255),
+    PROSPECTIVEEND BOOLEAN,
+    STARTDATEEDUCATION TIMESTAMP,
+    STARTDATEEXPERIENCE TIMESTAMP,
+    TOPIC VARCHAR(255) NOT NULL,
+    CANDIDATE_ID INTEGER,
+    FOREIGN KEY (CANDIDATE_ID) REFERENCES CANDIDATE(ID)
+);
+
+CREATE TABLE IF NOT EXISTS DOCUMENT (
+    ID INTEGER AUTO_INCREMENT PRIMARY KEY,
+    CONTENTHASH VARCHAR(64) NOT NULL,
+    CONTENTLENGTH BIGINT,
+    CONTENTTYPE VARCHAR(255),
+    NAME VARCHAR(255) NOT NULL,
+    PAGECOUNT INTEGER,
+    UPLOADEDAT TIMESTAMP,
+    CANDIDATE_ID INTEGER NOT NULL,
+    FOREIGN KEY (CANDIDATE_ID) REFERENCES CANDIDATE(ID)
+);
+
+-- Databases from before the content store have DOCUMENT without these columns, and the content in the column CONTENT.
+-- The hash stays empty until the DocumentContentMigration (V3) has moved the content into the store.
+ALTER TABLE DOCUMENT ADD COLUMN IF NOT EXISTS CONTENTHASH VARCHAR(64);
+ALTER TABLE DOCUMENT ADD COLUMN IF NOT EXISTS CONTENTLENGTH BIGINT;
+ALTER TABLE DOCUMENT ADD COLUMN IF NOT EXISTS CONTENTTYPE VARCHAR(255);
+ALTER TABLE DOCUMENT ADD COLUMN IF NOT EXISTS PAGECOUNT INTEGER;
+ALTER TABLE DOCUMENT ADD COLUMN IF NOT EXISTS UPLOADEDAT TIMESTAMP;
+
+CREATE TABLE IF NOT EXISTS LETTEROFMOTIVATION (
+    ID INTEGER AUTO_INCREMENT PRIMARY KEY,
+    CONTENT VARBINARY(65536) NOT NULL,
+    CONTENTHASH VARCHAR(64) NOT NULL,
+    SAVEDAT TIMESTAMP,
+    CANDIDATE_ID INTEGER NOT NULL UNIQUE,
+    FOREIGN KEY (CANDIDATE_ID) REFERENCES CANDIDATE(ID)
+);
+
+-- Used by the jdbc wizard store
+CREATE TABLE IF NOT EXISTS WIZARD_STATE (
+    TOKEN VARCHAR(64) PRIMARY KEY,
+    REVISION BIGINT NOT NULL,
+    DRAFT VARBINARY NOT NULL,
+    SAVED_AT TIMESTAMP NOT NULL
+);
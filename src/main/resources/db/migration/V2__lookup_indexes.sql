@@ -0,0 +1,16 @@
+-- One index per lookup path, instead of relying on the ones created for the foreign keys.
+
+-- Documents of a candidate in upload order: the documents and submit pages, deleting and cancelling
+CREATE INDEX IF NOT EXISTS IDX_DOCUMENT_CANDIDATE ON DOCUMENT (CANDIDATE_ID, ID);
+
+-- Page counts are set by content hash once a document was analysed
+CREATE INDEX IF NOT EXISTS IDX_DOCUMENT_CONTENTHASH ON DOCUMENT (CONTENTHASH);
+
+-- Letters of motivation saved as documents by earlier versions are searched by name at startup
+CREATE INDEX IF NOT EXISTS IDX_DOCUMENT_NAME ON DOCUMENT (NAME);
+
+-- Skills are deleted by candidate when an application is cancelled
+CREATE INDEX IF NOT EXISTS IDX_SKILLS_CANDIDATE ON SKILLS (CANDIDATE_ID);
+
+-- Expired wizard states are purged by age
+CREATE INDEX IF NOT EXISTS IDX_WIZARD_STATE_SAVED_AT ON WIZARD_STATE (SAVED_AT);
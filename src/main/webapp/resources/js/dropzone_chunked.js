@@ -0,0 +1,179 @@
+;(function(){
+	//Makes Dropzone send every file in chunks to <url>/chunked (see FrontendController.uploadChunk),
+	//a few chunks at a time. A chunk which fails is sent again after a pause, the chunks which arrived are kept.
+	//When the server is busy (503, see UploadAdmissionFilter) it waits as long as the Retry-After header says.
+	//The ID of an upload is remembered in the browser, so a file dropped again after the connection or the page was lost
+	//only sends the chunks still missing. Browsers which can't slice files still upload them in one request.
+	var PARALLEL_CHUNKS = 3;
+	var MAX_ATTEMPTS = 5;
+	var MAX_BUSY_RETRIES = 60;
+	var RETRY_DELAY_MILLIS = 2000;
+	var STORAGE_PREFIX = "recruiter.upload.";
+
+	var slice = window.Blob && (Blob.prototype.slice || Blob.prototype.webkitSlice || Blob.prototype.mozSlice);
+	var uploadInOneRequest = Dropzone.prototype.uploadFiles;
+
+	Dropzone.prototype.uploadFiles = function(files) {
+		if (files.length !== 1 || !slice || !window.JSON) {
+			return uploadInOneRequest.call(this, files);
+		}
+		uploadInChunks(this, files[0]);
+	};
+
+	function uploadInChunks(dropzone, file) {
+		var url = dropzone.options.url + "/chunked";
+		var key = STORAGE_PREFIX + file.name + "/" + file.size + "/" + (file.lastModifiedDate ? file.lastModifiedDate.getTime() : "");
+		var id = load(key);
+
+		var begin = function() {
+			var params = "name=" + encodeURIComponent(file.name) + "&size=" + file.size + "&type=" + encodeURIComponent(file.type || "");
+			file.xhr = send("POST", url, params, "application/x-www-form-urlencoded", function(status, response) {
+				if (status !== 200) {
+					return failed(dropzone, file, status);
+				}
+				store(key, response.id);
+				var missing = [];
+				for (var i = 0; i < response.chunkCount; i++) {
+					missing.push(i);
+				}
+				sendChunks(dropzone, file, url + "/" + response.id, response.chunkSize, missing, key);
+			});
+		};
+
+		if (!id) {
+			return begin();
+		}
+		//Resumes an upload the server still knows, otherwise it starts over
+		file.xhr = send("GET", url + "/" + id, null, null, function(status, response) {
+			if (status !== 200) {
+				store(key, null);
+				return begin();
+			}
+			sendChunks(dropzone, file, url + "/" + id, response.chunkSize, response.missing, key);
+		});
+	}
+
+	function sendChunks(dropzone, file, uploadUrl, chunkSize, missing, key) {
+		var pending = missing.slice(0);
+		var attempts = {};
+		var busy = {};
+		var inFlight = 0;
+		var finished = false;
+
+		//The chunks which arrived before a resume count as sent
+		var sentBytes = file.size;
+		for (var i = 0; i < missing.length; i++) {
+			sentBytes -= Math.min(chunkSize, file.size - missing[i] * chunkSize);
+		}
+
+		var progress = function(bytes) {
+			sentBytes += bytes;
+			file.upload = { progress: 100 * sentBytes / Math.max(1, file.size), total: file.size, bytesSent: sentBytes };
+			dropzone.emit("uploadprogress", file, file.upload.progress, sentBytes);
+		};
+
+		var next = function() {
+			while (!finished && inFlight < PARALLEL_CHUNKS && pending.length > 0) {
+				sendChunk(pending.shift());
+			}
+		};
+
+		var retry = function(index, delayMillis) {
+			setTimeout(function() {
+				pending.push(index);
+				next();
+			}, delayMillis);
+		};
+
+		var sendChunk = function(index) {
+			var start = index * chunkSize;
+			var chunk = slice.call(file, start, Math.min(file.size, start + chunkSize));
+			inFlight++;
+			file.xhr = send("PUT", uploadUrl + "/" + index, chunk, "application/octet-stream", function(status, response, xhr) {
+				inFlight--;
+				if (finished || file.status === Dropzone.CANCELED) {
+					return;
+				}
+				if (status === 200) {
+					progress(chunk.size);
+					if (response.complete) {
+						finished = true;
+						store(key, null);
+						return dropzone._finished([file], response);
+					}
+					return next();
+				}
+				//A busy server tells when to come back, lost connections and server errors are worth a few more tries
+				var retryAfter = status === 503 ? parseInt(xhr.getResponseHeader("Retry-After"), 10) : NaN;
+				if (!isNaN(retryAfter) && (busy[index] = (busy[index] || 0) + 1) < MAX_BUSY_RETRIES) {
+					return retry(index, retryAfter * 1000);
+				}
+				attempts[index] = (attempts[index] || 0) + 1;
+				if ((status === 0 || status >= 500) && attempts[index] < MAX_ATTEMPTS) {
+					return retry(index, RETRY_DELAY_MILLIS * attempts[index]);
+				}
+				finished = true;
+				if (status !== 0 && status < 500) {
+					store(key, null);
+				}
+				failed(dropzone, file, status);
+			});
+		};
+
+		progress(0);
+		next();
+	}
+
+	function send(method, url, body, contentType, callback) {
+		var xhr = new XMLHttpRequest();
+		xhr.open(method, url, true);
+		xhr.setRequestHeader("Accept", "application/json");
+		xhr.setRequestHeader("X-Requested-With", "XMLHttpRequest");
+		if (contentType) {
+			xhr.setRequestHeader("Content-Type", contentType);
+		}
+		xhr.onload = function() {
+			var response = null;
+			if (xhr.status === 200) {
+				try {
+					response = JSON.parse(xhr.responseText);
+				} catch (e) {
+					return callback(500, null, xhr);
+				}
+			}
+			callback(xhr.status, response, xhr);
+		};
+		xhr.onerror = function() {
+			callback(0, null, xhr);
+		};
+		xhr.send(body);
+		return xhr;
+	}
+
+	function failed(dropzone, file, status) {
+		dropzone._errorProcessing([file], dropzone.options.dictResponseError.replace("{{statusCode}}", status));
+	}
+
+	function load(key) {
+		try {
+			return window.localStorage ? localStorage.getItem(key) : null;
+		} catch (e) {
+			return null;
+		}
+	}
+
+	function store(key, value) {
+		try {
+			if (!window.localStorage) {
+				return;
+			}
+			if (value === null) {
+				localStorage.removeItem(key);
+			} else {
+				localStorage.setItem(key, value);
+			}
+		} catch (e) {
+			//Private browsing, the upload just can't be resumed after a reload
+		}
+	}
+})();
@@ -0,0 +1,173 @@
+package ch.itraum.recruiter.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import ch.itraum.recruiter.metrics.MetricsRegistry;
+import ch.itraum.recruiter.thumbnail.Images;
+import ch.itraum.recruiter.thumbnail.JPedalRenderer;
+import ch.itraum.recruiter.thumbnail.PdfBoxRenderer;
+import ch.itraum.recruiter.thumbnail.PdfRenderer;
+import ch.itraum.recruiter.thumbnail.RasterBudget;
+import ch.itraum.recruiter.thumbnail.RenderablePdf;
+
+//Compares the PDF engines on a corpus of documents: latency per document, allocated bytes and peak memory.
+//Usage: RendererBenchmark [corpus directory|-] [pdfbox|jpedal] [iterations] [width]
+//Without a corpus directory a few synthetic CVs are generated. Without an engine every engine is run
+//in its own JVM, otherwise the peak memory of one engine would include the other one.
+public class RendererBenchmark {
+
+	private static final int WARMUP_ITERATIONS = 3;
+
+	private static final File SCRATCH_DIRECTORY = new File(System.getProperty("java.io.tmpdir"), "recruiter-benchmark");
+
+	public static void main(String[] args) throws Exception {
+		String corpus = args.length > 0 ? args[0] : "-";
+		String engine = args.length > 1 ? args[1] : null;
+		int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+		int width = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+
+		if (engine == null) {
+			for (String each : Arrays.asList(PdfBoxRenderer.ENGINE, JPedalRenderer.ENGINE)) {
+				forkEngine(corpus, each, iterations, width);
+			}
+			return;
+		}
+
+		List<byte[]> documents = "-".equals(corpus) ? SyntheticCvs.create(4) : loadDocuments(new File(corpus));
+		List<File> files = writeDocuments(documents);
+		//A budget that never limits, the engines are compared at the requested width
+		RasterBudget rasterBudget = new RasterBudget(Long.MAX_VALUE / 8, Long.MAX_VALUE, 60000, new MetricsRegistry());
+		PdfRenderer renderer = PdfBoxRenderer.ENGINE.equals(engine) ? new PdfBoxRenderer(SCRATCH_DIRECTORY, rasterBudget)
+				: new JPedalRenderer(1, 60000, rasterBudget);
+
+		for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+			renderAll(renderer, files, width);
+		}
+
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		long allocatedBefore = allocatedBytes(threads);
+		List<Long> latencies = new ArrayList<Long>();
+		for (int i = 0; i < iterations; i++) {
+			for (File document : files) {
+				long start = System.nanoTime();
+				render(renderer, document, width);
+				latencies.add(System.nanoTime() - start);
+			}
+		}
+		long allocatedAfter = allocatedBytes(threads);
+		Collections.sort(latencies);
+
+		System.out.println(String.format("%-7s documents=%d renders=%d p50=%.1fms p90=%.1fms p99=%.1fms max=%.1fms alloc/render=%s peak=%s",
+				engine, documents.size(), latencies.size(), percentile(latencies, 50), percentile(latencies, 90),
+				percentile(latencies, 99), latencies.get(latencies.size() - 1) / 1e6,
+				allocatedBefore < 0 ? "n/a" : kiloBytes((allocatedAfter - allocatedBefore) / latencies.size()), peakMemory()));
+	}
+
+	private static void forkEngine(String corpus, String engine, int iterations, int width) throws Exception {
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		List<String> command = new ArrayList<String>(Arrays.asList(java, "-Djava.awt.headless=true", "-cp",
+				System.getProperty("java.class.path"), RendererBenchmark.class.getName(), corpus, engine,
+				String.valueOf(iterations), String.valueOf(width)));
+		Process process = new ProcessBuilder(command).inheritIO().start();
+		if (process.waitFor() != 0) {
+			System.out.println(engine + " failed with exit code " + process.exitValue());
+		}
+	}
+
+	private static void renderAll(PdfRenderer renderer, List<File> documents, int width) throws IOException {
+		for (File document : documents) {
+			render(renderer, document, width);
+		}
+	}
+
+	//The same work as a job after an upload: first page as PNG and the page count
+	private static void render(PdfRenderer renderer, File document, int width) throws IOException {
+		RenderablePdf pdf = renderer.open(document);
+		try {
+			pdf.getPageCount();
+			Images.toPng(pdf.renderPage(0, width));
+		} finally {
+			pdf.close();
+		}
+	}
+
+	//The renderers read from files like they do from the DocumentContentStore
+	private static List<File> writeDocuments(List<byte[]> documents) throws IOException {
+		List<File> files = new ArrayList<File>();
+		for (byte[] document : documents) {
+			File file = File.createTempFile("benchmark-", ".pdf");
+			file.deleteOnExit();
+			Files.write(file.toPath(), document);
+			files.add(file);
+		}
+		return files;
+	}
+
+	private static List<byte[]> loadDocuments(File directory) throws IOException {
+		List<byte[]> documents = new ArrayList<byte[]>();
+		File[] files = directory.listFiles();
+		if (files != null) {
+			Arrays.sort(files);
+			for (File file : files) {
+				if (file.getName().toLowerCase().endsWith(".pdf")) {
+					documents.add(Files.readAllBytes(file.toPath()));
+				}
+			}
+		}
+		if (documents.isEmpty()) {
+			throw new IllegalArgumentException("No PDF files in " + directory);
+		}
+		return documents;
+	}
+
+	//Bytes allocated by this thread so far, -1 if the JVM doesn't tell
+	private static long allocatedBytes(ThreadMXBean threads) {
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+			if (sunThreads.isThreadAllocatedMemorySupported()) {
+				sunThreads.setThreadAllocatedMemoryEnabled(true);
+				return sunThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+
+	//The peak resident set size on Linux, elsewhere the sum of the peaks of the heap pools
+	private static String peakMemory() throws IOException {
+		File status = new File("/proc/self/status");
+		if (status.exists()) {
+			for (String line : Files.readAllLines(status.toPath(), StandardCharsets.US_ASCII)) {
+				if (line.startsWith("VmHWM:")) {
+					return "rss " + line.substring("VmHWM:".length()).trim();
+				}
+			}
+		}
+		long heapPeak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+				heapPeak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return "heap " + kiloBytes(heapPeak);
+	}
+
+	private static double percentile(List<Long> sortedNanos, int percent) {
+		int index = Math.min(sortedNanos.size() - 1, (int) Math.ceil(sortedNanos.size() * percent / 100.0) - 1);
+		return sortedNanos.get(Math.max(0, index)) / 1e6;
+	}
+
+	private static String kiloBytes(long bytes) {
+		return (bytes / 1024) + " kB";
+	}
+}
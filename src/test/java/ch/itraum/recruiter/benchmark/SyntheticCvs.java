@@ -0,0 +1,53 @@
+package ch.itraum.recruiter.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.edit.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+
+//Generates PDFs looking roughly like the CVs candidates upload, for benchmarks which have no real documents
+public final class SyntheticCvs {
+
+	private SyntheticCvs() {
+	}
+
+	//CVs of one to the given number of pages with a good amount of text
+	public static List<byte[]> create(int maxPages) throws Exception {
+		List<byte[]> documents = new ArrayList<byte[]>();
+		for (int pages = 1; pages <= maxPages; pages++) {
+			documents.add(create(pages, pages));
+		}
+		return documents;
+	}
+
+	public static byte[] create(int pages, int seed) throws Exception {
+		PDDocument pdf = new PDDocument();
+		try {
+			for (int page = 0; page < pages; page++) {
+				PDPage pdfPage = new PDPage(PDPage.PAGE_SIZE_A4);
+				pdf.addPage(pdfPage);
+				PDPageContentStream content = new PDPageContentStream(pdf, pdfPage);
+				content.beginText();
+				content.setFont(PDType1Font.HELVETICA_BOLD, 16);
+				content.moveTextPositionByAmount(60, 780);
+				content.drawString("Curriculum Vitae " + seed + ", page " + (page + 1));
+				content.setFont(PDType1Font.HELVETICA, 10);
+				for (int line = 0; line < 55; line++) {
+					content.moveTextPositionByAmount(0, -13);
+					content.drawString("2009 - 2013  Software Engineer, worked on project number " + line + " with Java, SQL and PDFs");
+				}
+				content.endText();
+				content.close();
+			}
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			pdf.save(outputStream);
+			return outputStream.toByteArray();
+		} finally {
+			pdf.close();
+		}
+	}
+}
@@ -0,0 +1,465 @@
+package ch.itraum.recruiter.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.catalina.startup.Tomcat;
+import org.springframework.util.FileSystemUtils;
+
+import ch.itraum.recruiter.config.WebConfig;
+import ch.itraum.recruiter.tomcat.TomcatEmbedded;
+
+//Drives concurrent applicants through the whole wizard of the application running in an embedded Tomcat,
+//and reports latency per step, throughput, errors and what the JVM went through.
+//The application gets a free port and its own H2 database and directories, which are deleted afterwards.
+//Usage: WizardLoadGenerator [applicants] [applications per applicant] [uploads per application] [cancel %] [think time ms]
+//Every applicant first runs one application which isn't recorded, so the numbers are those of a warm application.
+//The load generator runs in the same JVM as the application, the heap and GC figures include both.
+public class WizardLoadGenerator {
+
+	//Uploads of one applicant running at the same time, like Dropzone.js does it
+	private static final int PARALLEL_UPLOADS = 2;
+
+	//Different CVs, so the DocumentContentStore doesn't store all uploads as one
+	private static final int DISTINCT_CVS = 32;
+
+	private static final String[] STEPS = { "GET /", "POST /", "GET /candidate", "POST /candidate", "GET /skills", "POST /skills",
+			"POST /upload", "GET /documents", "GET /letterOfMotivation", "POST /letterOfMotivation", "GET /submitApplication",
+			"POST /submitApplication", "GET /thankYou", "GET /confirmCancellation" };
+
+	private final String baseUrl;
+
+	private final int uploadsPerApplication;
+
+	private final int cancelPercent;
+
+	private final long thinkTimeMillis;
+
+	private final List<byte[]> cvs;
+
+	private final ExecutorService uploadExecutor;
+
+	private final Map<String, Step> steps = new LinkedHashMap<String, Step>();
+
+	private final AtomicLong submitted = new AtomicLong();
+
+	private final AtomicLong cancelled = new AtomicLong();
+
+	private final AtomicLong failed = new AtomicLong();
+
+	private volatile boolean recording;
+
+	public WizardLoadGenerator(String baseUrl, int applicants, int uploadsPerApplication, int cancelPercent, long thinkTimeMillis,
+			List<byte[]> cvs) {
+		this.baseUrl = baseUrl;
+		this.uploadsPerApplication = uploadsPerApplication;
+		this.cancelPercent = cancelPercent;
+		this.thinkTimeMillis = thinkTimeMillis;
+		this.cvs = cvs;
+		this.uploadExecutor = Executors.newFixedThreadPool(applicants * PARALLEL_UPLOADS);
+		for (String step : STEPS) {
+			steps.put(step, new Step());
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int applicants = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+		int applications = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		int uploads = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+		int cancelPercent = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+		long thinkTimeMillis = args.length > 4 ? Long.parseLong(args[4]) : 0;
+
+		File directory = Files.createTempDirectory("recruiter-load").toFile();
+		System.setProperty("recruiter.db.url", "jdbc:h2:" + new File(directory, "recruiter").getAbsolutePath());
+		System.setProperty("recruiter.storage.directory", new File(directory, "documents").getAbsolutePath());
+		System.setProperty("recruiter.thumbnails.directory", new File(directory, "thumbnails").getAbsolutePath());
+		System.setProperty("recruiter.render.textDirectory", new File(directory, "text").getAbsolutePath());
+		//Capacity is planned for the live system, unless another profile is asked for
+		if (System.getProperty("spring.profiles.active") == null) {
+			System.setProperty("spring.profiles.active", WebConfig.PRODUCTION_PROFILE);
+		}
+		//HttpURLConnection keeps only 5 connections per server alive by default
+		System.setProperty("http.maxConnections", String.valueOf(applicants * (PARALLEL_UPLOADS + 1)));
+
+		List<byte[]> cvs = new ArrayList<byte[]>();
+		for (int i = 0; i < DISTINCT_CVS; i++) {
+			cvs.add(SyntheticCvs.create(1 + i % 4, i));
+		}
+
+		Tomcat tomcat = TomcatEmbedded.start(0, new File(directory, "tomcat"));
+		try {
+			String baseUrl = "http://localhost:" + TomcatEmbedded.getPort(tomcat);
+			System.out.println("Application started at " + baseUrl + ", data in " + directory);
+			new WizardLoadGenerator(baseUrl, applicants, uploads, cancelPercent, thinkTimeMillis, cvs).run(applicants, applications);
+		} finally {
+			tomcat.stop();
+			tomcat.destroy();
+			FileSystemUtils.deleteRecursively(directory);
+		}
+	}
+
+	public void run(int applicants, final int applications) throws Exception {
+		ExecutorService applicantExecutor = Executors.newFixedThreadPool(applicants);
+		try {
+			runApplicants(applicantExecutor, applicants, 1);
+			System.out.println("Warm-up done, " + applicants + " applicants with " + applications + " applications each");
+
+			recording = true;
+			long gcCountBefore = gcCount();
+			long gcMillisBefore = gcMillis();
+			resetHeapPeaks();
+			long startedAt = System.nanoTime();
+			runApplicants(applicantExecutor, applicants, applications);
+			long elapsedNanos = System.nanoTime() - startedAt;
+			recording = false;
+
+			report(elapsedNanos, gcCount() - gcCountBefore, gcMillis() - gcMillisBefore);
+		} finally {
+			applicantExecutor.shutdownNow();
+			uploadExecutor.shutdownNow();
+		}
+	}
+
+	private void runApplicants(ExecutorService applicantExecutor, int applicants, final int applications) throws InterruptedException {
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (int i = 0; i < applicants; i++) {
+			final int applicant = i;
+			futures.add(applicantExecutor.submit(new Runnable() {
+				@Override
+				public void run() {
+					for (int application = 0; application < applications; application++) {
+						apply(new Applicant(), applicant * 1000 + application);
+					}
+				}
+			}));
+		}
+		for (Future<?> future : futures) {
+			try {
+				future.get();
+			} catch (ExecutionException e) {
+				throw new IllegalStateException("Applicant crashed", e.getCause());
+			}
+		}
+	}
+
+	//One application from the agreement up to the submission or cancellation. A failed step ends the application.
+	private void apply(final Applicant applicant, int number) {
+		try {
+			applicant.request("GET /", "/", null, null, 200);
+			applicant.post("POST /", "/", form("buttonPressed", "agreement_Accept"), 302);
+			think();
+			applicant.request("GET /candidate", "/candidate", null, null, 200);
+			applicant.post("POST /candidate", "/candidate", form("buttonPressed", "contactData_Forward", "title", "Dr.", "firstName", "Hans",
+					"lastName", "Muster " + number, "street", "Bahnhofstrasse 1", "plz", "8001", "city", "Zurich", "phoneFix", "+41 44 123 45 67",
+					"email", "hans.muster." + number + "@example.com"), 302);
+			think();
+			applicant.request("GET /skills", "/skills", null, null, 200);
+			applicant.post("POST /skills", "/skills", form("buttonPressed", "contactSkills_Forward", "institution", "ETH", "topic",
+					"Computer Science", "degree", "MSc", "startDateEducationMonth", "8", "startDateEducationYear", "2005",
+					"endDateEducationMonth", "6", "endDateEducationYear", "2010", "prospectiveEnd", "false", "position", "Developer",
+					"jobField", "IT", "cancelationPeriod", "3 months", "startDateExperienceMonth", "0", "startDateExperienceYear", "2011",
+					"endDateExperienceMonth", "0", "endDateExperienceYear", "2013", "currentPosition", "false", "hasNoExperience", "false"), 302);
+			think();
+			upload(applicant, number);
+			applicant.request("GET /documents", "/documents", null, null, 200);
+			think();
+			applicant.request("GET /letterOfMotivation", "/letterOfMotivation", null, null, 200);
+			applicant.post("POST /letterOfMotivation", "/letterOfMotivation", form("buttonPressed", "letterOfMotivation_Forward",
+					"textFieldLetterOfMotivation", "Sehr geehrte Damen und Herren, ich bewerbe mich als Nummer " + number), 302);
+			think();
+			applicant.request("GET /submitApplication", "/submitApplication", null, null, 200);
+			if ((number * 7919) % 100 < cancelPercent) {
+				applicant.request("GET /confirmCancellation", "/confirmCancellation", null, null, 200);
+				count(cancelled);
+			} else {
+				applicant.post("POST /submitApplication", "/submitApplication", form("buttonPressed", "submitApplication_Submit"), 302);
+				applicant.request("GET /thankYou", "/thankYou", null, null, 200);
+				count(submitted);
+			}
+		} catch (IOException e) {
+			count(failed);
+		}
+	}
+
+	//The uploads of an application, PARALLEL_UPLOADS at a time
+	private void upload(final Applicant applicant, int number) throws IOException {
+		List<Callable<Void>> uploads = new ArrayList<Callable<Void>>();
+		for (int i = 0; i < uploadsPerApplication; i++) {
+			final byte[] cv = cvs.get((number * 31 + i) % cvs.size());
+			final String fileName = "cv-" + number + "-" + i + ".pdf";
+			uploads.add(new Callable<Void>() {
+				@Override
+				public Void call() throws IOException {
+					applicant.upload(fileName, cv);
+					return null;
+				}
+			});
+		}
+		for (int first = 0; first < uploads.size(); first += PARALLEL_UPLOADS) {
+			List<Future<Void>> running = new ArrayList<Future<Void>>();
+			for (Callable<Void> upload : uploads.subList(first, Math.min(uploads.size(), first + PARALLEL_UPLOADS))) {
+				running.add(uploadExecutor.submit(upload));
+			}
+			IOException failure = null;
+			for (Future<Void> future : running) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					failure = e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while uploading", e);
+				}
+			}
+			if (failure != null) {
+				throw failure;
+			}
+		}
+	}
+
+	private void think() {
+		if (thinkTimeMillis > 0) {
+			try {
+				Thread.sleep(thinkTimeMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private void count(AtomicLong applications) {
+		if (recording) {
+			applications.incrementAndGet();
+		}
+	}
+
+	private void report(long elapsedNanos, long gcCount, long gcMillis) {
+		double seconds = elapsedNanos / 1e9;
+		long requests = 0;
+		long errors = 0;
+		System.out.println();
+		System.out.println(String.format("%-28s %8s %7s %9s %9s %9s %9s", "step", "requests", "errors", "p50 ms", "p95 ms", "p99 ms", "max ms"));
+		for (Map.Entry<String, Step> entry : steps.entrySet()) {
+			List<Long> latencies = entry.getValue().sortedLatencies();
+			long stepErrors = entry.getValue().errors.get();
+			requests += latencies.size();
+			errors += stepErrors;
+			if (latencies.isEmpty()) {
+				continue;
+			}
+			System.out.println(String.format("%-28s %8d %7d %9.1f %9.1f %9.1f %9.1f", entry.getKey(), latencies.size(), stepErrors,
+					percentile(latencies, 50), percentile(latencies, 95), percentile(latencies, 99), latencies.get(latencies.size() - 1) / 1e6));
+		}
+		System.out.println();
+		System.out.println(String.format("duration %.1f s, %d requests, %.1f requests/s, error rate %.2f %%", seconds, requests, requests / seconds,
+				requests > 0 ? 100.0 * errors / requests : 0));
+		System.out.println(String.format("applications: %d submitted, %d cancelled, %d failed, %.2f applications/s", submitted.get(), cancelled.get(),
+				failed.get(), (submitted.get() + cancelled.get()) / seconds));
+		System.out.println(String.format("heap: %d MB used now, %d MB peak, %d MB max; gc: %d collections, %d ms (%.1f %% of the time)",
+				megaBytes(Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory()), megaBytes(heapPeak()),
+				megaBytes(Runtime.getRuntime().maxMemory()), gcCount, gcMillis, 100.0 * gcMillis / (seconds * 1000)));
+	}
+
+	private static long gcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, collector.getCollectionCount());
+		}
+		return count;
+	}
+
+	private static long gcMillis() {
+		long millis = 0;
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			millis += Math.max(0, collector.getCollectionTime());
+		}
+		return millis;
+	}
+
+	private static void resetHeapPeaks() {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+
+	//The sum of the peaks of the heap pools, an upper bound of the heap used at any one time
+	private static long heapPeak() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+
+	private static long megaBytes(long bytes) {
+		return bytes / (1024 * 1024);
+	}
+
+	private static double percentile(List<Long> sortedNanos, int percent) {
+		int index = Math.min(sortedNanos.size() - 1, (int) Math.ceil(sortedNanos.size() * percent / 100.0) - 1);
+		return sortedNanos.get(Math.max(0, index)) / 1e6;
+	}
+
+	private static byte[] form(String... namesAndValues) throws IOException {
+		StringBuilder form = new StringBuilder();
+		for (int i = 0; i < namesAndValues.length; i += 2) {
+			if (form.length() > 0) {
+				form.append('&');
+			}
+			form.append(namesAndValues[i]).append('=').append(URLEncoder.encode(namesAndValues[i + 1], "UTF-8"));
+		}
+		return form.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	//Latencies and errors of one step
+	private static class Step {
+
+		private final List<Long> latencies = Collections.synchronizedList(new ArrayList<Long>());
+
+		private final AtomicLong errors = new AtomicLong();
+
+		public List<Long> sortedLatencies() {
+			List<Long> sorted;
+			synchronized (latencies) {
+				sorted = new ArrayList<Long>(latencies);
+			}
+			Collections.sort(sorted);
+			return sorted;
+		}
+	}
+
+	//A browser: keeps the cookies of the application and doesn't follow redirects, the next step requests the target
+	private class Applicant {
+
+		private final Map<String, String> cookies = new ConcurrentHashMap<String, String>();
+
+		public void post(String step, String path, byte[] form, int expectedStatus) throws IOException {
+			request(step, path, "application/x-www-form-urlencoded; charset=UTF-8", form, expectedStatus);
+		}
+
+		public void upload(String fileName, byte[] content) throws IOException {
+			String boundary = "----recruiterLoad" + System.nanoTime();
+			ByteArrayOutputStream body = new ByteArrayOutputStream(content.length + 512);
+			body.write(("--" + boundary + "\r\nContent-Disposition: form-data; name=\"file\"; filename=\"" + fileName
+					+ "\"\r\nContent-Type: application/pdf\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+			body.write(content);
+			body.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+			request("POST /upload", "/upload", "multipart/form-data; boundary=" + boundary, body.toByteArray(), 200);
+		}
+
+		public void request(String step, String path, String contentType, byte[] body, int expectedStatus) throws IOException {
+			long startedAt = System.nanoTime();
+			int status;
+			try {
+				HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+				connection.setInstanceFollowRedirects(false);
+				connection.setRequestProperty("Cookie", cookieHeader());
+				if (body != null) {
+					connection.setRequestMethod("POST");
+					connection.setDoOutput(true);
+					connection.setRequestProperty("Content-Type", contentType);
+					connection.setFixedLengthStreamingMode(body.length);
+					OutputStream outputStream = connection.getOutputStream();
+					outputStream.write(body);
+					outputStream.close();
+				}
+				status = connection.getResponseCode();
+				rememberCookies(connection);
+				drain(status < 400 ? connection.getInputStream() : connection.getErrorStream());
+			} catch (IOException e) {
+				record(step, startedAt, false);
+				throw e;
+			}
+			record(step, startedAt, status == expectedStatus);
+			if (status != expectedStatus) {
+				throw new IOException(step + " answered " + status + " instead of " + expectedStatus);
+			}
+		}
+
+		private void record(String step, long startedAt, boolean successful) {
+			if (!recording) {
+				return;
+			}
+			Step statistics = steps.get(step);
+			statistics.latencies.add(System.nanoTime() - startedAt);
+			if (!successful) {
+				statistics.errors.incrementAndGet();
+			}
+		}
+
+		private String cookieHeader() {
+			StringBuilder header = new StringBuilder();
+			for (Map.Entry<String, String> cookie : cookies.entrySet()) {
+				if (header.length() > 0) {
+					header.append("; ");
+				}
+				header.append(cookie.getKey()).append('=').append(cookie.getValue());
+			}
+			return header.toString();
+		}
+
+		private void rememberCookies(HttpURLConnection connection) {
+			List<String> setCookies = connection.getHeaderFields().get("Set-Cookie");
+			if (setCookies == null) {
+				return;
+			}
+			for (String setCookie : setCookies) {
+				String nameAndValue = setCookie.split(";", 2)[0];
+				int equals = nameAndValue.indexOf('=');
+				if (equals <= 0) {
+					continue;
+				}
+				String name = nameAndValue.substring(0, equals).trim();
+				String value = nameAndValue.substring(equals + 1).trim();
+				if (value.isEmpty() || setCookie.toLowerCase().contains("max-age=0")) {
+					cookies.remove(name);
+				} else {
+					cookies.put(name, value);
+				}
+			}
+		}
+
+		//Reads the whole response, so the connection can be used again
+		private void drain(InputStream inputStream) throws IOException {
+			if (inputStream == null) {
+				return;
+			}
+			try {
+				byte[] buffer = new byte[8192];
+				while (inputStream.read(buffer) != -1) {
+					//Only the time counts
+				}
+			} finally {
+				inputStream.close();
+			}
+		}
+	}
+}
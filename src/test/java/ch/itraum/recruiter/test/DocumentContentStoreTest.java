@@ -0,0 +1,88 @@
+package ch.itraum.recruiter.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.util.FileCopyUtils;
+
+import ch.itraum.recruiter.storage.ContentReleaseListener;
+import ch.itraum.recruiter.storage.FileSystemDocumentContentStore;
+import ch.itraum.recruiter.storage.StoredContent;
+
+public class DocumentContentStoreTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private FileSystemDocumentContentStore store;
+
+	@Before
+	public void setup() throws Exception {
+		store = new FileSystemDocumentContentStore(new File(temporaryFolder.getRoot(), "store"));
+	}
+
+	@Test
+	public void testStoreAndRead() throws Exception {
+		StoredContent content = store.store(new ByteArrayInputStream("abc".getBytes("UTF-8")));
+
+		//SHA-256 of "abc"
+		assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", content.getHash());
+		assertEquals(3, content.getSize());
+		assertEquals("abc", new String(FileCopyUtils.copyToByteArray(store.open(content.getHash())), "UTF-8"));
+
+		ByteArrayOutputStream target = new ByteArrayOutputStream();
+		assertEquals(3, store.transferTo(content.getHash(), Channels.newChannel(target)));
+		assertEquals("abc", target.toString("UTF-8"));
+		assertEquals('b', store.map(content.getHash()).get(1));
+	}
+
+	@Test
+	public void testIdenticalContentIsKeptUntilTheLastReferenceIsReleased() throws Exception {
+		StoredContent first = store.store(new ByteArrayInputStream(new byte[] { 1, 2, 3 }));
+		StoredContent second = store.store(new ByteArrayInputStream(new byte[] { 1, 2, 3 }));
+		assertEquals(first.getHash(), second.getHash());
+
+		store.release(first.getHash());
+		assertTrue(store.exists(first.getHash()));
+
+		store.release(second.getHash());
+		assertFalse(store.exists(first.getHash()));
+	}
+
+	@Test
+	public void testListenersAreToldWhenTheContentIsDeleted() throws Exception {
+		final List<String> deleted = new ArrayList<String>();
+		store.addReleaseListener(new ContentReleaseListener() {
+			@Override
+			public void contentDeleted(String hash) {
+				deleted.add(hash);
+			}
+		});
+		StoredContent content = store.store(new ByteArrayInputStream(new byte[] { 4, 5, 6 }));
+		store.store(new ByteArrayInputStream(new byte[] { 4, 5, 6 }));
+
+		store.release(content.getHash());
+		assertTrue(deleted.isEmpty());
+
+		store.release(content.getHash());
+		assertEquals(Arrays.asList(content.getHash()), deleted);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRejectsHashesThatAreNoHashes() throws Exception {
+		store.open("../../etc/passwd");
+	}
+}
@@ -0,0 +1,133 @@
+package ch.itraum.recruiter.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import ch.itraum.recruiter.metrics.MetricsRegistry;
+import ch.itraum.recruiter.session.ApplicationDraft;
+import ch.itraum.recruiter.session.InMemoryWizardStateStore;
+import ch.itraum.recruiter.session.NearCacheWizardStateStore;
+
+public class NearCacheWizardStateStoreTest {
+
+	private static final String TOKEN = "0123456789abcdef0123456789abcdef";
+
+	private static final long EXPIRE_AFTER_MILLIS = 60000;
+
+	private final MetricsRegistry metricsRegistry = new MetricsRegistry();
+
+	//Stands in for the store the nodes share
+	private final CountingStore sharedStore = new CountingStore();
+
+	private NearCacheWizardStateStore store;
+
+	@After
+	public void tearDown() {
+		if (store != null) {
+			store.shutdown();
+		}
+	}
+
+	@Test
+	public void testSavesWithinTheWriteBehindTimeAreWrittenOnce() throws Exception {
+		store = new NearCacheWizardStateStore(sharedStore, 10, EXPIRE_AFTER_MILLIS, 100, metricsRegistry);
+
+		for (long revision = 1; revision <= 3; revision++) {
+			store.save(TOKEN, draft(revision));
+		}
+		assertEquals(0, sharedStore.saves.get());
+		//Not written yet, but this node has it
+		assertEquals(3, store.load(TOKEN, 3).getRevision());
+
+		waitForSaves(1);
+		Thread.sleep(200);
+		assertEquals(1, sharedStore.saves.get());
+		assertEquals(3, sharedStore.load(TOKEN, 3).getRevision());
+		assertEquals(Long.valueOf(2), metricsRegistry.snapshot().get("wizard.nearCache.writes.coalesced"));
+	}
+
+	@Test
+	public void testAnOlderCachedRevisionIsReadAgainFromTheSharedStore() throws Exception {
+		store = new NearCacheWizardStateStore(sharedStore, 10, EXPIRE_AFTER_MILLIS, 100, metricsRegistry);
+		store.save(TOKEN, draft(1));
+		waitForSaves(1);
+		assertEquals(1, store.load(TOKEN, 1).getRevision());
+
+		//Another node saved revision 2, which the applicant saw
+		sharedStore.save(TOKEN, draft(2));
+		assertEquals(2, store.load(TOKEN, 2).getRevision());
+
+		//Revision 3 isn't written by the other node yet, the load waits for it
+		new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException e) {
+					return;
+				}
+				sharedStore.save(TOKEN, draft(3));
+			}
+		}.start();
+		assertEquals(3, store.load(TOKEN, 3).getRevision());
+		assertEquals(Long.valueOf(0), metricsRegistry.snapshot().get("wizard.nearCache.stale"));
+	}
+
+	@Test
+	public void testARemovedDraftIsNotWrittenAfterwards() throws Exception {
+		store = new NearCacheWizardStateStore(sharedStore, 10, EXPIRE_AFTER_MILLIS, 100, metricsRegistry);
+		store.save(TOKEN, draft(1));
+		store.remove(TOKEN);
+
+		Thread.sleep(300);
+		assertEquals(0, sharedStore.saves.get());
+		assertNull(sharedStore.load(TOKEN, 0));
+		assertNull(store.load(TOKEN, 0));
+	}
+
+	@Test
+	public void testShutdownWritesTheDraftsNotWrittenYet() throws Exception {
+		store = new NearCacheWizardStateStore(sharedStore, 10, EXPIRE_AFTER_MILLIS, 60000, metricsRegistry);
+		store.save(TOKEN, draft(1));
+		store.save(TOKEN, draft(2));
+		assertEquals(0, sharedStore.saves.get());
+
+		store.shutdown();
+		assertEquals(1, sharedStore.saves.get());
+		assertEquals(2, sharedStore.load(TOKEN, 2).getRevision());
+	}
+
+	private void waitForSaves(int saves) throws InterruptedException {
+		long waitUntil = System.currentTimeMillis() + 5000;
+		while (sharedStore.saves.get() < saves && System.currentTimeMillis() < waitUntil) {
+			Thread.sleep(10);
+		}
+		assertEquals(saves, sharedStore.saves.get());
+	}
+
+	private static ApplicationDraft draft(long revision) {
+		ApplicationDraft draft = new ApplicationDraft();
+		draft.setRevision(revision);
+		return draft;
+	}
+
+	private static class CountingStore extends InMemoryWizardStateStore {
+
+		private final AtomicInteger saves = new AtomicInteger();
+
+		private CountingStore() {
+			super(EXPIRE_AFTER_MILLIS);
+		}
+
+		@Override
+		public void save(String token, ApplicationDraft draft) {
+			saves.incrementAndGet();
+			super.save(token, draft);
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package ch.itraum.recruiter.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+
+import java.util.Collections;
+
+import javax.servlet.ServletRequest;
+import javax.servlet.http.Cookie;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.ConfigurableWebApplicationContext;
+import org.springframework.web.context.WebApplicationContext;
+
+import ch.itraum.recruiter.config.ApplicationConfig;
+import ch.itraum.recruiter.config.WebConfig;
+import ch.itraum.recruiter.jdbc.QueryBudgetInterceptor;
+import ch.itraum.recruiter.jdbc.QueryStatistics;
+import ch.itraum.recruiter.session.WizardStateInterceptor;
+
+//Walks through the wizard and checks how many statements every step issues, so N+1 queries
+//and loaded LOBs are noticed when they're introduced. Uses its own in-memory database.
+@RunWith(SpringJUnit4ClassRunner.class)
+@WebAppConfiguration
+@ContextConfiguration(classes = { WebConfig.class, ApplicationConfig.class }, initializers = QueryBudgetTest.InMemoryDatabase.class)
+public class QueryBudgetTest {
+
+	public static class InMemoryDatabase implements ApplicationContextInitializer<ConfigurableWebApplicationContext> {
+
+		@Override
+		public void initialize(ConfigurableWebApplicationContext applicationContext) {
+			applicationContext.getEnvironment().getPropertySources().addFirst(new MapPropertySource("inMemoryDatabase",
+					Collections.<String, Object> singletonMap("recruiter.db.url", "jdbc:h2:mem:queryBudget;DB_CLOSE_DELAY=-1")));
+		}
+	}
+
+	private static final byte[] PDF = "%PDF-1.4\n%%EOF\n".getBytes();
+
+	private static final long ASYNC_TIMEOUT_MILLIS = 10000;
+
+	@Autowired
+	private WebApplicationContext webApplicationContext;
+
+	private MockMvc mockMvc;
+
+	private Cookie wizardCookie;
+
+	@Before
+	public void setup() {
+		mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
+	}
+
+	@Test
+	public void testWizardStaysWithinBudget() throws Exception {
+		step(get("/"), 0);
+		step(post("/").param("buttonPressed", "agreement_Accept"), 0);
+		step(get("/candidate"), 0);
+		step(post("/candidate").param("buttonPressed", "contactData_Forward").param("firstName", "Anna").param("lastName", "Muster")
+				.param("street", "Weg 1").param("plz", "8000").param("city", "Zürich").param("email", "anna@example.com"), 1);
+		step(get("/skills"), 0);
+		step(post("/skills").param("buttonPressed", "contactSkills_Forward").param("institution", "ETH").param("topic", "Informatik")
+				.param("degree", "MSc").param("startDateEducationMonth", "1").param("startDateEducationYear", "2000")
+				.param("endDateEducationMonth", "1").param("endDateEducationYear", "2004").param("prospectiveEnd", "false")
+				.param("hasNoExperience", "true").param("currentPosition", "false"), 1);
+		step(get("/documents"), 1);
+		MvcResult upload = step(post("/upload/chunked").param("name", "cv.pdf").param("size", String.valueOf(PDF.length))
+				.param("type", "application/pdf"), 0);
+		String uploadId = upload.getResponse().getContentAsString().replaceAll(".*\"id\":\"([^\"]+)\".*", "$1");
+		//The chunk is written and the document saved on the uploadExecutor, which has to be counted as well
+		MvcResult chunk = step(put("/upload/chunked/" + uploadId + "/0").content(PDF), 3);
+		assertTrue(chunk.getRequest().getAttribute(QueryBudgetInterceptor.STATISTICS_ATTRIBUTE).toString(),
+				((QueryStatistics) chunk.getRequest().getAttribute(QueryBudgetInterceptor.STATISTICS_ATTRIBUTE)).getStatements() > 0);
+		step(post("/documents").param("buttonPressed", "documents_Forward"), 0);
+		step(get("/letterOfMotivation"), 1);
+		step(post("/letterOfMotivation").param("buttonPressed", "letterOfMotivation_Forward").param("textFieldLetterOfMotivation", "Hallo"), 2);
+		//An unchanged letter isn't written again
+		step(post("/letterOfMotivation").param("buttonPressed", "letterOfMotivation_Forward").param("textFieldLetterOfMotivation", "Hallo"), 1);
+		step(get("/submitApplication"), 2);
+		step(get("/confirmCancellation"), 5);
+	}
+
+	//Performs a request with the wizard cookie of the previous one and checks that it issues at most maxStatements statements and opens no LOB
+	private MvcResult step(MockHttpServletRequestBuilder request, int maxStatements) throws Exception {
+		if (wizardCookie != null) {
+			request.cookie(wizardCookie);
+		}
+		MvcResult result = mockMvc.perform(request).andReturn();
+		if (((ServletRequest) result.getRequest()).isAsyncStarted()) {
+			result.getAsyncResult(ASYNC_TIMEOUT_MILLIS);
+			result = mockMvc.perform(asyncDispatch(result)).andReturn();
+		}
+		Cookie cookie = result.getResponse().getCookie(WizardStateInterceptor.COOKIE_NAME);
+		if (cookie != null) {
+			wizardCookie = cookie;
+		}
+
+		QueryStatistics statistics = (QueryStatistics) result.getRequest().getAttribute(QueryBudgetInterceptor.STATISTICS_ATTRIBUTE);
+		String description = result.getRequest().getMethod() + " " + result.getRequest().getRequestURI();
+		assertTrue(description + " failed with " + result.getResponse().getStatus(), result.getResponse().getStatus() < 400);
+		assertNotNull(description, statistics);
+		description += ": " + statistics + " " + statistics.getSql();
+		assertTrue(description, statistics.getStatements() <= maxStatements);
+		assertEquals(description, 0, statistics.getLobs());
+		return result;
+	}
+}
@@ -0,0 +1,140 @@
+package ch.itraum.recruiter.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import ch.itraum.recruiter.metrics.MetricsRegistry;
+import ch.itraum.recruiter.storage.ContentLeases;
+import ch.itraum.recruiter.storage.FileSystemDocumentContentStore;
+import ch.itraum.recruiter.thumbnail.PdfRenderer;
+import ch.itraum.recruiter.thumbnail.RenderPipeline;
+import ch.itraum.recruiter.thumbnail.RenderablePdf;
+import ch.itraum.recruiter.thumbnail.ThumbnailCache;
+
+public class RenderPipelineTest {
+
+	private static final String ENGINE = "blocking";
+
+	private static final int WIDTH = 20;
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private final BlockingRenderer renderer = new BlockingRenderer();
+
+	private final MetricsRegistry metricsRegistry = new MetricsRegistry();
+
+	private FileSystemDocumentContentStore store;
+
+	private ThumbnailCache thumbnailCache;
+
+	private RenderPipeline renderPipeline;
+
+	@Before
+	public void setup() throws Exception {
+		File root = temporaryFolder.getRoot();
+		store = new FileSystemDocumentContentStore(new File(root, "store"));
+		ContentLeases contentLeases = new ContentLeases();
+		store.addReleaseListener(contentLeases);
+		thumbnailCache = new ThumbnailCache(new File(root, "thumbnails"), 1 << 20, 1 << 20, metricsRegistry);
+		store.addReleaseListener(thumbnailCache);
+
+		//One thread, so the second job waits in the queue while the first renders
+		renderPipeline = new RenderPipeline(Arrays.<PdfRenderer> asList(renderer), ENGINE, WIDTH, 1, 1, 10, 1, 0,
+				new File(root, "text"), metricsRegistry);
+		ReflectionTestUtils.setField(renderPipeline, "documentContentStore", store);
+		ReflectionTestUtils.setField(renderPipeline, "thumbnailCache", thumbnailCache);
+		ReflectionTestUtils.setField(renderPipeline, "contentLeases", contentLeases);
+		store.addReleaseListener(renderPipeline);
+	}
+
+	@After
+	public void tearDown() {
+		renderer.proceed.countDown();
+		renderPipeline.shutdown();
+	}
+
+	@Test
+	public void testNothingRenderedIsKeptWhenTheContentIsDeletedMeanwhile() throws Exception {
+		String hash = store.store(new ByteArrayInputStream(new byte[] { 7, 8, 9 })).getHash();
+		assertNull(renderPipeline.getThumbnail(hash, ENGINE, 0, WIDTH));
+		assertNull(renderPipeline.getThumbnail(hash, ENGINE, 1, WIDTH));
+		assertTrue(renderer.rendering.await(10, TimeUnit.SECONDS));
+
+		store.release(hash);
+		renderer.proceed.countDown();
+
+		long waitUntil = System.currentTimeMillis() + 10000;
+		while (metricsRegistry.counter("render.jobs.cancelled").getValue() < 2 && System.currentTimeMillis() < waitUntil) {
+			Thread.sleep(10);
+		}
+		assertEquals(2, metricsRegistry.counter("render.jobs.cancelled").getValue());
+		assertEquals(0, metricsRegistry.counter("render.jobs.completed").getValue());
+		//The queued job never opened the document
+		assertEquals(1, renderer.opened.get());
+		assertNull(thumbnailCache.get(ThumbnailCache.key(hash, ENGINE, 0, WIDTH)));
+	}
+
+	//Renders blank pages, but only once the test lets it
+	private static class BlockingRenderer implements PdfRenderer {
+
+		private final CountDownLatch rendering = new CountDownLatch(1);
+
+		private final CountDownLatch proceed = new CountDownLatch(1);
+
+		private final AtomicInteger opened = new AtomicInteger();
+
+		@Override
+		public String getEngine() {
+			return ENGINE;
+		}
+
+		@Override
+		public RenderablePdf open(File content) {
+			opened.incrementAndGet();
+			return new RenderablePdf() {
+				@Override
+				public int getPageCount() {
+					return 2;
+				}
+
+				@Override
+				public BufferedImage renderPage(int page, int width) throws IOException {
+					rendering.countDown();
+					try {
+						proceed.await();
+					} catch (InterruptedException e) {
+						throw new IOException(e);
+					}
+					return new BufferedImage(width, width, BufferedImage.TYPE_INT_RGB);
+				}
+
+				@Override
+				public String extractText() {
+					return null;
+				}
+
+				@Override
+				public void close() {
+				}
+			};
+		}
+	}
+}
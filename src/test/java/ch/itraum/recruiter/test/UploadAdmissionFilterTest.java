@@ -0,0 +1,162 @@
+package ch.itraum.recruiter.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.Cookie;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import ch.itraum.recruiter.metrics.MetricsRegistry;
+import ch.itraum.recruiter.session.WizardStateInterceptor;
+import ch.itraum.recruiter.upload.UploadAdmissionFilter;
+
+public class UploadAdmissionFilterTest {
+
+	private final MetricsRegistry metricsRegistry = new MetricsRegistry();
+
+	@Test
+	public void testUploadsBeyondTheByteBudgetAreRejected() throws Exception {
+		UploadAdmissionFilter filter = new UploadAdmissionFilter(10 * 1024, 10, 10, 1024, 3, metricsRegistry);
+
+		//While the first upload holds 8 kB, another one with 4 kB doesn't fit anymore but one with 2 kB does
+		MockHttpServletResponse second = new MockHttpServletResponse();
+		MockHttpServletResponse third = new MockHttpServletResponse();
+		filter.doFilter(chunk("a", 8 * 1024), new MockHttpServletResponse(), whileInFlight(filter, chunk("b", 4 * 1024), second,
+				chunk("c", 2 * 1024), third));
+
+		assertEquals(503, second.getStatus());
+		assertEquals("3", second.getHeader("Retry-After"));
+		assertEquals(200, third.getStatus());
+		assertEquals(Long.valueOf(1), metricsRegistry.snapshot().get("upload.admission.rejected"));
+		assertEquals(Long.valueOf(0), metricsRegistry.snapshot().get("upload.admission.inFlight.bytes"));
+	}
+
+	@Test
+	public void testEveryClientHasItsOwnLimit() throws Exception {
+		UploadAdmissionFilter filter = new UploadAdmissionFilter(1024 * 1024, 1, 10, 1024, 2, metricsRegistry);
+
+		MockHttpServletResponse sameClient = new MockHttpServletResponse();
+		MockHttpServletResponse otherClient = new MockHttpServletResponse();
+		filter.doFilter(chunk("a", 100), new MockHttpServletResponse(), whileInFlight(filter, chunk("a", 100), sameClient,
+				chunk("b", 100), otherClient));
+
+		assertEquals(503, sameClient.getStatus());
+		assertEquals(200, otherClient.getStatus());
+		assertEquals(Long.valueOf(1), metricsRegistry.snapshot().get("upload.admission.rejected.client"));
+
+		//Once the first upload is done, the client may send the next one
+		MockHttpServletResponse next = new MockHttpServletResponse();
+		filter.doFilter(chunk("a", 100), next, new MockFilterChain());
+		assertEquals(200, next.getStatus());
+	}
+
+	@Test
+	public void testNewTokensDontGetAroundTheLimitOfTheAddress() throws Exception {
+		final UploadAdmissionFilter filter = new UploadAdmissionFilter(1024 * 1024, 1, 2, 1024, 2, metricsRegistry);
+
+		//Two uploads with tokens of their own are in flight, the third one from the same address is too many
+		final MockHttpServletResponse second = new MockHttpServletResponse();
+		final MockHttpServletResponse third = new MockHttpServletResponse();
+		filter.doFilter(chunk("a", 100), new MockHttpServletResponse(), new FilterChain() {
+			@Override
+			public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
+				filter.doFilter(chunk("b", 100), second, new FilterChain() {
+					@Override
+					public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
+						filter.doFilter(chunk("c", 100), third, new MockFilterChain());
+					}
+				});
+			}
+		});
+
+		assertEquals(200, second.getStatus());
+		assertEquals(503, third.getStatus());
+		assertEquals(Long.valueOf(1), metricsRegistry.snapshot().get("upload.admission.rejected.address"));
+	}
+
+	@Test
+	public void testCookiesWhichAreNoTokensCountAsTheAddress() throws Exception {
+		UploadAdmissionFilter filter = new UploadAdmissionFilter(1024 * 1024, 1, 10, 1024, 2, metricsRegistry);
+
+		MockHttpServletRequest first = chunk("a", 100);
+		first.setCookies(new Cookie(WizardStateInterceptor.COOKIE_NAME, "made-up-1.1"));
+		MockHttpServletRequest second = chunk("a", 100);
+		second.setCookies(new Cookie(WizardStateInterceptor.COOKIE_NAME, "made-up-2.1"));
+		MockHttpServletResponse secondResponse = new MockHttpServletResponse();
+		MockHttpServletResponse withToken = new MockHttpServletResponse();
+		filter.doFilter(first, new MockHttpServletResponse(), whileInFlight(filter, second, secondResponse, chunk("b", 100), withToken));
+
+		assertEquals(503, secondResponse.getStatus());
+		assertEquals(Long.valueOf(1), metricsRegistry.snapshot().get("upload.admission.rejected.client"));
+		//An upload with a token is still admitted next to them
+		assertEquals(200, withToken.getStatus());
+	}
+
+	@Test
+	public void testDrainingRejectsNewUploadsAndWaitsForTheAdmittedOnes() throws Exception {
+		final UploadAdmissionFilter filter = new UploadAdmissionFilter(1024 * 1024, 10, 10, 1024, 2, metricsRegistry);
+
+		final MockHttpServletResponse duringDrain = new MockHttpServletResponse();
+		filter.doFilter(chunk("a", 100), new MockHttpServletResponse(), new FilterChain() {
+			@Override
+			public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
+				try {
+					assertFalse(filter.drain(0));
+				} catch (InterruptedException e) {
+					throw new ServletException(e);
+				}
+				filter.doFilter(chunk("b", 100), duringDrain, new MockFilterChain());
+			}
+		});
+
+		assertEquals(503, duringDrain.getStatus());
+		assertTrue(filter.drain(0));
+	}
+
+	@Test
+	public void testOtherRequestsAreNotLimited() throws Exception {
+		//Nobody may upload anything
+		UploadAdmissionFilter filter = new UploadAdmissionFilter(1024, 0, 0, 1024, 2, metricsRegistry);
+
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		filter.doFilter(new MockHttpServletRequest("POST", "/upload/chunked"), response, new MockFilterChain());
+		assertEquals(200, response.getStatus());
+		assertEquals(Long.valueOf(0), metricsRegistry.snapshot().get("upload.admission.admitted"));
+	}
+
+	//The client is a hex digit, its token is 32 of them
+	private static MockHttpServletRequest chunk(String client, int length) {
+		StringBuilder token = new StringBuilder();
+		while (token.length() < 32) {
+			token.append(client);
+		}
+		MockHttpServletRequest request = new MockHttpServletRequest("PUT", "/upload/chunked/1/0");
+		request.setContent(new byte[length]);
+		request.setCookies(new Cookie(WizardStateInterceptor.COOKIE_NAME, token + ".1"));
+		return request;
+	}
+
+	//A chain which sends the other requests through the filter while the first one is still in it
+	private static FilterChain whileInFlight(final UploadAdmissionFilter filter, final MockHttpServletRequest firstRequest,
+			final MockHttpServletResponse firstResponse, final MockHttpServletRequest secondRequest,
+			final MockHttpServletResponse secondResponse) {
+		return new FilterChain() {
+			@Override
+			public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
+				filter.doFilter(firstRequest, firstResponse, new MockFilterChain());
+				filter.doFilter(secondRequest, secondResponse, new MockFilterChain());
+			}
+		};
+	}
+}
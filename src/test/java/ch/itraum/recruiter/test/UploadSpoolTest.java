@@ -0,0 +1,91 @@
+package ch.itraum.recruiter.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ch.itraum.recruiter.metrics.MetricsRegistry;
+import ch.itraum.recruiter.upload.ChunkedUpload;
+import ch.itraum.recruiter.upload.UploadSpool;
+
+public class UploadSpoolTest {
+
+	private static final int CHUNK_SIZE = 4;
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private UploadSpool spool;
+
+	@Before
+	public void setup() throws Exception {
+		spool = new UploadSpool(new File(temporaryFolder.getRoot(), "uploads"), 100, CHUNK_SIZE, 60000, new MetricsRegistry());
+	}
+
+	@Test
+	public void testChunksInAnyOrderAreAssembled() throws Exception {
+		byte[] content = "0123456789".getBytes("UTF-8");
+		ChunkedUpload upload = spool.begin(1, "cv.pdf", "application/pdf", content.length);
+		assertEquals(3, upload.getChunkCount());
+
+		assertFalse(spool.writeChunk(upload, 2, chunk(content, 2)));
+		assertFalse(spool.writeChunk(upload, 0, chunk(content, 0)));
+		//A chunk sent twice, because the answer got lost, changes nothing
+		assertFalse(spool.writeChunk(upload, 0, chunk(content, 0)));
+		assertEquals("1", upload.getMissingChunks());
+
+		assertTrue(spool.writeChunk(upload, 1, chunk(content, 1)));
+		File file = spool.getFile(upload);
+		assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+
+		spool.finish(upload);
+		assertFalse(file.exists());
+		assertNull(spool.get(upload.getId(), 1));
+	}
+
+	@Test
+	public void testUploadsBelongToTheirCandidate() throws Exception {
+		ChunkedUpload upload = spool.begin(1, "cv.pdf", "application/pdf", 10);
+		assertEquals(upload, spool.get(upload.getId(), 1));
+		assertNull(spool.get(upload.getId(), 2));
+		assertNull(spool.get(upload.getId(), null));
+	}
+
+	@Test
+	public void testChunksOfTheWrongSizeAreRejected() throws Exception {
+		ChunkedUpload upload = spool.begin(1, "cv.pdf", "application/pdf", 10);
+		try {
+			spool.writeChunk(upload, 0, new ByteArrayInputStream(new byte[CHUNK_SIZE + 1]));
+			fail("A chunk longer than the chunk size must be rejected");
+		} catch (IllegalArgumentException expected) {
+		}
+		try {
+			spool.writeChunk(upload, 2, new ByteArrayInputStream(new byte[CHUNK_SIZE]));
+			fail("The last chunk only has the rest of the file");
+		} catch (IllegalArgumentException expected) {
+		}
+		try {
+			spool.writeChunk(upload, 3, new ByteArrayInputStream(new byte[0]));
+			fail("There is no fourth chunk");
+		} catch (IllegalArgumentException expected) {
+		}
+		assertEquals("0,1,2", upload.getMissingChunks());
+	}
+
+	private static ByteArrayInputStream chunk(byte[] content, int index) {
+		return new ByteArrayInputStream(Arrays.copyOfRange(content, index * CHUNK_SIZE, Math.min(content.length, (index + 1) * CHUNK_SIZE)));
+	}
+}
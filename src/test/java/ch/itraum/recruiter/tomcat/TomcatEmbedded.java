@@ -6,14 +6,17 @@ import org.apache.catalina.Context;
 import org.apache.catalina.startup.Tomcat;
 import org.apache.naming.resources.VirtualDirContext;
 
+//For development and tests, see ServerLauncher for production
 public class TomcatEmbedded {
 
+	private static final String WEBAPP_DIRECTORY = "src/main/webapp/";
+
 	public static void main(String[] args) throws Exception {
 
 		Tomcat tomcat = new Tomcat();
 		tomcat.setPort(8080);
 
-		Context context = tomcat.addWebapp("/",	new File("src/main/webapp/").getAbsolutePath());
+		Context context = tomcat.addWebapp("/",	new File(WEBAPP_DIRECTORY).getAbsolutePath());
 
 		File additionWebInfClasses = new File("bin");
 		VirtualDirContext resources = new VirtualDirContext();
@@ -23,4 +26,23 @@ public class TomcatEmbedded {
 		tomcat.start();
 		tomcat.getServer().await();
 	}
+
+	//Starts the application with the classes on the classpath, wherever they were compiled to.
+	//With port 0 a free port is chosen, see getPort. Tomcat keeps its work files in the given directory.
+	public static Tomcat start(int port, File baseDirectory) throws Exception {
+
+		Tomcat tomcat = new Tomcat();
+		tomcat.setBaseDir(baseDirectory.getAbsolutePath());
+		tomcat.setPort(port);
+
+		ServerLauncher.addApplication(tomcat, new File(WEBAPP_DIRECTORY));
+
+		tomcat.start();
+		return tomcat;
+	}
+
+	//The port the started Tomcat actually listens on
+	public static int getPort(Tomcat tomcat) {
+		return tomcat.getConnector().getLocalPort();
+	}
 }